@@ -0,0 +1,25 @@
+package micycle.scrollmonitor;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH's GC profiler attached (the equivalent of
+ * <code>-prof gc</code>), so every result is reported alongside its allocation
+ * rate. Arguments are JMH command-line options (e.g. a benchmark regex).
+ * 
+ * @author Michael Carleton
+ *
+ */
+public final class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build())
+				.run();
+	}
+
+}
@@ -0,0 +1,77 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PVector;
+
+/**
+ * Per-frame cost of a dynamic y-axis: each frame pushes a datum to every
+ * stream, finds the live maximum across the streams and rescales them to it
+ * (the work {@link ScrollMonitor} does each frame with a dynamic y-axis).
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicYAxisBenchmark {
+
+	private static final int VALUES = 4096;
+
+	@Param({ "1", "8", "32" })
+	int streams;
+
+	@Param({ "200", "2000", "20000" })
+	int history;
+
+	private DataStream[] dataStreams;
+	private float[] values;
+	private int next;
+
+	@Setup
+	public void setup() {
+		dataStreams = new DataStream[streams];
+		values = new float[VALUES];
+		final SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) random.nextDouble(100);
+		}
+		for (int s = 0; s < streams; s++) {
+			dataStreams[s] = new FloatDataStream("bench" + s, history, new PVector(800, 400));
+			for (int i = 0; i < history; i++) {
+				dataStreams[s].push(values[(i + s) & (VALUES - 1)]);
+			}
+		}
+	}
+
+	@Benchmark
+	public double frame() {
+		double yMax = 0;
+		for (DataStream d : dataStreams) {
+			d.push(values[next++ & (VALUES - 1)]);
+			yMax = Math.max(yMax, d.getMaxLiveValue());
+		}
+		for (DataStream d : dataStreams) {
+			d.setMaxValue(yMax);
+		}
+		return yMax;
+	}
+
+}
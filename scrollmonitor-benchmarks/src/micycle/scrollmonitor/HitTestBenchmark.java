@@ -0,0 +1,75 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PVector;
+
+/**
+ * Cost of finding which of N overlaid datastream graphs the mouse is over, for
+ * a mouse that moves every frame (so the cached result is never reused).
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+
+	private static final float WIDTH = 800, HEIGHT = 400;
+	private static final int POSITIONS = 1024;
+
+	@Param({ "1", "8", "32" })
+	int streams;
+
+	@Param({ "200", "20000" })
+	int history;
+
+	private final HitTester hitTester = new HitTester();
+	private DataStream[] order;
+	private float[] mouseX, mouseY;
+	private int next;
+
+	@Setup
+	public void setup() {
+		final SplittableRandom random = new SplittableRandom(42);
+		order = new DataStream[streams];
+		for (int s = 0; s < streams; s++) {
+			order[s] = new FloatDataStream("bench" + s, history, new PVector(WIDTH, HEIGHT));
+			order[s].setMaxValue(100);
+			for (int i = 0; i < history; i++) {
+				order[s].push((float) random.nextDouble(100));
+			}
+		}
+		mouseX = new float[POSITIONS];
+		mouseY = new float[POSITIONS];
+		for (int i = 0; i < POSITIONS; i++) {
+			mouseX[i] = (float) random.nextDouble(WIDTH);
+			mouseY[i] = (float) random.nextDouble(HEIGHT);
+		}
+	}
+
+	@Benchmark
+	public DataStream hitTest() {
+		final int i = next++ & (POSITIONS - 1);
+		hitTester.update(order, mouseX[i], mouseY[i], WIDTH, HEIGHT, 1);
+		return hitTester.hit;
+	}
+
+}
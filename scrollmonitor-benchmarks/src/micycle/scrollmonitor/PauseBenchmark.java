@@ -0,0 +1,107 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PVector;
+
+/**
+ * Cost of pausing and resuming a datastream, and of pushing to a paused
+ * datastream (which must preserve the paused view of the data it overwrites).
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PauseBenchmark {
+
+	private static final int VALUES = 4096;
+
+	@Param({ "200", "2000", "20000" })
+	int history;
+
+	@Param({ "10" })
+	int smoothing;
+
+	private DataStream stream;
+	private float[] values;
+	private int next;
+
+	@Setup
+	public void setup() {
+		stream = new FloatDataStream("bench", history, new PVector(800, 400), Smoothing.MOVING_AVERAGE, smoothing);
+		stream.setMaxValue(100);
+		values = new float[VALUES];
+		final SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) random.nextDouble(100);
+		}
+		for (int i = 0; i < history; i++) {
+			stream.push(values[i & (VALUES - 1)]);
+		}
+	}
+
+	@Benchmark
+	public void pauseResume() {
+		stream.pause();
+		stream.resume();
+	}
+
+	/**
+	 * Pauses, overwrites the whole history, then resumes: the worst case for a
+	 * single pause.
+	 */
+	@Benchmark
+	public void pauseOverwriteResume() {
+		stream.pause();
+		for (int i = 0; i < history; i++) {
+			stream.push(values[next++ & (VALUES - 1)]);
+		}
+		stream.resume();
+	}
+
+	/**
+	 * Steady-state pushes to a paused stream.
+	 */
+	@State(Scope.Thread)
+	public static class Paused {
+
+		DataStream stream;
+
+		@Setup(Level.Iteration)
+		public void setup(PauseBenchmark benchmark) {
+			stream = benchmark.stream;
+			stream.pause();
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			stream.resume();
+		}
+	}
+
+	@Benchmark
+	public void pushWhilePaused(Paused paused) {
+		paused.stream.push(values[next++ & (VALUES - 1)]);
+	}
+
+}
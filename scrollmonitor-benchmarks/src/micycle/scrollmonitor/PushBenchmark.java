@@ -0,0 +1,75 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PVector;
+
+/**
+ * Ingestion throughput of a single datastream: one datum per call, and a block
+ * of data per (bulk) call, across smoothing filters, smoothing levels and
+ * history lengths.
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PushBenchmark {
+
+	private static final int BLOCK = 1024;
+
+	@Param({ "MOVING_AVERAGE", "EXPONENTIAL", "MEDIAN" })
+	Smoothing smoothingType;
+
+	@Param({ "0", "10", "100" })
+	int smoothing;
+
+	@Param({ "200", "2000", "20000" })
+	int history;
+
+	private DataStream stream;
+	private float[] values;
+	private int next;
+
+	@Setup
+	public void setup() {
+		stream = new FloatDataStream("bench", history, new PVector(800, 400), smoothingType, smoothing);
+		stream.setMaxValue(100);
+		values = new float[BLOCK];
+		final SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) random.nextDouble(100);
+		}
+		stream.push(values, 0, values.length); // fill the filter window
+	}
+
+	@Benchmark
+	public void push() {
+		stream.push(values[next++ & (BLOCK - 1)]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public void pushBulk() {
+		stream.push(values, 0, BLOCK);
+	}
+
+}
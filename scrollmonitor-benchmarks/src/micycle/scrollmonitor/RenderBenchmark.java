@@ -0,0 +1,80 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frame time of a headless (off-screen) monitor showing N streams of H history,
+ * where every stream receives a new datum each frame.
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	private static final int VALUES = 4096;
+
+	@Param({ "1", "8", "32" })
+	int streams;
+
+	@Param({ "200", "2000", "20000" })
+	int history;
+
+	@Param({ "SHAPE", "RASTER" })
+	GraphBackend backend;
+
+	@Param({ "false", "true" })
+	boolean incremental;
+
+	private ScrollMonitor monitor;
+	private StreamHandle[] handles;
+	private float[] values;
+	private int next;
+
+	@Setup
+	public void setup() {
+		monitor = ScrollMonitor.createHeadless(800, 400, history, 100);
+		monitor.setGraphBackend(backend);
+		monitor.setIncrementalRendering(incremental);
+		values = new float[VALUES];
+		final SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) random.nextDouble(100);
+		}
+		handles = new StreamHandle[streams];
+		for (int s = 0; s < streams; s++) {
+			handles[s] = monitor.addDataStream("bench" + s);
+			for (int i = 0; i < history; i++) {
+				handles[s].push(values[(i + s) & (VALUES - 1)]);
+			}
+		}
+		monitor.run(); // build layers
+	}
+
+	@Benchmark
+	public void frame() {
+		for (StreamHandle h : handles) {
+			h.push(values[next++ & (VALUES - 1)]);
+		}
+		monitor.run();
+	}
+
+}
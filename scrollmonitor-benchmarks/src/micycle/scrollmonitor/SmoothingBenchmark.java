@@ -0,0 +1,68 @@
+package micycle.scrollmonitor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PVector;
+
+/**
+ * Cost of recomputing a datastream's entire smoothed (draw) data, as happens
+ * when its smoothing is changed or the y-axis is rescaled.
+ * 
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmoothingBenchmark {
+
+	@Param({ "MOVING_AVERAGE", "EXPONENTIAL", "MEDIAN" })
+	Smoothing smoothingType;
+
+	@Param({ "10", "100" })
+	int smoothing;
+
+	@Param({ "2000", "20000" })
+	int history;
+
+	private DataStream stream;
+	private float maxValue = 100;
+
+	@Setup
+	public void setup() {
+		stream = new FloatDataStream("bench", history, new PVector(800, 400), smoothingType, smoothing);
+		stream.setMaxValue(maxValue);
+		final SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < history; i++) {
+			stream.push((float) random.nextDouble(100));
+		}
+	}
+
+	@Benchmark
+	public void recalcDrawData() {
+		stream.recalcDrawData();
+	}
+
+	@Benchmark
+	public void setMaxValue() {
+		maxValue = maxValue == 100 ? 200 : 100; // always a change
+		stream.setMaxValue(maxValue);
+	}
+
+}
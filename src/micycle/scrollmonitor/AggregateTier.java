@@ -0,0 +1,251 @@
+package micycle.scrollmonitor;
+
+/**
+ * One level of a datastream's history pyramid. Each bucket of a tier
+ * aggregates (min, max, mean & count) a fixed number of buckets from the tier
+ * below it, or of raw data for the first tier, so that a tier holding as many
+ * buckets as the raw history covers <code>factor</code> times as much time.
+ * Tiers are maintained incrementally as data is pushed: a bucket is committed
+ * to the tier's ring once it is full, at which point it is also fed to the next
+ * tier up.
+ * <p>
+ * A tier is viewed as its committed buckets followed by the bucket currently
+ * being filled (if it holds anything), so the newest point of a tier is always
+ * live.
+ * <p>
+ * Aggregates are held in double precision, to which the data of a float
+ * stream widens exactly.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class AggregateTier {
+
+	/**
+	 * How many raw datapoints each bucket of this tier aggregates.
+	 */
+	final int span;
+	private final int factor; // children (from the tier below) per bucket
+	final AggregateTier next; // the tier above (null if none)
+
+	private final double[] min, max, mean;
+	private final int[] count; // number of non-empty raw data in a bucket
+	private int head; // next slot to write
+	private int size; // committed buckets
+	private static final int EMPTY = -1, PARTIAL = -2; // see slot()
+
+	// bucket being filled
+	private int children;
+	private double partialMin, partialMax;
+	private double partialSum;
+	private int partialCount;
+
+	/**
+	 * Sliding max of bucket maxima & min of bucket minima
+	 */
+	private final SlidingExtrema extrema;
+
+	// view as it was when paused (buckets overwritten since are logged)
+	private SnapshotLog meanLog, minLog, maxLog;
+	private int headCache, sizeCache;
+	private boolean partialCache;
+	private double partialMeanCache, partialMinCache, partialMaxCache, maxCache, minCache;
+	private boolean paused;
+
+	/**
+	 * @param capacity number of buckets held
+	 * @param factor   children per bucket
+	 * @param span     raw datapoints per bucket
+	 * @param next     tier above, or null
+	 */
+	AggregateTier(int capacity, int factor, int span, AggregateTier next) {
+		this.factor = factor;
+		this.span = span;
+		this.next = next;
+		min = new double[capacity];
+		max = new double[capacity];
+		mean = new double[capacity];
+		count = new int[capacity];
+		extrema = new SlidingExtrema(capacity);
+		resetPartial();
+	}
+
+	/**
+	 * Adds a raw datum (empty data count towards filling a bucket but not to its
+	 * statistics).
+	 */
+	void add(double datum) {
+		if (datum == Double.NEGATIVE_INFINITY || datum != datum) {
+			add(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0);
+		} else {
+			add(datum, datum, datum, 1);
+		}
+	}
+
+	/**
+	 * Adds a child bucket from the tier below.
+	 */
+	void add(double childMin, double childMax, double childSum, int childCount) {
+		partialMin = Math.min(partialMin, childMin);
+		partialMax = Math.max(partialMax, childMax);
+		partialSum += childSum;
+		partialCount += childCount;
+		children++;
+		if (children == factor) {
+			commit();
+		}
+	}
+
+	private void commit() {
+		if (paused && meanLog.size() < mean.length) { // preserve the paused view (head moves in ring order)
+			meanLog.add(Double.doubleToRawLongBits(mean[head]));
+			minLog.add(Double.doubleToRawLongBits(min[head]));
+			maxLog.add(Double.doubleToRawLongBits(max[head]));
+		}
+		final boolean empty = partialCount == 0;
+		min[head] = empty ? Double.NEGATIVE_INFINITY : partialMin;
+		max[head] = empty ? Double.NEGATIVE_INFINITY : partialMax;
+		mean[head] = empty ? Double.NEGATIVE_INFINITY : partialSum / partialCount;
+		count[head] = partialCount;
+		extrema.push(head, max[head], min[head]);
+		head = (head + 1) % mean.length;
+		size = Math.min(size + 1, mean.length);
+
+		if (next != null) {
+			next.add(partialMin, partialMax, partialSum, partialCount);
+		}
+		resetPartial();
+	}
+
+	private void resetPartial() {
+		children = 0;
+		partialMin = Double.POSITIVE_INFINITY;
+		partialMax = Double.NEGATIVE_INFINITY;
+		partialSum = 0;
+		partialCount = 0;
+	}
+
+	/**
+	 * Gets the mean of a bucket within a view of the newest buckets of this tier.
+	 * 
+	 * @param index  index within the view, where 0 is the oldest
+	 * @param points number of buckets in the view
+	 * @return bucket mean; NEGATIVE_INFINITY if the bucket is empty or predates
+	 *         the tier
+	 */
+	double getMean(int index, int points) {
+		final int slot = slot(index, points);
+		if (slot == EMPTY) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (slot == PARTIAL) {
+			return paused ? partialMeanCache : partialMean();
+		} else if (paused) {
+			final int k = Math.floorMod(slot - headCache, mean.length); // overwrites since pausing
+			if (k < meanLog.size()) {
+				return Double.longBitsToDouble(meanLog.get(k));
+			}
+		}
+		return mean[slot];
+	}
+
+	/**
+	 * Gets the minimum of a bucket within a view of the newest buckets of this
+	 * tier (so that zoomed-out views can draw the extremes the mean hides).
+	 * 
+	 * @see #getMean(int, int)
+	 */
+	double getMin(int index, int points) {
+		final int slot = slot(index, points);
+		if (slot == EMPTY) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (slot == PARTIAL) {
+			return paused ? partialMinCache : partialCount == 0 ? Double.NEGATIVE_INFINITY : partialMin;
+		} else if (paused) {
+			final int k = Math.floorMod(slot - headCache, mean.length);
+			if (k < minLog.size()) {
+				return Double.longBitsToDouble(minLog.get(k));
+			}
+		}
+		return min[slot];
+	}
+
+	/**
+	 * Gets the maximum of a bucket within a view of the newest buckets of this
+	 * tier.
+	 * 
+	 * @see #getMin(int, int)
+	 */
+	double getMax(int index, int points) {
+		final int slot = slot(index, points);
+		if (slot == EMPTY) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (slot == PARTIAL) {
+			return paused ? partialMaxCache : partialCount == 0 ? Double.NEGATIVE_INFINITY : partialMax;
+		} else if (paused) {
+			final int k = Math.floorMod(slot - headCache, mean.length);
+			if (k < maxLog.size()) {
+				return Double.longBitsToDouble(maxLog.get(k));
+			}
+		}
+		return max[slot];
+	}
+
+	/**
+	 * @return ring slot of a bucket within a view of the newest buckets;
+	 *         {@link #PARTIAL} for the bucket being filled, {@link #EMPTY} if the
+	 *         bucket predates the tier
+	 */
+	private int slot(int index, int points) {
+		final int committed = paused ? sizeCache : size;
+		final boolean partial = paused ? partialCache : children > 0;
+		final int j = committed + (partial ? 1 : 0) - points + index; // index from oldest committed bucket
+		if (j < 0) {
+			return EMPTY;
+		}
+		if (j == committed) {
+			return PARTIAL;
+		}
+		final int oldest = (paused ? headCache : head) - committed;
+		return Math.floorMod(oldest + j, mean.length);
+	}
+
+	/**
+	 * @return maximum bucket maximum held by the tier
+	 */
+	double getMax() {
+		return paused ? maxCache : Math.max(extrema.max(), partialMax);
+	}
+
+	/**
+	 * @return minimum bucket minimum held by the tier
+	 */
+	double getMin() {
+		return paused ? minCache : Math.min(extrema.min(), partialMin);
+	}
+
+	private double partialMean() {
+		return partialCount == 0 ? Double.NEGATIVE_INFINITY : partialSum / partialCount;
+	}
+
+	void pause() {
+		meanLog = new SnapshotLog(mean.length, 64);
+		minLog = new SnapshotLog(mean.length, 64);
+		maxLog = new SnapshotLog(mean.length, 64);
+		headCache = head;
+		sizeCache = size;
+		partialCache = children > 0;
+		partialMeanCache = partialMean();
+		partialMinCache = partialCount == 0 ? Double.NEGATIVE_INFINITY : partialMin;
+		partialMaxCache = partialCount == 0 ? Double.NEGATIVE_INFINITY : partialMax;
+		maxCache = getMax();
+		minCache = getMin();
+		paused = true;
+	}
+
+	void resume() {
+		paused = false;
+		meanLog = null; // release memory
+		minLog = null;
+		maxLog = null;
+	}
+}
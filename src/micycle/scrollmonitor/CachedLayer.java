@@ -0,0 +1,58 @@
+package micycle.scrollmonitor;
+
+import processing.core.PGraphics;
+
+/**
+ * An off-screen graphics buffer holding content that rarely changes, so that it
+ * can be composited each frame instead of redrawn. The layer is re-rendered
+ * only after being {@link #invalidate() invalidated} or when its size changes:
+ * 
+ * <pre>
+ * if (layer.begin(pane, w, h)) {
+ * 	layer.graphics.line(...); // render content
+ * 	layer.end();
+ * }
+ * canvas.image(layer.graphics, x, y);
+ * </pre>
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class CachedLayer {
+
+	PGraphics graphics;
+	private boolean dirty = true;
+
+	/**
+	 * Marks the layer's content as stale.
+	 */
+	void invalidate() {
+		dirty = true;
+	}
+
+	/**
+	 * Sizes the layer and, if its content is stale, begins re-rendering it (the
+	 * layer is cleared); call {@link #end()} once rendered.
+	 * 
+	 * @return whether the layer must be re-rendered
+	 */
+	boolean begin(ProcessingPane pane, int width, int height) {
+		width = Math.max(1, width); // compared as created, so an empty layer is not recreated each frame
+		height = Math.max(1, height);
+		if (graphics == null || graphics.width != width || graphics.height != height) {
+			graphics = pane.createLayer(width, height);
+			dirty = true;
+		}
+		if (!dirty) {
+			return false;
+		}
+		graphics.beginDraw();
+		graphics.clear();
+		dirty = false;
+		return true;
+	}
+
+	void end() {
+		graphics.endDraw();
+	}
+}
@@ -0,0 +1,404 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compressed retention of the data evicted from a datastream's ring, so that a
+ * stream can be scrolled back through far more history than its ring holds.
+ * Evicted data is gathered into blocks of {@link #BLOCK_SIZE}; a full block is
+ * sealed by compressing it as in Facebook's Gorilla: timestamps as
+ * delta-of-deltas and values as the XOR of each value with the previous one,
+ * so steady timestamps and slowly varying values cost a bit or a few bits per
+ * datum rather than 12 (or 16) bytes. Values are held as their bits, 32 wide
+ * for float streams and 64 wide for double and long streams.
+ * <p>
+ * Sealed blocks are decompressed lazily, only when data in them is read, into a
+ * small LRU cache of decoded blocks (scrolling through history reads block
+ * after block). The oldest blocks are discarded once the tier holds more than
+ * its capacity.
+ * <p>
+ * Data is addressed by sequence number: the number of data pushed to the stream
+ * before it.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class ColdTier {
+
+	/**
+	 * Data per block.
+	 */
+	static final int BLOCK_SIZE = 1024;
+	private static final int CACHE_BLOCKS = 4;
+
+	private final int width; // bits per value (32 or 64)
+	private final int fieldBits; // bits of the leading-zero & length fields (log2 width)
+	private long capacity; // data retained (rounded up to whole blocks)
+
+	private Block[] blocks = new Block[16]; // ring of sealed blocks, oldest at head
+	private int head, blockCount;
+	private long first; // sequence of the first datum of the oldest block
+	private long discarded; // number of blocks discarded (numbers cached blocks)
+
+	// block being filled (not yet compressed)
+	private final long[] openValues = new long[BLOCK_SIZE];
+	private final long[] openTimestamps = new long[BLOCK_SIZE];
+	private int openCount;
+
+	private final BitWriter writer = new BitWriter(BLOCK_SIZE * (69 + 2 + 6 + 6 + 64) / 64 + 2); // worst case
+	private long compressedBytes;
+
+	private final LinkedHashMap<Long, Decoded> cache = new LinkedHashMap<Long, Decoded>(CACHE_BLOCKS * 2, 0.75f,
+			true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Decoded> eldest) {
+			return size() > CACHE_BLOCKS;
+		}
+	};
+	private Decoded last; // most recently read block (skips the cache lookup)
+
+	/**
+	 * @param capacity number of data to retain
+	 * @param first    sequence number of the first datum to be added
+	 * @param width    bits per value: 32 or 64
+	 */
+	ColdTier(long capacity, long first, int width) {
+		this.width = width;
+		fieldBits = width == 32 ? 5 : 6;
+		this.first = first;
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Sets how many data are retained, discarding the oldest blocks if the tier
+	 * holds more.
+	 */
+	void setCapacity(long capacity) {
+		this.capacity = Math.max(1, capacity);
+		trim();
+	}
+
+	/**
+	 * Appends the next datum (the oldest datum evicted from the ring).
+	 *
+	 * @param timestamp nanoseconds (0 if the stream is not timestamped)
+	 * @param value     bits of the value (in the low {@link #width} bits)
+	 */
+	void add(long timestamp, long value) {
+		openTimestamps[openCount] = timestamp;
+		openValues[openCount] = value;
+		if (++openCount == BLOCK_SIZE) {
+			seal();
+		}
+	}
+
+	/**
+	 * @return sequence number of the oldest datum held
+	 */
+	long first() {
+		return first;
+	}
+
+	/**
+	 * @return sequence number following the newest datum held
+	 */
+	long end() {
+		return sealedEnd() + openCount;
+	}
+
+	/**
+	 * @return size of the sealed (compressed) blocks, in bytes
+	 */
+	long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * @return whether the tier holds a datum
+	 */
+	boolean holds(long sequence) {
+		return sequence >= first && sequence < end();
+	}
+
+	/**
+	 * @param sequence sequence number of a datum held by the tier
+	 * @return bits of the datum
+	 * @see #holds(long)
+	 */
+	long get(long sequence) {
+		final Decoded block = find(sequence);
+		if (block != null) {
+			return block.values[(int) ((sequence - first) % BLOCK_SIZE)];
+		}
+		return openValues[(int) (sequence - sealedEnd())];
+	}
+
+	/**
+	 * @param sequence sequence number of a datum
+	 * @return the datum's timestamp; 0 if the tier does not hold it
+	 */
+	long getTimestamp(long sequence) {
+		final Decoded block = find(sequence);
+		if (block != null) {
+			return block.timestamps[(int) ((sequence - first) % BLOCK_SIZE)];
+		}
+		final long open = sequence - sealedEnd();
+		return open >= 0 && open < openCount ? openTimestamps[(int) open] : 0;
+	}
+
+	private long sealedEnd() {
+		return first + (long) blockCount * BLOCK_SIZE;
+	}
+
+	/**
+	 * @return the decoded sealed block holding a datum; null if the datum is not in
+	 *         a sealed block
+	 */
+	private Decoded find(long sequence) {
+		if (sequence < first || sequence >= sealedEnd()) {
+			return null;
+		}
+		final int index = (int) ((sequence - first) / BLOCK_SIZE); // among the sealed blocks
+		final long number = discarded + index;
+		if (last != null && last.number == number) {
+			return last;
+		}
+		Decoded block = cache.get(number);
+		if (block == null) {
+			block = decode(blocks[(head + index) % blocks.length], number, width, fieldBits);
+			cache.put(number, block);
+		}
+		last = block;
+		return block;
+	}
+
+	private void seal() {
+		final BitWriter w = writer;
+		w.reset();
+		// timestamps: delta-of-delta
+		long previous = openTimestamps[0], delta = 0;
+		w.write(previous, 64);
+		for (int i = 1; i < BLOCK_SIZE; i++) {
+			final long t = openTimestamps[i];
+			final long d = t - previous;
+			final long dod = d - delta;
+			if (dod == 0) {
+				w.write(0, 1);
+			} else if (fits(dod, 7)) {
+				w.write(0b10, 2);
+				w.write(dod, 7);
+			} else if (fits(dod, 9)) {
+				w.write(0b110, 3);
+				w.write(dod, 9);
+			} else if (fits(dod, 12)) {
+				w.write(0b1110, 4);
+				w.write(dod, 12);
+			} else if (fits(dod, 32)) {
+				w.write(0b11110, 5);
+				w.write(dod, 32);
+			} else {
+				w.write(0b11111, 5);
+				w.write(dod, 64);
+			}
+			previous = t;
+			delta = d;
+		}
+		final int valueBit = w.position;
+		// values: XOR with the previous value
+		long bits = openValues[0];
+		w.write(bits, width);
+		int leading = -1, trailing = 0; // meaningful-bit window of the previous XOR (none yet)
+		for (int i = 1; i < BLOCK_SIZE; i++) {
+			final long next = openValues[i];
+			final long xor = next ^ bits;
+			if (xor == 0) {
+				w.write(0, 1);
+			} else {
+				final int l = Long.numberOfLeadingZeros(xor) - (64 - width), t = Long.numberOfTrailingZeros(xor);
+				if (leading >= 0 && l >= leading && t >= trailing) { // fits the previous window
+					w.write(0b10, 2);
+					w.write(xor >>> trailing, width - leading - trailing);
+				} else {
+					final int meaningful = width - l - t;
+					w.write(0b11, 2);
+					w.write(l, fieldBits);
+					w.write(meaningful - 1, fieldBits);
+					w.write(xor >>> t, meaningful);
+					leading = l;
+					trailing = t;
+				}
+			}
+			bits = next;
+		}
+		final Block block = new Block(w.toArray(), valueBit);
+
+		if (blockCount == blocks.length) {
+			final Block[] b = new Block[blocks.length * 2];
+			for (int i = 0; i < blockCount; i++) {
+				b[i] = blocks[(head + i) % blocks.length];
+			}
+			blocks = b;
+			head = 0;
+		}
+		blocks[(head + blockCount) % blocks.length] = block;
+		blockCount++;
+		compressedBytes += block.words.length * 8L;
+		openCount = 0;
+		trim();
+	}
+
+	/**
+	 * Discards the oldest blocks beyond the tier's capacity.
+	 */
+	private void trim() {
+		while (blockCount > 0 && (long) (blockCount - 1) * BLOCK_SIZE + openCount >= capacity) {
+			compressedBytes -= blocks[head].words.length * 8L;
+			blocks[head] = null;
+			head = (head + 1) % blocks.length;
+			blockCount--;
+			first += BLOCK_SIZE;
+			discarded++;
+		}
+	}
+
+	private static Decoded decode(Block block, long number, int width, int fieldBits) {
+		final Decoded decoded = new Decoded(number);
+		final BitReader r = new BitReader(block.words);
+		long t = r.read(64), delta = 0;
+		decoded.timestamps[0] = t;
+		for (int i = 1; i < BLOCK_SIZE; i++) {
+			final long dod;
+			if (r.read(1) == 0) {
+				dod = 0;
+			} else if (r.read(1) == 0) {
+				dod = r.readSigned(7);
+			} else if (r.read(1) == 0) {
+				dod = r.readSigned(9);
+			} else if (r.read(1) == 0) {
+				dod = r.readSigned(12);
+			} else if (r.read(1) == 0) {
+				dod = r.readSigned(32);
+			} else {
+				dod = r.read(64);
+			}
+			delta += dod;
+			t += delta;
+			decoded.timestamps[i] = t;
+		}
+		r.position = block.valueBit;
+		long bits = r.read(width);
+		decoded.values[0] = bits;
+		int leading = 0, trailing = 0;
+		for (int i = 1; i < BLOCK_SIZE; i++) {
+			if (r.read(1) != 0) {
+				if (r.read(1) != 0) {
+					leading = (int) r.read(fieldBits);
+					trailing = width - leading - ((int) r.read(fieldBits) + 1);
+				}
+				bits ^= r.read(width - leading - trailing) << trailing;
+			}
+			decoded.values[i] = bits;
+		}
+		return decoded;
+	}
+
+	/**
+	 * @return whether a value fits in a signed field of the given width
+	 */
+	private static boolean fits(long value, int bits) {
+		return value >= -(1L << (bits - 1)) && value < (1L << (bits - 1));
+	}
+
+	private static final class Block {
+
+		final long[] words;
+		final int valueBit; // where the values start (the timestamps come first)
+
+		Block(long[] words, int valueBit) {
+			this.words = words;
+			this.valueBit = valueBit;
+		}
+	}
+
+	private static final class Decoded {
+
+		final long number; // blocks sealed before this one
+		final long[] values = new long[BLOCK_SIZE];
+		final long[] timestamps = new long[BLOCK_SIZE];
+
+		Decoded(long number) {
+			this.number = number;
+		}
+	}
+
+	/**
+	 * Writes fields of up to 64 bits, most significant bit first.
+	 */
+	private static final class BitWriter {
+
+		private final long[] words;
+		int position; // bits written
+
+		BitWriter(int capacity) {
+			words = new long[capacity];
+		}
+
+		void reset() {
+			Arrays.fill(words, 0, (position + 63) >>> 6, 0);
+			position = 0;
+		}
+
+		/**
+		 * Writes the low <code>bits</code> bits of a value.
+		 */
+		void write(long value, int bits) {
+			if (bits < 64) {
+				value &= (1L << bits) - 1;
+			}
+			final int word = position >>> 6, free = 64 - (position & 63);
+			if (bits <= free) {
+				words[word] |= value << (free - bits);
+			} else {
+				words[word] |= value >>> (bits - free);
+				words[word + 1] |= value << (64 - (bits - free));
+			}
+			position += bits;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(words, (position + 63) >>> 6);
+		}
+	}
+
+	private static final class BitReader {
+
+		private final long[] words;
+		int position;
+
+		BitReader(long[] words) {
+			this.words = words;
+		}
+
+		/**
+		 * Reads an unsigned field of 1 to 64 bits.
+		 */
+		long read(int bits) {
+			final int word = position >>> 6, used = position & 63, free = 64 - used;
+			final long value;
+			if (bits <= free) {
+				value = (words[word] << used) >>> (64 - bits);
+			} else {
+				final int rest = bits - free;
+				value = ((words[word] << used) >>> used) << rest | words[word + 1] >>> (64 - rest);
+			}
+			position += bits;
+			return value;
+		}
+
+		long readSigned(int bits) {
+			return read(bits) << (64 - bits) >> (64 - bits);
+		}
+	}
+}
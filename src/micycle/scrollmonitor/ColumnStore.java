@@ -0,0 +1,31 @@
+package micycle.scrollmonitor;
+
+/**
+ * Columnar (struct-of-arrays) storage for the datastreams of a monitor. Every
+ * column has the same length (the monitor's history); a stream takes its
+ * columns from the store (reusing those of removed streams) rather than
+ * allocating arrays of its own.
+ *
+ * @author Michael Carleton
+ * @see HeapColumnStore
+ * @see DirectColumnStore
+ */
+interface ColumnStore {
+
+	/**
+	 * @return a column (filled with -1, the value of datapoints that have not been
+	 *         pushed)
+	 */
+	FloatColumn allocate();
+
+	/**
+	 * Returns a column to the store; the column must not be used afterwards.
+	 */
+	void release(FloatColumn column);
+
+	/**
+	 * Releases the store's memory; no column of the store may be used afterwards.
+	 */
+	default void close() {
+	}
+}
@@ -2,6 +2,7 @@ package micycle.scrollmonitor;
 
 import static processing.core.PApplet.constrain;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 import processing.core.PVector;
@@ -9,19 +10,31 @@ import processing.core.PVector;
 /**
  * A container for data, index, queue position, draw-data, etc. A DataStream
  * does not draw the data itself, this is left to scrollmonitor. Supports
- * smoothing in the form of a moving average.
- * 
+ * smoothing, applied incrementally by a {@link SmoothingFilter} as data is
+ * pushed.
+ * <p>
+ * The data itself is held by a subclass in its own primitive type
+ * ({@link FloatDataStream}, {@link DoubleDataStream} or {@link LongDataStream})
+ * and is stored and labelled in that precision; it is converted to float only
+ * when read as draw data (vertex coordinates). Data of any type may be pushed
+ * to a stream of any type, and is converted to the stream's type as it is
+ * pushed. Subclasses only hold the data (as the bits of their type, through
+ * {@link #getBits(int)} and {@link #set(int, long, double)}): everything else
+ * (smoothing, extrema, the history pyramid, the paused snapshot, the cold
+ * tier) is done here in double precision, to which every type but long
+ * widens exactly.
+ *
  * @author Michael Carleton
  *
  */
-final class DataStream {
+abstract class DataStream {
 
 	/**
 	 * DataStream name (identifier)
 	 */
 	final String name;
 	/**
-	 * Which index in {@link #data} is the most recent, and where iteration should
+	 * Which index in the data ring is the most recent, and where iteration should
 	 * start
 	 */
 	int pointer;
@@ -34,17 +47,11 @@ final class DataStream {
 	 */
 	int strokeColour;
 	/**
-	 * Data smoothing (moving average)
-	 */
-	private int smoothing;
-	/**
-	 * Data (raw)
+	 * Data smoothing level (filter window length - 1)
 	 */
-	float[] data;
-	/**
-	 * Data used to draw points (vals)
-	 */
-	float[] drawData;
+	int smoothing;
+	Smoothing smoothingType;
+	SmoothingFilter filter;
 	/**
 	 * Can be drawn / data pushed to it?
 	 */
@@ -57,44 +64,141 @@ final class DataStream {
 	 * Ceiling value of data drawn (doesn't affect data pushed). Should be accessed
 	 * via setMaxValue().
 	 */
-	private float maxValue;
+	double maxValue;
+	double drawScale; // drawDimensions.y / maxValue
 	/**
-	 * Buffer/history size (size of {@link #data})
+	 * Buffer/history size (length of the data ring)
 	 */
 	final int length;
 	int direction = 1; // 1 scroll to left; -1 scroll to right
 	PVector drawDimensions; // used to scale raw data for draw data
 	String dataUnit = ""; // optional data label for axis values
 
-	float maxLiveValue; // current maximum value, used for datastream dynamically y axis
+	/**
+	 * How many buckets of one tier make up a bucket of the tier above.
+	 */
+	static final int TIER_FACTOR = 10;
+	/**
+	 * Number of tiers in the history pyramid: aggregated copies of the data at 10x,
+	 * 100x, ... coarser resolutions, each holding {@link #length} buckets.
+	 */
+	int tierCount;
+	/**
+	 * Total number of data pushed to the stream.
+	 */
+	long pushCount;
+	/**
+	 * Which resolution is being viewed (0 is raw data; n is tier n)
+	 */
+	int viewTier;
+	/**
+	 * Number of (newest) datapoints in view, at the view resolution
+	 */
+	int viewLength;
+	/**
+	 * Logical index (0 is oldest) of the first raw datapoint in view
+	 */
+	int viewFirst;
+	/**
+	 * Time view: the window of time in view (0 when the view is indexed by
+	 * datapoint rather than by time) and its start.
+	 */
+	private long viewWindow, viewStart;
+	/**
+	 * Number of raw datapoints between the newest datum and the right edge of the
+	 * (raw, indexed) view; 0 when the view follows the newest data. While
+	 * positive, the view stays on the same data as more is pushed.
+	 */
+	long viewOffset;
+	/**
+	 * Compressed retention of the data evicted from the ring (null if disabled).
+	 */
+	ColdTier cold;
 
-	float[] drawDataCache; // returns this when paused
-	float[] rawDataCache; // returns this to streaMouseOver when paused
-	private int pointerCache;
+	/**
+	 * Timestamp (nanoseconds) of each datum, in step with the data ring; null
+	 * until the stream is pushed timestamped data or is viewed by time.
+	 */
+	long[] timestamps;
+	private long newestTimestamp = Long.MIN_VALUE; // see monotonic()
+	private long batchEnd, batchInterval; // see startBatch()
+	private int batchCount;
+
+	/**
+	 * Sliding maximum & minimum of the raw data (used to dynamically scale the y
+	 * axis)
+	 */
+	final SlidingExtrema extrema;
+	private double maxCache, minCache; // returned when paused
+
+	/**
+	 * History pyramid: aggregated copies of the data at 10x, 100x, ... coarser
+	 * resolutions, each holding {@link #length} buckets.
+	 */
+	AggregateTier[] tiers = new AggregateTier[0];
+
+	/**
+	 * While paused, the number of slots overwritten since pausing, whose values
+	 * and timestamps are logged (a copy-on-write snapshot of the paused view);
+	 * slots not logged are unchanged.
+	 */
+	int logged;
+	private SnapshotLog rawLog, drawLog;
+	private long[] timestampLog;
+	int pointerCache;
+	long pushCountCache;
 	/**
 	 * When true, stream will return data as it was then the paused flag became true
-	 * (drawDataCache)
+	 * (the live data, except for slots overwritten since, which are logged)
 	 */
 	boolean paused = false;
 	boolean draw = true; // draw/render this datastream?
-
 	/**
-	 * todo auto push negative so it always scrolls? Scrolls to accomdate new data
-	 * only vs will always scroll
-	 * 
-	 * @param name
+	 * Set once the stream has been removed from its monitor (invalidating any
+	 * {@link StreamHandle handles} to it).
+	 */
+	volatile boolean removed = false;
+	/**
+	 * Queue that producer threads push to when concurrent ingestion is enabled
+	 * (null otherwise). Drained into this stream by the animation thread.
+	 */
+	volatile SampleQueue queue;
+	/**
+	 * Recording every datum pushed to this stream (null if not recording), and the
+	 * id the stream is recorded under.
+	 */
+	SampleRecorder recorder;
+	int recorderId;
+	/**
+	 * Retained graph vertices & shape, rebuilt in place each frame.
+	 */
+	final GraphGeometry geometry = new GraphGeometry();
+	/**
+	 * Cached text of the stream's value label & crosshair label.
+	 */
+	final Label valueLabel = new Label(), crosshairLabel = new Label();
+	/**
+	 * Incremented whenever the drawn graph changes (data pushed, rescaled,
+	 * (un)paused, etc.); used to tell whether cached results are stale.
+	 */
+	int version;
+	/**
+	 * Incremented whenever the drawn graph changes other than by data being
+	 * appended (rescaled, re-smoothed, view changed, (un)paused, hidden...).
 	 */
-	public DataStream(String name, int history, PVector drawDimensions) {
+	int layoutVersion;
+
+	DataStream(String name, int history, PVector drawDimensions, Smoothing smoothingType, int smoothing) {
 		this.name = name;
 		length = history;
 		active = true;
-		smoothing = 0;
+		this.smoothingType = smoothingType;
+		this.smoothing = constrain(smoothing, 0, length);
+		filter = smoothingType.createFilter(this.smoothing);
 		pointer = 0;
 
-		data = new float[length];
-		Arrays.fill(data, -1); // init to -1 so not drawn by stroke
-
-		drawData = new float[length];
+		viewLength = length;
+		viewFirst = 0;
 
 		fillColour = -1232323; // p.color(50, 50, 130, 150);
 		strokeColour = -12389127; // p.color(255, 80, 180, 100);
@@ -102,23 +206,532 @@ final class DataStream {
 		fill = true;
 		outline = true;
 		this.drawDimensions = drawDimensions;
+		extrema = new SlidingExtrema(length);
 	}
 
-	public DataStream(String name, int history, PVector drawDimensions, int smoothing) {
-		this(name, history, drawDimensions);
-		this.smoothing = smoothing;
-	}
+	/**
+	 * @return bits of the raw datum in a slot of the ring, in the stream's type
+	 */
+	abstract long getBits(int slot);
+
+	/**
+	 * @return smoothed (unscaled) datum in a slot of the ring
+	 */
+	abstract double getSmoothed(int slot);
+
+	/**
+	 * Sets the raw & smoothed data of a slot of the ring.
+	 *
+	 * @param bits     bits of the raw datum, in the stream's type
+	 * @param smoothed smoothed datum (unscaled)
+	 */
+	abstract void set(int slot, long bits, double smoothed);
+
+	/**
+	 * Sets the smoothed (unscaled) datum of a slot of the ring.
+	 */
+	abstract void setSmoothed(int slot, double smoothed);
+
+	/**
+	 * @return value of a datum, from its bits; NEGATIVE_INFINITY if the datum is
+	 *         empty
+	 */
+	abstract double value(long bits);
+
+	/**
+	 * @return bits of a datum converted to the stream's type
+	 */
+	abstract long bits(double datum);
+
+	/**
+	 * @see #bits(double)
+	 */
+	abstract long bits(long datum);
 
 	/**
-	 * Pushes data to the datastream.
-	 * 
+	 * @return bits per value of the stream's type (32 or 64)
+	 */
+	abstract int getValueWidth();
+
+	/**
+	 * @return the stream's type, as data is tagged in recordings
+	 *         ({@link SampleRecorder#FLOAT}, {@link SampleRecorder#DOUBLE} or
+	 *         {@link SampleRecorder#LONG})
+	 */
+	abstract int getType();
+
+	/**
+	 * Pushes data to the datastream. If the stream is timestamped, the datum is
+	 * stamped with {@link System#nanoTime()}.
+	 *
 	 * @param datum
 	 */
 	void push(float datum) {
-		data[pointer] = datum; // push raw datum
-		calcDrawData(pointer);
+		pushBits(bits(datum));
+	}
+
+	/**
+	 * Pushes timestamped data to the datastream. Timestamps should be
+	 * non-decreasing.
+	 *
+	 * @param timestamp nanoseconds
+	 * @param datum
+	 */
+	void push(long timestamp, float datum) {
+		pushBits(timestamp, bits(datum));
+	}
+
+	/**
+	 * @see #push(float)
+	 */
+	void pushDouble(double datum) {
+		pushBits(bits(datum));
+	}
+
+	/**
+	 * @see #push(long, float)
+	 */
+	void pushDouble(long timestamp, double datum) {
+		pushBits(timestamp, bits(datum));
+	}
+
+	/**
+	 * @see #push(float)
+	 */
+	void pushLong(long datum) {
+		pushBits(bits(datum));
+	}
+
+	/**
+	 * @see #push(long, float)
+	 */
+	void pushLong(long timestamp, long datum) {
+		pushBits(timestamp, bits(datum));
+	}
+
+	private void pushBits(long bits) {
+		preserve(1);
+		evict(1);
+		if (timestamps != null) {
+			timestamps[pointer] = monotonic(System.nanoTime());
+		}
+		if (recorder != null) {
+			recorder.record(recorderId, timestamps != null ? timestamps[pointer] : System.nanoTime(), bits);
+		}
+		append(bits);
+	}
+
+	private void pushBits(long timestamp, long bits) {
+		preserve(1);
+		evict(1);
+		if (timestamps == null) {
+			enableTimestamps();
+		}
+		timestamps[pointer] = timestamp = monotonic(timestamp);
+		if (recorder != null) {
+			recorder.record(recorderId, timestamp, bits);
+		}
+		append(bits);
+	}
+
+	private void append(long bits) {
+		final double datum = value(bits);
+		extrema.push(pointer, datum);
+		set(pointer, bits, filter.filter(datum)); // push raw datum
+		if (tiers.length > 0) {
+			tiers[0].add(datum); // cascades up the pyramid
+		}
+		version++;
+		pushCount++;
 		pointer++; // inc pointer
 		pointer %= (length);
+		followView(1);
+	}
+
+	/**
+	 * Pushes a batch of data to the datastream, converting each datum to the
+	 * stream's type. If the stream is timestamped, the batch is spread over the
+	 * time since its previous datum (see {@link #startBatch(int)}).
+	 *
+	 * @param src    source of the data
+	 * @param offset index of the first datum in src
+	 * @param count  number of data to push
+	 * @throws IndexOutOfBoundsException if the range is not within src (nothing is
+	 *                                   pushed)
+	 */
+	void push(float[] src, int offset, int count) {
+		checkRange(src, offset, count);
+		if (count == 0) {
+			return;
+		}
+		startBatch(count);
+		for (int i = 0; i < count; i++) {
+			pushBatched(i, bits(src[offset + i]));
+		}
+	}
+
+	/**
+	 * Pushes the remaining data of a buffer to the datastream (advancing its
+	 * position to its limit).
+	 *
+	 * @param src source of the data
+	 * @see #push(float[], int, int)
+	 */
+	void push(FloatBuffer src) {
+		final int count = src.remaining();
+		if (count <= 0) {
+			return;
+		}
+		startBatch(count);
+		for (int i = 0; i < count; i++) {
+			pushBatched(i, bits(src.get()));
+		}
+	}
+
+	/**
+	 * Pushes the datum at index <code>i</code> of a batch.
+	 */
+	private void pushBatched(int i, long bits) {
+		preserve(1);
+		evict(1);
+		final long timestamp = batchTimestamp(i);
+		if (timestamps != null) {
+			timestamps[pointer] = timestamp;
+		}
+		if (recorder != null) {
+			recorder.record(recorderId, timestamp, bits);
+		}
+		append(bits);
+	}
+
+	/**
+	 * Starts timestamping a batch of data pushed at once. If the stream is
+	 * timestamped, rather than stamping every datum of the batch with the same
+	 * instant, the batch is spread evenly over the time since the stream's
+	 * previous datum (its last datum being stamped now): a batch holds data
+	 * gathered over that interval, so a time view draws it across the interval,
+	 * and the cold tier sees steady deltas between timestamps rather than a run of
+	 * zeros and then a jump.
+	 *
+	 * @param count size of the batch
+	 * @see #batchTimestamp(int)
+	 */
+	final void startBatch(int count) {
+		if (timestamps != null) {
+			final long previous = newestTimestamp;
+			batchEnd = monotonic(System.nanoTime());
+			batchInterval = previous == Long.MIN_VALUE ? 0 : batchEnd - previous;
+		} else {
+			batchEnd = System.nanoTime();
+			batchInterval = 0;
+		}
+		batchCount = count;
+	}
+
+	/**
+	 * @param i index of a datum within the batch being pushed
+	 * @return timestamp of the datum (for an untimestamped stream, the time of the
+	 *         push, as recorded)
+	 * @see #startBatch(int)
+	 */
+	final long batchTimestamp(int i) {
+		return batchEnd - (long) (batchInterval * ((double) (batchCount - 1 - i) / batchCount));
+	}
+
+	/**
+	 * Converts a datum to the stream's type, as the bits of a queued sample.
+	 */
+	final long toSample(double datum) {
+		return bits(datum);
+	}
+
+	/**
+	 * @see #toSample(double)
+	 */
+	final long toSample(long datum) {
+		return bits(datum);
+	}
+
+	/**
+	 * Pushes a sample drained from the stream's queue.
+	 *
+	 * @param timestamp nanoseconds; {@link SampleQueue#NO_TIMESTAMP} if the sample
+	 *                  was queued without one
+	 * @param sample    bits of the datum, from {@link #toSample(double)}
+	 */
+	final void pushSample(long timestamp, long sample) {
+		if (timestamp == SampleQueue.NO_TIMESTAMP) {
+			pushBits(sample);
+		} else {
+			pushBits(timestamp, sample);
+		}
+	}
+
+	/**
+	 * If paused, logs the slots about to be overwritten by the next
+	 * <code>n</code> pushes (those not already logged), so that the paused view
+	 * is preserved.
+	 */
+	final void preserve(int n) {
+		if (!paused) {
+			return;
+		}
+		n = Math.min(n, length - logged);
+		for (int k = logged; k < logged + n; k++) {
+			final int slot = (pointerCache + k) % length;
+			rawLog.add(getBits(slot));
+			drawLog.add(smoothedBits(getSmoothed(slot)));
+			if (timestamps != null) {
+				if (timestampLog == null || timestampLog.length <= k) {
+					timestampLog = Arrays.copyOf(timestampLog == null ? new long[0] : timestampLog,
+							Math.min(length, Math.max(16, k * 2)));
+				}
+				timestampLog[k] = timestamps[slot];
+			}
+		}
+		logged += n;
+	}
+
+	/**
+	 * @return bits of a smoothed datum as the ring holds it: a float for streams
+	 *         of a 32-bit type, otherwise a double
+	 */
+	private long smoothedBits(double smoothed) {
+		return getValueWidth() == 32 ? Float.floatToRawIntBits((float) smoothed) & 0xFFFFFFFFL
+				: Double.doubleToRawLongBits(smoothed);
+	}
+
+	/**
+	 * @see #smoothedBits(double)
+	 */
+	private double smoothed(long bits) {
+		return getValueWidth() == 32 ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Appends the data held in the slots about to be overwritten by the next
+	 * <code>n</code> pushes to the cold tier (if enabled), oldest first.
+	 */
+	final void evict(int n) {
+		if (cold == null) {
+			return;
+		}
+		final int held = (int) Math.min(pushCount, length);
+		for (int i = length - held; i < n; i++) { // slots before these have never been pushed
+			final int slot = (pointer + i) % length;
+			cold.add(timestamps != null ? timestamps[slot] : 0, getBits(slot));
+		}
+	}
+
+	/**
+	 * Keeps a scrolled view on the same data as more is pushed.
+	 *
+	 * @param count number of data just pushed
+	 */
+	final void followView(int count) {
+		if (viewOffset > 0 && !paused) {
+			viewOffset = Math.min(viewOffset + count, getMaxViewOffset());
+		}
+	}
+
+	/**
+	 * Pushes a datum from any thread: enqueues it if concurrent ingestion is
+	 * enabled, otherwise pushes it directly. If the queue is closed mid-offer
+	 * (ingestion being disabled or re-enabled), the stream's current queue is
+	 * used instead, if any; if the stream has been removed, the datum is
+	 * discarded.
+	 *
+	 * @param datum
+	 */
+	void offer(float datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		push(datum);
+	}
+
+	/**
+	 * Pushes a timestamped datum from any thread.
+	 *
+	 * @param timestamp nanoseconds
+	 * @param datum
+	 * @see #offer(float)
+	 */
+	void offer(long timestamp, float datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(timestamp, toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		push(timestamp, datum);
+	}
+
+	/**
+	 * @see #offer(float)
+	 */
+	void offerDouble(double datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		pushDouble(datum);
+	}
+
+	/**
+	 * @see #offer(long, float)
+	 */
+	void offerDouble(long timestamp, double datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(timestamp, toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		pushDouble(timestamp, datum);
+	}
+
+	/**
+	 * @see #offer(float)
+	 */
+	void offerLong(long datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		pushLong(datum);
+	}
+
+	/**
+	 * @see #offer(long, float)
+	 */
+	void offerLong(long timestamp, long datum) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			if (q.offer(timestamp, toSample(datum)) || removed) { // a removed stream's closed queue discards
+				return;
+			}
+		}
+		pushLong(timestamp, datum);
+	}
+
+	/**
+	 * Pushes a batch of data from any thread: enqueues each datum if concurrent
+	 * ingestion is enabled, otherwise bulk-pushes the batch directly.
+	 *
+	 * @see #push(float[], int, int)
+	 */
+	void offer(float[] src, int offset, int count) {
+		checkRange(src, offset, count);
+		final int end = offset + count;
+		SampleQueue q;
+		while ((q = queue) != null) {
+			while (offset < end && q.offer(toSample(src[offset]))) {
+				offset++;
+			}
+			if (offset >= end || removed) {
+				return;
+			}
+		}
+		push(src, offset, end - offset);
+	}
+
+	/**
+	 * Checks that a range of an array exists, before a bulk push touches any
+	 * state (so an out-of-range push changes nothing).
+	 *
+	 * @throws IndexOutOfBoundsException if it doesn't
+	 */
+	static void checkRange(float[] src, int offset, int count) {
+		if (offset < 0 || count < 0 || offset > src.length - count) { // overflow-safe
+			throw new IndexOutOfBoundsException(
+					"Range [" + offset + ", " + offset + " + " + count + ") out of bounds for length " + src.length);
+		}
+	}
+
+	/**
+	 * Pushes the remaining data of a buffer from any thread.
+	 *
+	 * @see #offer(float[], int, int)
+	 */
+	void offer(FloatBuffer src) {
+		SampleQueue q;
+		while ((q = queue) != null) {
+			while (src.hasRemaining() && q.offer(toSample(src.get(src.position())))) {
+				src.position(src.position() + 1);
+			}
+			if (!src.hasRemaining() || removed) {
+				return;
+			}
+		}
+		push(src);
+	}
+
+	/**
+	 * Allocates the timestamp ring. Data already in the stream get a timestamp of
+	 * 0, so they fall outside of any time view.
+	 */
+	void enableTimestamps() {
+		if (timestamps == null) {
+			timestamps = new long[length];
+		}
+	}
+
+	/**
+	 * Clamps the timestamp of the datum about to be pushed to no earlier than the
+	 * newest timestamp held, so the timestamp ring stays sorted (time views
+	 * binary-search it) even if pushed timestamps go backwards, or a stream mixes
+	 * its own timestamps with the {@link System#nanoTime()} of untimestamped
+	 * pushes.
+	 *
+	 * @param timestamp nanoseconds
+	 * @return the timestamp to store
+	 */
+	final long monotonic(long timestamp) {
+		if (timestamp < newestTimestamp) {
+			return newestTimestamp;
+		}
+		return newestTimestamp = timestamp;
+	}
+
+	/**
+	 * @return timestamp of the newest datum (as it was when paused, if paused);
+	 *         Long.MIN_VALUE if the stream isn't timestamped
+	 */
+	long getNewestTimestamp() {
+		if (timestamps == null || pushCount == 0) {
+			return Long.MIN_VALUE;
+		}
+		return getTimestamp(length - 1);
+	}
+
+	/**
+	 * @param index logical raw index (0 is oldest)
+	 */
+	private long getTimestamp(int index) {
+		if (paused) {
+			if (index < logged) {
+				return timestampLog == null || index >= timestampLog.length ? 0 : timestampLog[index];
+			}
+			return timestamps[(pointerCache + index) % length];
+		}
+		return timestamps[(pointer + index) % length];
+	}
+
+	/**
+	 * Sets whether the stream is drawn.
+	 */
+	void setDraw(boolean draw) {
+		this.draw = draw;
+		version++;
+		layoutVersion++;
 	}
 
 	void pushEmpty() {
@@ -127,96 +740,442 @@ final class DataStream {
 
 	/**
 	 * Sets a new smoothing level
-	 * 
+	 *
 	 * @param smoothing
 	 */
 	void setSmoothing(int smoothing) {
-		smoothing = constrain(smoothing, 0, length); // floor & ceiling TODO remove
-		if (this.smoothing != smoothing) { // perform if different | TODO fix with smoothing data
+		setSmoothing(smoothingType, smoothing);
+	}
+
+	/**
+	 * Sets a new smoothing filter and level, recomputing the draw data if either
+	 * has changed.
+	 *
+	 * @param smoothingType
+	 * @param smoothing
+	 */
+	void setSmoothing(Smoothing smoothingType, int smoothing) {
+		smoothing = constrain(smoothing, 0, length); // floor & ceiling
+		if (this.smoothing != smoothing || this.smoothingType != smoothingType) { // perform if different
 			this.smoothing = smoothing;
+			this.smoothingType = smoothingType;
+			filter = smoothingType.createFilter(smoothing);
 			recalcDrawData();
 		}
 	}
 
-	void setMaxValue(float maxValue) {
+	/**
+	 * Sets the ceiling value of data drawn. Draw data is scaled when it is read, so
+	 * this is O(1).
+	 *
+	 * @param maxValue
+	 */
+	void setMaxValue(double maxValue) {
 		this.maxValue = maxValue;
-		for (int i = 0; i < drawData.length; i++) {
-			drawData[i] = constrain(data[i], -1, maxValue - 1) * (drawDimensions.y / maxValue); // -1 because of stroke
-		}
+		drawScale = drawDimensions.y / maxValue;
+		version++;
+		layoutVersion++;
+	}
+
+	void setDrawDimensions(PVector drawDimensions) {
+		this.drawDimensions = drawDimensions;
+		drawScale = drawDimensions.y / maxValue;
+		version++;
+		layoutVersion++;
 	}
 
+	/**
+	 * Constrains a datum to the draw dimensions and scales it to a draw coordinate;
+	 * the only point at which data is converted to float.
+	 */
+	final float scale(double datum) {
+		final double high = maxValue - 1; // -1 is stroke Weight
+		return (float) ((datum < 0 ? 0 : (datum > high ? high : datum)) * drawScale);
+	}
+
+	/**
+	 * Recomputes all smoothed data in a single pass (oldest to newest) through the
+	 * filter.
+	 */
 	void recalcDrawData() {
-		for (int i = 0; i < data.length; i++) {
-			calcDrawData(i);
+		preserve(length); // every slot is about to be overwritten
+		filter.reset();
+		for (int i = 0; i < length; i++) {
+			final int index = (pointer + i) % length;
+			setSmoothed(index, filter.filter(value(getBits(index))));
+		}
+		version++;
+		layoutVersion++;
+	}
+
+	/**
+	 * Sets how many aggregate tiers the stream should maintain above its raw
+	 * data. Existing tiers are discarded and rebuilt from the raw data.
+	 *
+	 * @param count number of tiers (0 for none)
+	 */
+	void setTiers(int count) {
+		tierCount = Math.max(0, count);
+		buildTiers(tierCount);
+		viewTier = Math.min(viewTier, tierCount);
+		version++;
+		layoutVersion++;
+	}
+
+	/**
+	 * Replaces the history pyramid with <code>count</code> tiers, filled from the
+	 * raw data.
+	 */
+	private void buildTiers(int count) {
+		tiers = new AggregateTier[count];
+		AggregateTier next = null;
+		for (int t = tiers.length; t > 0; t--) {
+			next = new AggregateTier(length, TIER_FACTOR, tierSpan(t), next);
+			tiers[t - 1] = next;
+		}
+		if (tiers.length > 0) {
+			final int pushed = (int) Math.min(pushCount, length);
+			for (int i = length - pushed; i < length; i++) {
+				tiers[0].add(value(getBits((pointer + i) % length)));
+			}
+		}
+	}
+
+	/**
+	 * @return raw datapoints per bucket of a tier
+	 */
+	static int tierSpan(int tier) {
+		return (int) Math.pow(TIER_FACTOR, tier);
+	}
+
+	/**
+	 * Sets the view to (at least) the newest <code>span</code> raw datapoints. The
+	 * finest resolution whose view fits within {@link #length} datapoints is used.
+	 *
+	 * @param span number of raw datapoints to view
+	 */
+	void setView(int span) {
+		int tier = 0;
+		long points = span;
+		while (points > length && tier < tierCount) {
+			tier++;
+			points = (span + (long) tierSpan(tier) - 1) / tierSpan(tier); // ceil
 		}
+		viewTier = tier;
+		viewLength = (int) Math.max(2, Math.min(points, length));
+		viewFirst = length - viewLength;
+		viewWindow = 0;
+		viewOffset = tier == 0 ? Math.min(viewOffset, getMaxViewOffset()) : 0;
+		version++;
+		layoutVersion++;
 	}
 
 	/**
-	 * Calculates draw data for at the current pointer, taking into account
-	 * smoothing.
+	 * Sets the view to the raw data timestamped within a window of time (plus the
+	 * datum before the window, so that the graph reaches the left edge). The first
+	 * datum in view is found by binary search over the timestamp ring.
+	 *
+	 * @param start  start of the window (nanoseconds)
+	 * @param window length of the window (nanoseconds); > 0
 	 */
-	private void calcDrawData(int pointer) {
-		float drawDatum = data[pointer]; // sum of moving average
-		int skippedDataPoints = 0; // number of "empty" points skipped in average calculation
-		for (int i = 0; i < smoothing; i++) { // calc moving average
-			int newPointer = Math.floorMod(pointer - 1 - i, length); // pointer to previous data
-			if (data[newPointer] != Float.NEGATIVE_INFINITY) {
-				drawDatum += data[newPointer]; // sum moving average
+	void setTimeView(long start, long window) {
+		if (timestamps == null) {
+			enableTimestamps();
+		}
+		int lo = 0, hi = length; // find first datum timestamped at or after start
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (getTimestamp(mid) < start) {
+				lo = mid + 1;
 			} else {
-				skippedDataPoints++;
+				hi = mid;
 			}
 		}
-		drawDatum /= (smoothing + 1 - skippedDataPoints); // divide to get average
+		final int first = Math.min(Math.max(0, lo - 1), length - 1);
+		if (viewTier != 0 || viewFirst != first || viewStart != start || viewWindow != window) {
+			viewTier = 0;
+			viewFirst = first;
+			viewLength = length - first;
+			viewStart = start;
+			viewWindow = window;
+			viewOffset = 0;
+			version++;
+			layoutVersion++;
+		}
+	}
 
-		// constrain & scale (-1 is stroke Weight)
-		drawData[Math.floorMod(pointer - 1, length)] = constrain(drawDatum, 0, maxValue - 1) * (drawDimensions.y / maxValue);
+	/**
+	 * Gets the x coordinate of a datapoint within the view.
+	 *
+	 * @param index index within the view
+	 * @param width width of the graph
+	 * @return x coordinate (datapoints either side of a time view lie outside of
+	 *         [0, width])
+	 */
+	float getViewX(int index, float width) {
+		if (viewWindow > 0) {
+			return (float) ((getTimestamp(viewFirst + index) - viewStart) * (double) width / viewWindow);
+		}
+		return index * (width / (viewLength - 1));
 	}
 
 	/**
-	 * Gets draw data that is logically at the index given (where 0 is left most
-	 * datapoint) or, ordered by recency, where 0 is oldest data point
-	 * 
+	 * @param x     x coordinate
+	 * @param width width of the graph
+	 * @return index (within the view) of the last datapoint at or before x; 0 if
+	 *         there is none
+	 */
+	int getViewIndexBefore(float x, float width) {
+		if (viewWindow > 0) {
+			final long t = viewStart + (long) ((double) x / width * viewWindow);
+			int lo = viewFirst, hi = length; // find first datum after t
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (getTimestamp(mid) <= t) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return Math.max(0, lo - 1 - viewFirst);
+		}
+		return Math.max(0, Math.min((int) (x / (width / (viewLength - 1))), viewLength - 1));
+	}
+
+	/**
+	 * Gets draw data that is logically at the index given within the view, ordered
+	 * by recency, where 0 is the oldest (left most) data point and viewLength - 1
+	 * is the most recent. Draw data is the smoothed data (or the bucket mean for
+	 * aggregate tiers), constrained and scaled to the draw dimensions.
+	 *
 	 * @param index
 	 * @return
 	 */
 	float getDrawData(int index) {
-		if (paused) {
-			// -1, because pointer is incremented after push
-			int i = Math.floorMod(pointerCache + index - 1, length);
-			return drawDataCache[i];
+		final double datum;
+		if (viewTier > 0) {
+			datum = tiers[viewTier - 1].getMean(index, viewLength);
+		} else if (viewOffset > 0 && viewFirst + index < viewOffset) {
+			datum = value(getColdBits(viewFirst + index - viewOffset)); // unsmoothed
+		} else if (paused) {
+			final int i = (int) (viewFirst + index - viewOffset);
+			datum = i < logged ? smoothed(drawLog.get(i)) : getSmoothed((pointerCache + i) % length);
 		} else {
-			int i = Math.floorMod(pointer + index - 1, length);
-			return drawData[i];
+			datum = getSmoothed((int) ((pointer + viewFirst + index - viewOffset) % length));
 		}
+		return scale(datum);
+	}
+
+	/**
+	 * Gets the lowest draw data at an index within the view: the bucket minimum
+	 * for aggregate tiers (whose mean hides a bucket's dips); otherwise the draw
+	 * data itself.
+	 *
+	 * @see #getDrawData(int)
+	 */
+	float getDrawMin(int index) {
+		return viewTier > 0 ? scale(tiers[viewTier - 1].getMin(index, viewLength)) : getDrawData(index);
+	}
+
+	/**
+	 * Gets the highest draw data at an index within the view: the bucket maximum
+	 * for aggregate tiers (whose mean hides a bucket's spikes); otherwise the draw
+	 * data itself.
+	 *
+	 * @see #getDrawData(int)
+	 */
+	float getDrawMax(int index) {
+		return viewTier > 0 ? scale(tiers[viewTier - 1].getMax(index, viewLength)) : getDrawData(index);
 	}
 
 	/**
 	 * Gets raw data (data pushed to stream) that is logically at the index given
-	 * (where 0 is left most datapoint)
-	 * 
+	 * within the view (where 0 is left most datapoint and viewLength - 1 is the
+	 * most recent). For aggregate tiers, this is the bucket mean.
+	 *
 	 * @param index
 	 * @return
 	 */
-	float getRawData(int index) {
-		if (paused) {
-			int i = Math.floorMod(pointerCache - 1 + index - length, length);
-			return rawDataCache[i];
+	double getRawData(int index) {
+		if (viewTier > 0) {
+			return tiers[viewTier - 1].getMean(index, viewLength);
+		}
+		return value(getRawBits(index));
+	}
+
+	/**
+	 * Gets the bits of the raw datum at an index within a raw view (viewTier 0).
+	 *
+	 * @param index index within the view
+	 */
+	final long getRawBits(int index) {
+		if (viewOffset > 0 && viewFirst + index < viewOffset) {
+			return getColdBits(viewFirst + index - viewOffset);
+		} else if (paused) {
+			final int i = (int) (viewFirst + index - viewOffset);
+			return i < logged ? rawLog.get(i) : getBits((pointerCache + i) % length);
+		} else {
+			return getBits((int) ((pointer + viewFirst + index - viewOffset) % length));
+		}
+	}
+
+	/**
+	 * @param index logical raw index before the ring
+	 * @return bits of the datum from the cold tier; bits of -1 if it is not
+	 *         retained
+	 * @see #getColdSequence(long)
+	 */
+	private long getColdBits(long index) {
+		final long sequence = getColdSequence(index);
+		return sequence < 0 ? bits(-1L) : cold.get(sequence);
+	}
+
+	/**
+	 * Sets a label to the raw data at an index within the view, followed by the
+	 * stream's unit.
+	 *
+	 * @param label     label to set
+	 * @param index     index within the view
+	 * @param precision decimal places
+	 * @return the label
+	 */
+	Label formatRawData(Label label, int index, int precision) {
+		return label.set(getRawData(index), precision, dataUnit);
+	}
+
+	/**
+	 * @return maximum datum currently held by the stream at the view resolution
+	 *         (as it was when paused, if paused); NEGATIVE_INFINITY if no data has
+	 *         been pushed
+	 */
+	double getMaxLiveValue() {
+		if (viewTier > 0) {
+			return tiers[viewTier - 1].getMax();
+		}
+		return paused ? maxCache : extrema.max();
+	}
+
+	/**
+	 * @return minimum datum currently held by the stream at the view resolution
+	 *         (as it was when paused, if paused); POSITIVE_INFINITY if no data has
+	 *         been pushed
+	 */
+	double getMinLiveValue() {
+		if (viewTier > 0) {
+			return tiers[viewTier - 1].getMin();
+		}
+		return paused ? minCache : extrema.min();
+	}
+
+	/**
+	 * @param index logical raw index before the ring (negative; -1 is the datum
+	 *              evicted last, as of pausing if paused)
+	 * @return sequence number of the datum in the cold tier; -1 if the tier does
+	 *         not hold it
+	 */
+	final long getColdSequence(long index) {
+		final long sequence = (paused ? pushCountCache : pushCount) - length + index;
+		return cold != null && cold.holds(sequence) ? sequence : -1;
+	}
+
+	/**
+	 * Sets how many data evicted from the ring are retained (compressed) in the
+	 * stream's cold tier, so that the view can be scrolled back through them.
+	 * Data evicted before the tier is enabled is not retained.
+	 *
+	 * @param samples number of data; 0 to disable the tier (discarding its data)
+	 */
+	void setColdRetention(long samples) {
+		if (samples <= 0) {
+			cold = null;
+			setViewOffset(viewOffset);
+		} else if (cold == null) {
+			cold = new ColdTier(samples, Math.max(0, pushCount - length), getValueWidth());
 		} else {
-			int i = Math.floorMod(pointer - 1 + index - length, length);
-			return data[i];
+			cold.setCapacity(samples);
+			setViewOffset(viewOffset);
 		}
 	}
 
+	/**
+	 * @return size of the stream's cold tier (in bytes of compressed data)
+	 */
+	long getColdBytes() {
+		return cold == null ? 0 : cold.getCompressedBytes();
+	}
+
+	/**
+	 * Scrolls the (raw, indexed) view back from the newest data; data older than
+	 * the ring is read from the cold tier.
+	 *
+	 * @param offset number of raw datapoints between the newest datum and the
+	 *               right edge of the view; constrained to the data held
+	 */
+	void setViewOffset(long offset) {
+		offset = viewTier == 0 && viewWindow == 0 ? Math.max(0, Math.min(offset, getMaxViewOffset())) : 0;
+		if (offset != viewOffset) {
+			viewOffset = offset;
+			version++;
+			layoutVersion++;
+		}
+	}
+
+	/**
+	 * @return the largest view offset at which the view is filled by data held
+	 *         (in the ring or the cold tier)
+	 */
+	long getMaxViewOffset() {
+		final long count = paused ? pushCountCache : pushCount;
+		long held = Math.min(count, length);
+		if (cold != null) {
+			held += Math.max(0, Math.max(0, count - length) - cold.first());
+		}
+		return Math.max(0, held - viewLength);
+	}
+
 	void pause() {
-		drawDataCache = drawData.clone();
-		rawDataCache = data.clone();
+		maxCache = extrema.max();
+		minCache = extrema.min();
+		rawLog = new SnapshotLog(length, getValueWidth());
+		drawLog = new SnapshotLog(length, getValueWidth());
+		for (AggregateTier tier : tiers) {
+			tier.pause();
+		}
+		logged = 0; // O(1): slots are logged as they are overwritten
 		paused = true;
 		pointerCache = pointer;
+		pushCountCache = pushCount;
+		version++;
+		layoutVersion++;
 	}
 
 	void resume() {
+		for (AggregateTier tier : tiers) {
+			tier.resume();
+		}
 		paused = false;
-		drawDataCache = null; // release memory
-		rawDataCache = null; // release memory
+		if (viewOffset > 0) { // stay on the same data
+			viewOffset = Math.min(viewOffset + pushCount - pushCountCache, getMaxViewOffset());
+		}
+		version++;
+		layoutVersion++;
+		rawLog = null; // release memory
+		drawLog = null;
+		timestampLog = null;
+	}
+
+	/**
+	 * Returns the stream's columns to its store (once removed from its monitor).
+	 * Streams that hold their data in arrays of their own have nothing to return.
+	 */
+	void release() {
+	}
+
+	/**
+	 * Moves the stream's data into columns of another store (of the same column
+	 * length), releasing its current columns. Streams that hold their data in
+	 * arrays of their own are left as they are.
+	 */
+	void moveTo(ColumnStore store) {
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package micycle.scrollmonitor;
+
+/**
+ * How a datastream's data is reduced to vertices when its graph is drawn.
+ * Zoomed-out views of the history pyramid are always drawn with {@link #M4},
+ * from each bucket's minimum and maximum, so that the spikes and dips the
+ * buckets aggregate stay visible.
+ * 
+ * @author Michael Carleton
+ * @see ScrollMonitor#setDecimation(Decimation)
+ */
+public enum Decimation {
+
+	/**
+	 * Every datapoint is drawn (subject to the
+	 * {@link ScrollMonitor#setDrawSmoothing(int) draw smoothing} level).
+	 */
+	NONE,
+	/**
+	 * Each pixel column of the graph is reduced to its first, minimum, maximum and
+	 * last datapoints (default). The drawn graph is pixel-identical to drawing
+	 * every datapoint (peaks are preserved exactly), while the number of vertices
+	 * is bounded by the width of the monitor rather than the length of the
+	 * history.
+	 */
+	M4,
+	/**
+	 * Largest-Triangle-Three-Buckets downsampling to two datapoints per pixel
+	 * column. Gives a smoother-looking graph than {@link #M4} with fewer vertices
+	 * but may clip the tops of narrow peaks.
+	 */
+	LTTB
+}
@@ -0,0 +1,177 @@
+package micycle.scrollmonitor;
+
+/**
+ * Reduces the draw data of a datastream to the vertices of its graph. Vertices
+ * are appended, in draw coordinates, to the datastream's retained
+ * {@link GraphGeometry}.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class Decimator {
+
+	Decimation mode = Decimation.M4;
+	/**
+	 * Draw every nth datapoint (used when mode is {@link Decimation#NONE})
+	 */
+	int step = 1;
+
+	private GraphGeometry geometry; // being appended to
+
+	/**
+	 * Computes the vertices of the graph of a datastream.
+	 * 
+	 * @param d      datastream
+	 * @param width  width of the graph
+	 * @param height height of the graph
+	 */
+	void decimate(DataStream d, float width, float height) {
+		geometry = d.geometry;
+		if (d.viewTier > 0) { // only M4 keeps the extremes of aggregate buckets
+			m4(d, width, height);
+			return;
+		}
+		switch (mode) {
+			case M4 :
+				m4(d, width, height);
+				break;
+			case LTTB :
+				lttb(d, width, height, 2 * (int) Math.ceil(width));
+				break;
+			case NONE :
+			default :
+				every(d, width, height, step);
+				break;
+		}
+	}
+
+	private void every(DataStream d, float width, float height, int step) {
+		for (int i = 0; i < d.viewLength; i += step) {
+			emit(d.getViewX(i, width), height - d.getDrawData(i));
+		}
+	}
+
+	/**
+	 * M4 aggregation: the first, min, max and last datapoints of each pixel column
+	 * are emitted in index order. In aggregate tier views the min and max are
+	 * taken from the buckets' minima and maxima rather than their means, so the
+	 * graph is drawn with the envelope of the data it aggregates (spikes and dips
+	 * survive zooming out).
+	 */
+	private void m4(DataStream d, float width, float height) {
+		final boolean envelope = d.viewTier > 0;
+		boolean open = false; // is a column being aggregated?
+		int column = 0;
+		int first = 0, min = 0, max = 0, last = 0;
+		float firstVal = 0, minVal = 0, maxVal = 0, lastVal = 0;
+
+		for (int i = 0; i < d.viewLength; i++) {
+			final float val = d.getDrawData(i);
+			final float low = envelope ? d.getDrawMin(i) : val;
+			final float high = envelope ? d.getDrawMax(i) : val;
+			final int c = (int) Math.floor(d.getViewX(i, width));
+			if (!open || c != column) {
+				if (open) {
+					emitColumn(d, width, height, first, firstVal, min, minVal, max, maxVal, last, lastVal);
+				}
+				open = true;
+				column = c;
+				first = min = max = last = i;
+				firstVal = lastVal = val;
+				minVal = low;
+				maxVal = high;
+			} else {
+				last = i;
+				lastVal = val;
+				if (low < minVal) {
+					min = i;
+					minVal = low;
+				}
+				if (high > maxVal) {
+					max = i;
+					maxVal = high;
+				}
+			}
+		}
+		if (open) {
+			emitColumn(d, width, height, first, firstVal, min, minVal, max, maxVal, last, lastVal);
+		}
+	}
+
+	private void emitColumn(DataStream d, float width, float height, int first, float firstVal, int min, float minVal, int max,
+			float maxVal, int last, float lastVal) {
+		emit(d.getViewX(first, width), height - firstVal);
+		// emit min & max in index order, skipping any that coincide with first/last
+		// (the min & max of a bucket share its index, but not its mean's value)
+		final boolean minFirst = min < max || (min == max && minVal != maxVal);
+		final int a = minFirst ? min : max;
+		final int b = minFirst ? max : min;
+		final float aVal = minFirst ? minVal : maxVal;
+		final float bVal = minFirst ? maxVal : minVal;
+		if (!(a == first && aVal == firstVal) && !(a == last && aVal == lastVal)) {
+			emit(d.getViewX(a, width), height - aVal);
+		}
+		if (!(b == first && bVal == firstVal) && !(b == last && bVal == lastVal) && !(b == a && bVal == aVal)) {
+			emit(d.getViewX(b, width), height - bVal);
+		}
+		if (last != first) {
+			emit(d.getViewX(last, width), height - lastVal);
+		}
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets: picks the datapoint from each bucket that
+	 * forms the largest triangle with the previously picked point and the average
+	 * of the next bucket.
+	 */
+	private void lttb(DataStream d, float width, float height, int threshold) {
+		final int n = d.viewLength;
+		if (threshold >= n || threshold < 3) {
+			every(d, width, height, 1);
+			return;
+		}
+
+		final double bucketSize = (double) (n - 2) / (threshold - 2);
+		float aX = d.getViewX(0, width); // previously picked point
+		float aVal = d.getDrawData(0);
+		emit(aX, height - aVal);
+
+		for (int bucket = 0; bucket < threshold - 2; bucket++) {
+			// average of the next bucket
+			final int avgStart = (int) ((bucket + 1) * bucketSize) + 1;
+			final int avgEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+			double avgX = 0, avgVal = 0;
+			for (int i = avgStart; i < avgEnd; i++) {
+				avgX += d.getViewX(i, width);
+				avgVal += d.getDrawData(i);
+			}
+			avgX /= (avgEnd - avgStart);
+			avgVal /= (avgEnd - avgStart);
+
+			// point in this bucket forming the largest triangle
+			final int rangeStart = (int) (bucket * bucketSize) + 1;
+			final int rangeEnd = (int) ((bucket + 1) * bucketSize) + 1;
+			double maxArea = -1;
+			float pickedX = 0, pickedVal = 0;
+			for (int i = rangeStart; i < rangeEnd; i++) {
+				final float x = d.getViewX(i, width);
+				final float val = d.getDrawData(i);
+				final double area = Math.abs((aX - avgX) * (val - aVal) - (aX - x) * (avgVal - aVal));
+				if (area > maxArea) {
+					maxArea = area;
+					pickedX = x;
+					pickedVal = val;
+				}
+			}
+			emit(pickedX, height - pickedVal);
+			aX = pickedX;
+			aVal = pickedVal;
+		}
+
+		emit(d.getViewX(n - 1, width), height - d.getDrawData(n - 1));
+	}
+
+	private void emit(float vx, float vy) {
+		geometry.add(vx, vy);
+	}
+}
@@ -0,0 +1,261 @@
+package micycle.scrollmonitor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A {@link ColumnStore} off the heap, so that long histories neither bloat the
+ * heap nor lengthen garbage collection. Columns are allocated from segments of
+ * direct memory (or, optionally, of a memory-mapped scratch file, which the OS
+ * can page out), each holding a fixed number of columns. The store grows by
+ * adding segments, so columns never move; columns are read and written in
+ * place (renderers read them directly, without copying them back onto the
+ * heap).
+ * <p>
+ * Columns are allocated from the lowest free slot, so released columns
+ * concentrate at the end of the store: when every column of a segment has been
+ * released, the segment's memory is freed immediately (rather than when the
+ * garbage collector gets round to its buffer), and is reallocated only if its
+ * slots are needed again.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class DirectColumnStore implements ColumnStore {
+
+	static final long SEGMENT_BYTES = 32L << 20; // target segment size (32 MiB)
+
+	private static final Method INVOKE_CLEANER; // sun.misc.Unsafe.invokeCleaner (Java 9+)
+	private static final Object UNSAFE;
+
+	static {
+		Method invokeCleaner = null;
+		Object unsafe = null;
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			invokeCleaner = null; // Java 8: see free()
+		}
+		INVOKE_CLEANER = invokeCleaner;
+		UNSAFE = unsafe;
+	}
+
+	private final int columnLength;
+	private final int columnsPerSegment;
+	private final long segmentBytes;
+	private final FileChannel file; // null if backed by direct memory
+	private final Path path;
+
+	private final ArrayList<Segment> segments = new ArrayList<>();
+	private final BitSet used = new BitSet(); // bound slots
+
+	/**
+	 * Creates a store in direct memory.
+	 *
+	 * @param columnLength length of every column
+	 */
+	DirectColumnStore(int columnLength) {
+		this.columnLength = columnLength;
+		columnsPerSegment = (int) Math.max(1, Math.min(SEGMENT_BYTES / (columnLength * 4L), Integer.MAX_VALUE));
+		segmentBytes = (long) columnsPerSegment * columnLength * 4;
+		file = null;
+		path = null;
+	}
+
+	/**
+	 * Creates a store in a memory-mapped scratch file, which is deleted when the
+	 * store is closed.
+	 *
+	 * @param columnLength length of every column
+	 * @param path         file to map (created, or truncated if it exists)
+	 * @throws IOException if the file cannot be created
+	 */
+	DirectColumnStore(int columnLength, Path path) throws IOException {
+		this.columnLength = columnLength;
+		columnsPerSegment = (int) Math.max(1, Math.min(SEGMENT_BYTES / (columnLength * 4L), Integer.MAX_VALUE));
+		segmentBytes = (long) columnsPerSegment * columnLength * 4;
+		this.path = path;
+		file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		path.toFile().deleteOnExit(); // if the store is never closed
+	}
+
+	/**
+	 * @return whether the store is backed by a memory-mapped file
+	 */
+	boolean isMapped() {
+		return file != null;
+	}
+
+	@Override
+	public FloatColumn allocate() {
+		final int slot = used.nextClearBit(0);
+		final int s = slot / columnsPerSegment;
+		while (segments.size() <= s) {
+			segments.add(new Segment());
+		}
+		final Segment segment = segments.get(s);
+		if (segment.floats == null) {
+			map(s, segment);
+		}
+		final FloatBuffer floats = segment.floats.duplicate();
+		floats.position((slot % columnsPerSegment) * columnLength).limit(floats.position() + columnLength);
+		final Column column = new Column(floats.slice(), slot);
+		used.set(slot);
+		segment.columns++;
+		column.fill(-1);
+		return column;
+	}
+
+	@Override
+	public void release(FloatColumn c) {
+		final Column column = (Column) c;
+		if (column.buffer == null) {
+			return; // already released
+		}
+		column.buffer = null;
+		used.clear(column.slot);
+		final Segment segment = segments.get(column.slot / columnsPerSegment);
+		if (--segment.columns == 0) {
+			free(segment.bytes);
+			segment.bytes = null;
+			segment.floats = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Segment segment : segments) {
+			if (segment.bytes != null) {
+				free(segment.bytes);
+				segment.bytes = null;
+				segment.floats = null;
+			}
+		}
+		segments.clear();
+		used.clear();
+		if (file != null) {
+			try {
+				file.close();
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				System.err.println("The storage file " + path + " could not be deleted: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Allocates (or maps) the memory of a segment.
+	 */
+	private void map(int index, Segment segment) {
+		if (file == null) {
+			segment.bytes = ByteBuffer.allocateDirect((int) segmentBytes);
+		} else {
+			try {
+				segment.bytes = file.map(FileChannel.MapMode.READ_WRITE, index * segmentBytes, segmentBytes);
+			} catch (IOException e) {
+				throw new IllegalStateException("The storage file " + path + " could not be extended.", e);
+			}
+		}
+		segment.bytes.order(ByteOrder.nativeOrder());
+		segment.floats = segment.bytes.asFloatBuffer();
+	}
+
+	private static final class Segment {
+		ByteBuffer bytes; // null when freed
+		FloatBuffer floats;
+		int columns; // bound
+	}
+
+	/**
+	 * A slice of a segment.
+	 */
+	private static final class Column extends FloatColumn {
+
+		FloatBuffer buffer; // null once released
+		final int slot;
+
+		Column(FloatBuffer buffer, int slot) {
+			super(buffer.capacity());
+			this.buffer = buffer;
+			this.slot = slot;
+		}
+
+		@Override
+		float get(int index) {
+			return buffer.get(index);
+		}
+
+		@Override
+		void set(int index, float value) {
+			buffer.put(index, value);
+		}
+
+		@Override
+		void fill(float value) {
+			final FloatBuffer b = buffer;
+			for (int i = 0; i < length; i++) {
+				b.put(i, value);
+			}
+		}
+
+		@Override
+		void copyFrom(float[] src, int srcPos, int index, int count) {
+			buffer.position(index);
+			buffer.put(src, srcPos, count);
+		}
+
+		@Override
+		void copyFrom(FloatBuffer src, int index, int count) {
+			final int limit = src.limit();
+			src.limit(src.position() + count);
+			buffer.position(index);
+			buffer.put(src);
+			src.limit(limit);
+		}
+
+		@Override
+		float[] toArray() {
+			final float[] copy = new float[length];
+			buffer.position(0);
+			buffer.get(copy);
+			return copy;
+		}
+	}
+
+	/**
+	 * Frees (or unmaps) a direct buffer's memory now; the buffer must not be used
+	 * afterwards. Where this is not possible, the memory is freed when the buffer
+	 * is garbage collected.
+	 */
+	private static void free(ByteBuffer buffer) {
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} else { // Java 8: ((DirectBuffer) buffer).cleaner().clean()
+				final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				final Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// left to the garbage collector
+		}
+	}
+}
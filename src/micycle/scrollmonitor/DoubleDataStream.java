@@ -0,0 +1,42 @@
+package micycle.scrollmonitor;
+
+import processing.core.PVector;
+
+/**
+ * A datastream of double data, for values that need more than a float's 24
+ * bits of precision.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class DoubleDataStream extends WideDataStream {
+
+	public DoubleDataStream(String name, int history, PVector drawDimensions) {
+		this(name, history, drawDimensions, Smoothing.MOVING_AVERAGE, 0);
+	}
+
+	public DoubleDataStream(String name, int history, PVector drawDimensions, Smoothing smoothingType,
+			int smoothing) {
+		super(name, history, drawDimensions, smoothingType, smoothing, Double.doubleToRawLongBits(-1));
+	}
+
+	@Override
+	int getType() {
+		return SampleRecorder.DOUBLE;
+	}
+
+	@Override
+	double value(long bits) {
+		return Double.longBitsToDouble(bits);
+	}
+
+	@Override
+	long bits(double datum) {
+		return Double.doubleToRawLongBits(datum);
+	}
+
+	@Override
+	long bits(long datum) {
+		return Double.doubleToRawLongBits(datum);
+	}
+}
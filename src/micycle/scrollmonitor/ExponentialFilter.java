@@ -0,0 +1,39 @@
+package micycle.scrollmonitor;
+
+/**
+ * Exponential moving average. The smoothing factor is derived from an
+ * equivalent moving average window (<code>alpha = 2 / (window + 1)</code>).
+ * Empty datapoints leave the average untouched.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class ExponentialFilter implements SmoothingFilter {
+
+	private final double alpha;
+	private double average;
+	private boolean primed; // has the average been seeded with a datum yet?
+
+	ExponentialFilter(int window) {
+		alpha = 2d / (Math.max(1, window) + 1);
+	}
+
+	@Override
+	public double filter(double datum) {
+		if (datum == Double.NEGATIVE_INFINITY) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		if (primed) {
+			average += alpha * (datum - average);
+		} else {
+			average = datum;
+			primed = true;
+		}
+		return average;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+	}
+}
@@ -0,0 +1,57 @@
+package micycle.scrollmonitor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A fixed-length column of a {@link ColumnStore}: a contiguous run of the
+ * store's memory (on or off the heap). Where the memory is can change when the
+ * store grows, so a column should be read and written only through this view.
+ *
+ * @author Michael Carleton
+ *
+ */
+abstract class FloatColumn {
+
+	final int length;
+
+	FloatColumn(int length) {
+		this.length = length;
+	}
+
+	abstract float get(int index);
+
+	abstract void set(int index, float value);
+
+	abstract void fill(float value);
+
+	/**
+	 * Copies a run of an array into the column.
+	 */
+	abstract void copyFrom(float[] src, int srcPos, int index, int count);
+
+	/**
+	 * Copies a run of a buffer (from its position) into the column, advancing the
+	 * buffer's position.
+	 */
+	abstract void copyFrom(FloatBuffer src, int index, int count);
+
+	/**
+	 * Copies a run of another column into this one.
+	 */
+	void copyFrom(FloatColumn src, int srcPos, int index, int count) {
+		for (int i = 0; i < count; i++) {
+			set(index + i, src.get(srcPos + i));
+		}
+	}
+
+	/**
+	 * @return a copy of the column
+	 */
+	float[] toArray() {
+		final float[] copy = new float[length];
+		for (int i = 0; i < length; i++) {
+			copy[i] = get(i);
+		}
+		return copy;
+	}
+}
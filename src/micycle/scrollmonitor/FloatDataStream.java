@@ -0,0 +1,239 @@
+package micycle.scrollmonitor;
+
+import java.nio.FloatBuffer;
+
+import processing.core.PVector;
+
+/**
+ * A datastream of float data (the default). Its raw and smoothed data are
+ * columns of the monitor's {@link ColumnStore}, so they may be held off the
+ * heap.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class FloatDataStream extends DataStream {
+
+	/**
+	 * Data (raw); a column of the monitor's {@link ColumnStore}
+	 */
+	FloatColumn data;
+	/**
+	 * Smoothed data (unscaled), in step with {@link #data}. Scaled to draw
+	 * coordinates when read via {@link #getDrawData(int)}.
+	 */
+	FloatColumn drawData;
+	private ColumnStore store;
+
+	/**
+	 * todo auto push negative so it always scrolls? Scrolls to accomdate new data
+	 * only vs will always scroll
+	 *
+	 * @param name
+	 */
+	public FloatDataStream(String name, int history, PVector drawDimensions) {
+		this(name, history, drawDimensions, Smoothing.MOVING_AVERAGE, 0);
+	}
+
+	public FloatDataStream(String name, int history, PVector drawDimensions, Smoothing smoothingType,
+			int smoothing) {
+		this(name, new HeapColumnStore(history, 2), history, drawDimensions, smoothingType, smoothing);
+	}
+
+	/**
+	 * @param store   columnar storage the stream's data is held in; its columns
+	 *                must be <code>history</code> long
+	 * @param history history length
+	 */
+	FloatDataStream(String name, ColumnStore store, int history, PVector drawDimensions, Smoothing smoothingType,
+			int smoothing) {
+		super(name, history, drawDimensions, smoothingType, smoothing);
+		this.store = store;
+		data = store.allocate(); // init to -1 so not drawn by stroke
+		drawData = store.allocate();
+	}
+
+	@Override
+	long getBits(int slot) {
+		return Float.floatToRawIntBits(data.get(slot)) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	double getSmoothed(int slot) {
+		return drawData.get(slot);
+	}
+
+	@Override
+	void set(int slot, long bits, double smoothed) {
+		data.set(slot, Float.intBitsToFloat((int) bits));
+		drawData.set(slot, (float) smoothed);
+	}
+
+	@Override
+	void setSmoothed(int slot, double smoothed) {
+		drawData.set(slot, (float) smoothed);
+	}
+
+	@Override
+	double value(long bits) {
+		return Float.intBitsToFloat((int) bits);
+	}
+
+	@Override
+	long bits(double datum) {
+		return Float.floatToRawIntBits((float) datum) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	long bits(long datum) {
+		return Float.floatToRawIntBits(datum) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	int getValueWidth() {
+		return 32;
+	}
+
+	@Override
+	int getType() {
+		return SampleRecorder.FLOAT;
+	}
+
+	/**
+	 * Pushes a batch of data to the datastream. The raw data is copied into the
+	 * ring with (at most) two array copies, then smoothed in one pass over the
+	 * slots written. If the batch is longer than the history, only its tail is
+	 * copied (the rest is only fed to the history pyramid and the smoothing
+	 * filter, so the tail is smoothed exactly as if each datum had been pushed).
+	 *
+	 * @param src    source of the data
+	 * @param offset index of the first datum in src
+	 * @param count  number of data to push
+	 * @throws IndexOutOfBoundsException if the range is not within src (nothing is
+	 *                                   pushed)
+	 */
+	@Override
+	void push(float[] src, int offset, int count) {
+		checkRange(src, offset, count);
+		if (count == 0) {
+			return;
+		}
+		startBatch(count);
+		if (recorder != null) { // with the timestamp the stream holds for each datum, as single pushes are
+			for (int i = 0; i < count; i++) {
+				recorder.record(recorderId, batchTimestamp(i), bits(src[offset + i]));
+			}
+		}
+		if (tiers.length > 0) {
+			for (int i = offset; i < offset + count; i++) {
+				tiers[0].add(src[i]);
+			}
+		}
+		final int n = Math.min(count, length);
+		final int from = offset + count - n;
+		for (int i = offset; i < from; i++) { // the live filter sees the data preceding the tail, as if pushed
+			filter.filter(src[i]);
+		}
+		preserve(n);
+		evict(n);
+		if (cold != null && n < count) { // the head of the batch goes straight to the cold tier
+			for (int i = offset; i < from; i++) {
+				cold.add(timestamps != null ? batchTimestamp(i - offset) : 0, bits(src[i]));
+			}
+		}
+		final int first = Math.min(n, length - pointer);
+		data.copyFrom(src, from, pointer, first);
+		data.copyFrom(src, from + first, 0, n - first);
+		commitBulk(count, n);
+	}
+
+	/**
+	 * Pushes the remaining data of a buffer to the datastream (advancing its
+	 * position to its limit).
+	 *
+	 * @param src source of the data
+	 * @see #push(float[], int, int)
+	 */
+	@Override
+	void push(FloatBuffer src) {
+		final int count = src.remaining();
+		if (count <= 0) {
+			return;
+		}
+		final int offset = src.position();
+		startBatch(count);
+		if (recorder != null) {
+			for (int i = 0; i < count; i++) {
+				recorder.record(recorderId, batchTimestamp(i), bits(src.get(offset + i)));
+			}
+		}
+		if (tiers.length > 0) {
+			for (int i = offset; i < offset + count; i++) {
+				tiers[0].add(src.get(i));
+			}
+		}
+		final int n = Math.min(count, length);
+		final int from = offset + count - n;
+		for (int i = offset; i < from; i++) {
+			filter.filter(src.get(i));
+		}
+		preserve(n);
+		evict(n);
+		if (cold != null && n < count) {
+			for (int i = offset; i < from; i++) {
+				cold.add(timestamps != null ? batchTimestamp(i - offset) : 0, bits(src.get(i)));
+			}
+		}
+		final int first = Math.min(n, length - pointer);
+		src.position(from);
+		data.copyFrom(src, pointer, first);
+		data.copyFrom(src, 0, n - first);
+		commitBulk(count, n);
+	}
+
+	/**
+	 * Completes a bulk push once <code>n</code> raw data have been copied into the
+	 * ring at {@link #pointer}: smooths them, updates the extrema and timestamps,
+	 * and advances the pointer.
+	 *
+	 * @param count size of the batch
+	 * @param n     number of data copied into the ring (<= length)
+	 */
+	private void commitBulk(int count, int n) {
+		int slot = pointer;
+		for (int i = 0; i < n; i++) {
+			final float datum = data.get(slot);
+			extrema.push(slot, datum);
+			drawData.set(slot, filter.filter(datum));
+			if (timestamps != null) {
+				timestamps[slot] = batchTimestamp(count - n + i);
+			}
+			if (++slot == length) {
+				slot = 0;
+			}
+		}
+		pointer = slot;
+		pushCount += count;
+		version++;
+		followView(count);
+	}
+
+	@Override
+	void release() {
+		store.release(data);
+		store.release(drawData);
+	}
+
+	@Override
+	void moveTo(ColumnStore store) {
+		final FloatColumn newData = store.allocate();
+		final FloatColumn newDrawData = store.allocate();
+		newData.copyFrom(data, 0, 0, length);
+		newDrawData.copyFrom(drawData, 0, 0, length);
+		release();
+		data = newData;
+		drawData = newDrawData;
+		this.store = store;
+		version++;
+	}
+}
@@ -0,0 +1,105 @@
+package micycle.scrollmonitor;
+
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+/**
+ * Pre-rendered images of the glyphs numeric labels are made of (digits, point
+ * and minus sign), so that such labels can be drawn as a few image blits rather
+ * than laid out as text each frame. The glyphs are re-rendered whenever the
+ * font, text size or colour they were rendered with changes.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class GlyphAtlas {
+
+	private static final String GLYPHS = "0123456789.-";
+
+	private final PGraphics[] glyphs = new PGraphics[GLYPHS.length()];
+	private final float[] widths = new float[GLYPHS.length()];
+	private float height, ascent;
+
+	private PFont font;
+	private float textSize;
+	private int colour;
+	private boolean rendered = false;
+
+	/**
+	 * Re-renders the glyphs if the style of the given graphics differs from that
+	 * they were rendered with.
+	 * 
+	 * @param pane   pane to create glyph images with
+	 * @param style  graphics whose (current) font and text size to use
+	 * @param colour text colour
+	 */
+	void update(ProcessingPane pane, PGraphics style, int colour) {
+		if (rendered && style.textFont == font && style.textSize == textSize && colour == this.colour) {
+			return;
+		}
+		font = style.textFont;
+		textSize = style.textSize;
+		this.colour = colour;
+		ascent = style.textAscent();
+		height = (float) Math.ceil(ascent + style.textDescent());
+		final char[] c = new char[1];
+		for (int i = 0; i < glyphs.length; i++) {
+			c[0] = GLYPHS.charAt(i);
+			widths[i] = style.textWidth(c, 0, 1);
+			final PGraphics g = pane.createLayer((int) Math.ceil(widths[i]) + 1, (int) height);
+			g.beginDraw();
+			g.clear();
+			if (font != null) {
+				g.textFont(font, textSize);
+			}
+			g.fill(colour);
+			g.textAlign(PApplet.LEFT);
+			g.text(c, 0, 1, 0, ascent);
+			g.endDraw();
+			glyphs[i] = g;
+		}
+		rendered = true;
+	}
+
+	/**
+	 * @return whether every char of the text has a glyph
+	 */
+	boolean canDraw(char[] chars, int length) {
+		for (int i = 0; i < length; i++) {
+			if (GLYPHS.indexOf(chars[i]) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Draws text made of the atlas's glyphs.
+	 * 
+	 * @param target graphics to draw into
+	 * @param alignX LEFT, CENTER or RIGHT
+	 * @param alignY TOP, CENTER or BOTTOM
+	 */
+	void draw(PGraphics target, char[] chars, int length, float x, float y, int alignX, int alignY) {
+		float width = 0;
+		for (int i = 0; i < length; i++) {
+			width += widths[GLYPHS.indexOf(chars[i])];
+		}
+		if (alignX == PApplet.CENTER) {
+			x -= width / 2;
+		} else if (alignX == PApplet.RIGHT) {
+			x -= width;
+		}
+		if (alignY == PApplet.CENTER) {
+			y -= height / 2;
+		} else if (alignY == PApplet.BOTTOM) {
+			y -= height;
+		}
+		for (int i = 0; i < length; i++) {
+			final int glyph = GLYPHS.indexOf(chars[i]);
+			target.image(glyphs[glyph], Math.round(x), Math.round(y));
+			x += widths[glyph];
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package micycle.scrollmonitor;
+
+/**
+ * How a monitor rasterises its graphs.
+ * 
+ * @author Michael Carleton
+ * @see ScrollMonitor#setGraphBackend(GraphBackend)
+ */
+public enum GraphBackend {
+
+	/**
+	 * Each graph is drawn as a (retained) Processing PShape (default). Graphs are
+	 * anti-aliased and work with every renderer.
+	 */
+	SHAPE,
+	/**
+	 * Each graph is written directly into the canvas's pixels, as a vertical fill
+	 * run and stroke run per pixel column, alpha-blended over what is below. Much
+	 * faster than {@link #SHAPE} in JAVA2D mode, particularly with many overlaid
+	 * streams, at the cost of anti-aliasing.
+	 */
+	RASTER
+}
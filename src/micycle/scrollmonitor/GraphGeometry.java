@@ -0,0 +1,106 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PShape;
+
+/**
+ * Retained graph geometry for a datastream: the vertices of its graph polygon
+ * (in draw coordinates) and a PShape that is updated in place from them each
+ * frame. Vertex buffers and the shape are only reallocated when the graph needs
+ * more vertices than they can hold, so building a steady-state frame's geometry
+ * allocates nothing (though the renderer may allocate drawing it: Java2D creates
+ * a GeneralPath per shape drawn).
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class GraphGeometry {
+
+	float[] x = new float[64];
+	float[] y = new float[64];
+	/**
+	 * Number of vertices in the polygon
+	 */
+	int count;
+
+	private PShape shape;
+	/**
+	 * Number of vertices in {@link #shape}; unused vertices repeat the last vertex
+	 * of the polygon.
+	 */
+	private int capacity;
+
+	// style currently applied to the shape
+	private int fillColour, strokeColour;
+	private boolean filled, stroked;
+	private float strokeWeight;
+
+	void reset() {
+		count = 0;
+	}
+
+	void add(float vx, float vy) {
+		if (count == x.length) {
+			x = Arrays.copyOf(x, count * 2);
+			y = Arrays.copyOf(y, count * 2);
+		}
+		x[count] = vx;
+		y[count] = vy;
+		count++;
+	}
+
+	/**
+	 * Copies the polygon vertices and style into the retained shape, (re)creating
+	 * it only if it is too small to hold the polygon.
+	 * 
+	 * @param canvas canvas the shape is drawn into
+	 * @return the updated shape
+	 */
+	PShape update(PGraphics canvas, boolean filled, int fillColour, boolean stroked, int strokeColour, float strokeWeight) {
+		boolean restyle = false;
+		if (shape == null || capacity < count) {
+			capacity = count + (count >> 2); // headroom, since vertex count varies from frame to frame
+			shape = canvas.createShape();
+			shape.beginShape();
+			for (int i = 0; i < capacity; i++) {
+				shape.vertex(0, 0);
+			}
+			shape.endShape(PApplet.CLOSE);
+			restyle = true;
+		}
+
+		for (int i = 0; i < count; i++) {
+			shape.setVertex(i, x[i], y[i]);
+		}
+		for (int i = count; i < capacity; i++) { // pad (degenerate edges)
+			shape.setVertex(i, x[count - 1], y[count - 1]);
+		}
+
+		// restyle only when changed, since restyling touches every vertex
+		if (restyle || filled != this.filled || fillColour != this.fillColour) {
+			this.filled = filled;
+			this.fillColour = fillColour;
+			shape.setFill(filled);
+			shape.setFill(fillColour);
+		}
+		if (restyle || stroked != this.stroked || strokeColour != this.strokeColour || strokeWeight != this.strokeWeight) {
+			this.stroked = stroked;
+			this.strokeColour = strokeColour;
+			this.strokeWeight = strokeWeight;
+			shape.setStroke(stroked);
+			shape.setStroke(strokeColour);
+			shape.setStrokeWeight(strokeWeight);
+		}
+		return shape;
+	}
+
+	/**
+	 * Discards the retained shape (e.g. when the canvas it belongs to is resized).
+	 */
+	void invalidate() {
+		shape = null;
+	}
+}
@@ -0,0 +1,173 @@
+package micycle.scrollmonitor;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A {@link ColumnStore} on the heap. Columns are laid end to end in primitive
+ * blocks, so passes over many streams scan contiguous memory, and adding a
+ * stream takes columns from a block (or from those freed by removed streams)
+ * rather than allocating arrays of its own. The first block doubles in size
+ * when it runs out of columns, up to {@link #BLOCK_FLOATS}; the store then
+ * grows by adding blocks of that size, so it is not limited to the 2^31
+ * elements of a single array.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class HeapColumnStore implements ColumnStore {
+
+	/**
+	 * Most floats per block (256 MiB), unless a single column is longer.
+	 */
+	static final int BLOCK_FLOATS = 1 << 26;
+
+	private final int columnLength;
+	private final int columnsPerBlock;
+	private float[][] blocks = new float[1][];
+	private int blockCount; // blocks allocated (only the last may be smaller than full)
+	private final ArrayList<Column> columns; // bound columns (indexed by slot)
+	private int[] free; // stack of released slots
+	private int freeCount;
+
+	/**
+	 * @param columnLength length of every column
+	 * @param capacity     initial number of columns
+	 */
+	HeapColumnStore(int columnLength, int capacity) {
+		if (columnLength > Integer.MAX_VALUE - 8) { // the most a Java array can hold
+			throw new IllegalArgumentException(
+					"A history of " + columnLength + " datapoints is too long to be held on the heap.");
+		}
+		this.columnLength = columnLength;
+		columnsPerBlock = Math.max(1, BLOCK_FLOATS / Math.max(1, columnLength));
+		capacity = Math.max(1, Math.min(capacity, columnsPerBlock));
+		blocks[0] = new float[capacity * columnLength]; // <= max(BLOCK_FLOATS, columnLength)
+		blockCount = 1;
+		columns = new ArrayList<>(capacity);
+		free = new int[capacity];
+	}
+
+	@Override
+	public FloatColumn allocate() {
+		final Column column;
+		if (freeCount > 0) {
+			final int slot = free[--freeCount];
+			column = bind(slot);
+			columns.set(slot, column);
+		} else {
+			final int slot = columns.size();
+			if (slot == Integer.MAX_VALUE) {
+				throw new IllegalStateException("The column store is full.");
+			}
+			column = bind(slot);
+			columns.add(column);
+		}
+		column.fill(-1);
+		return column;
+	}
+
+	/**
+	 * @return a column over a slot, growing the store if the slot is beyond it
+	 */
+	private Column bind(int slot) {
+		final int b = slot / columnsPerBlock;
+		final int base = (slot % columnsPerBlock) * columnLength; // < max(BLOCK_FLOATS, columnLength)
+		while (b >= blockCount || base + columnLength > blocks[b].length) {
+			grow();
+		}
+		return new Column(blocks[b], b, base, slot, columnLength);
+	}
+
+	@Override
+	public void release(FloatColumn c) {
+		final Column column = (Column) c;
+		final int slot = column.slot;
+		if (columns.get(slot) != column) {
+			return; // already released
+		}
+		columns.set(slot, null);
+		if (freeCount == free.length) {
+			final int[] f = new int[free.length * 2];
+			System.arraycopy(free, 0, f, 0, freeCount);
+			free = f;
+		}
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * Doubles the last block, or adds a full block if it is already full.
+	 */
+	private void grow() {
+		final int last = blockCount - 1;
+		final int held = blocks[last].length / columnLength; // columns the last block holds
+		if (held < columnsPerBlock) {
+			final int size = (int) Math.min(columnsPerBlock, held * 2L) * columnLength;
+			final float[] b = new float[size];
+			System.arraycopy(blocks[last], 0, b, 0, blocks[last].length);
+			blocks[last] = b;
+			for (Column column : columns) {
+				if (column != null && column.blockIndex == last) {
+					column.block = b; // rebind (offsets are unchanged)
+				}
+			}
+		} else {
+			if (blockCount == blocks.length) {
+				blocks = Arrays.copyOf(blocks, blocks.length * 2);
+			}
+			blocks[blockCount++] = new float[columnsPerBlock * columnLength];
+		}
+	}
+
+	/**
+	 * A run of a block.
+	 */
+	private static final class Column extends FloatColumn {
+
+		float[] block; // (re)bound by the store
+		final int blockIndex;
+		final int base; // offset of the column in block
+		final int slot;
+
+		Column(float[] block, int blockIndex, int base, int slot, int length) {
+			super(length);
+			this.block = block;
+			this.blockIndex = blockIndex;
+			this.base = base;
+			this.slot = slot;
+		}
+
+		@Override
+		float get(int index) {
+			return block[base + index];
+		}
+
+		@Override
+		void set(int index, float value) {
+			block[base + index] = value;
+		}
+
+		@Override
+		void fill(float value) {
+			Arrays.fill(block, base, base + length, value);
+		}
+
+		@Override
+		void copyFrom(float[] src, int srcPos, int index, int count) {
+			System.arraycopy(src, srcPos, block, base + index, count);
+		}
+
+		@Override
+		void copyFrom(FloatBuffer src, int index, int count) {
+			src.get(block, base + index, count);
+		}
+
+		@Override
+		float[] toArray() {
+			final float[] copy = new float[length];
+			System.arraycopy(block, base, copy, 0, length);
+			return copy;
+		}
+	}
+}
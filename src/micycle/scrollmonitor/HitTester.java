@@ -0,0 +1,106 @@
+package micycle.scrollmonitor;
+
+/**
+ * Determines which datastream graph the mouse is over. Since a graph is a
+ * function of x, the mouse x coordinate maps directly to a datapoint index,
+ * and the mouse is over a graph if it is below the graph's (interpolated)
+ * value at that index; testing a stream is therefore O(1) (O(log n) for
+ * time-indexed views), regardless of how many vertices its graph has.
+ * <p>
+ * The result is cached and only re-evaluated when the mouse moves or a
+ * datastream changes.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class HitTester {
+
+	/**
+	 * The top-most datastream the mouse is over (null if none).
+	 */
+	DataStream hit;
+	/**
+	 * Datapoint index nearest the mouse.
+	 */
+	int index;
+
+	// state the cached result was computed for
+	private DataStream[] lastOrder;
+	private float lastX = Float.NaN, lastY = Float.NaN, lastWidth, lastHeight, lastTolerance;
+	private long lastVersion;
+
+	/**
+	 * Updates the hit-test result (if anything has changed since the last call).
+	 * 
+	 * @param order     datastreams in draw order (back to front)
+	 * @param x         mouse x, relative to the graph
+	 * @param y         mouse y, relative to the graph
+	 * @param width     graph width
+	 * @param height    graph height
+	 * @param tolerance how far above a graph's value the mouse may be and still be
+	 *                  over it (e.g. half the stroke weight)
+	 */
+	void update(DataStream[] order, float x, float y, float width, float height, float tolerance) {
+		long version = order.length;
+		for (DataStream d : order) {
+			version += d.version;
+		}
+		if (order == lastOrder && x == lastX && y == lastY && version == lastVersion && width == lastWidth
+				&& height == lastHeight && tolerance == lastTolerance) {
+			return; // nothing has changed
+		}
+		lastOrder = order;
+		lastX = x;
+		lastY = y;
+		lastWidth = width;
+		lastHeight = height;
+		lastTolerance = tolerance;
+		lastVersion = version;
+
+		hit = null;
+		for (int s = order.length - 1; s >= 0; s--) { // front to back
+			final DataStream d = order[s];
+			if (d.draw && y <= height && y >= height - valueAt(d, x, width) - tolerance) {
+				hit = d;
+				index = indexAt(d, x, width);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Clears the result (e.g. when the mouse is not over the graph).
+	 */
+	void clear() {
+		hit = null;
+		lastOrder = null;
+	}
+
+	/**
+	 * @return index of the datapoint of a datastream nearest to a given x
+	 *         coordinate
+	 */
+	static int indexAt(DataStream d, float x, float width) {
+		final int i = d.getViewIndexBefore(x, width);
+		if (i + 1 < d.viewLength && d.getViewX(i + 1, width) - x < x - d.getViewX(i, width)) {
+			return i + 1;
+		}
+		return i;
+	}
+
+	/**
+	 * @return draw value of a datastream at a given x coordinate, interpolated
+	 *         between the datapoints either side of it
+	 */
+	static float valueAt(DataStream d, float x, float width) {
+		final int i = d.getViewIndexBefore(x, width);
+		final float a = d.getDrawData(i);
+		if (i + 1 >= d.viewLength) {
+			return a;
+		}
+		final float x0 = d.getViewX(i, width);
+		final float x1 = d.getViewX(i + 1, width);
+		final float t = x1 > x0 ? Math.max(0, Math.min((x - x0) / (x1 - x0), 1)) : 0;
+		return a + (d.getDrawData(i + 1) - a) * t;
+	}
+}
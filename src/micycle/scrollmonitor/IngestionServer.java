@@ -0,0 +1,683 @@
+package micycle.scrollmonitor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Listens on a loopback port (TCP and UDP) for data sent by other processes,
+ * pushing it to the streams of a monitor. Each line of input is a datum for the
+ * stream it names, in a statsd/Influx-like protocol:
+ *
+ * <pre>
+ * name:value
+ * name:value|timestamp
+ * </pre>
+ *
+ * where the value is a decimal number (such as <code>-1.5e3</code>) and the
+ * optional timestamp is in nanoseconds (the same units as
+ * {@link ScrollMonitor#pushAt(String, long, float)}); any other field after the
+ * <code>|</code> (such as a statsd type, <code>|g</code>) is ignored. Lines are
+ * terminated by <code>\n</code> (or <code>\r\n</code>); a UDP datagram may hold
+ * any number of lines, its last line needing no terminator. Streams are created
+ * the first time they are named. Malformed lines are skipped.
+ * <p>
+ * A single thread serves every connection with a {@link Selector}, parsing
+ * lines straight out of direct buffers: stream names are matched against a
+ * table of name bytes, so no Strings are created except when a new stream is
+ * first named, and nothing is allocated per datum. Parsed data is handed to the
+ * animation thread in batches of {@value #BATCH_SIZE}, which are recycled; the
+ * animation thread pushes them to their streams at the start of each frame. If
+ * {@value #MAX_BATCHES} batches are awaiting the animation thread, further data
+ * is discarded (and counted) until it catches up.
+ *
+ * @author Michael Carleton
+ * @see ScrollMonitor#startIngestionServer(int)
+ */
+public final class IngestionServer {
+
+	static final int BATCH_SIZE = 4096;
+	static final int MAX_BATCHES = 64;
+	static final int MAX_STREAMS = 1 << 16;
+	private static final int BUFFER_SIZE = 1 << 16; // per TCP connection, and for datagrams
+	private static final long FLUSH_INTERVAL = 5; // ms; longest a partial batch is held
+	private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 }; // exactly representable
+
+	/**
+	 * Data parsed by the server thread, awaiting the animation thread.
+	 */
+	private static final class Batch {
+		final int[] ids = new int[BATCH_SIZE];
+		final long[] timestamps = new long[BATCH_SIZE];
+		final double[] values = new double[BATCH_SIZE];
+		int count;
+	}
+
+	/**
+	 * Per TCP connection: bytes read but not yet parsed (a partial line).
+	 */
+	private static final class Connection {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		boolean discarding; // skipping the rest of an over-long line
+	}
+
+	private final Selector selector;
+	private final ServerSocketChannel tcp;
+	private final DatagramChannel udp;
+	private final int port;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	// handoff: filled batches go to the animation thread, and come back empty
+	private final ArrayBlockingQueue<Batch> ready = new ArrayBlockingQueue<>(MAX_BATCHES);
+	private final ArrayBlockingQueue<Batch> free = new ArrayBlockingQueue<>(MAX_BATCHES);
+	/**
+	 * Stream names by id, copied on write by the server thread (published before
+	 * any batch referring to a new id).
+	 */
+	private volatile String[] streamNames = new String[1];
+
+	// server thread state
+	private final ByteBuffer datagram = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final NameTable nameTable = new NameTable();
+	private Batch batch = new Batch();
+	private int batches = 1; // allocated
+	private long samples, dropped, malformed;
+	private long lastFlush; // nanoTime of the last flush()
+	private volatile long publishedSamples, publishedDropped, publishedMalformed;
+
+	// animation thread state
+	private DataStream[] targets = new DataStream[0]; // by id
+
+	/**
+	 * Binds the server to a loopback port and starts its thread.
+	 *
+	 * @param port TCP and UDP port; 0 for any free port (see {@link #getPort()})
+	 * @throws IOException if the port cannot be bound
+	 */
+	IngestionServer(int port) throws IOException {
+		final InetAddress loopback = InetAddress.getLoopbackAddress();
+		selector = Selector.open();
+		tcp = ServerSocketChannel.open();
+		udp = DatagramChannel.open();
+		try {
+			tcp.bind(new InetSocketAddress(loopback, port));
+			this.port = ((InetSocketAddress) tcp.getLocalAddress()).getPort();
+			udp.bind(new InetSocketAddress(loopback, this.port));
+			tcp.configureBlocking(false);
+			udp.configureBlocking(false);
+			tcp.register(selector, SelectionKey.OP_ACCEPT);
+			udp.register(selector, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			closeQuietly();
+			throw e;
+		}
+		thread = new Thread(this::serve, "ScrollMonitor ingestion server :" + this.port);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return port the server listens on (TCP and UDP)
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return whether the server is listening
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return number of data received (including any discarded)
+	 */
+	public long getSampleCount() {
+		return publishedSamples;
+	}
+
+	/**
+	 * @return number of data discarded because the animation thread had fallen
+	 *         behind
+	 */
+	public long getDroppedSampleCount() {
+		return publishedDropped;
+	}
+
+	/**
+	 * @return number of lines skipped because they could not be parsed (or named
+	 *         a stream beyond the first {@value #MAX_STREAMS})
+	 */
+	public long getMalformedLineCount() {
+		return publishedMalformed;
+	}
+
+	/**
+	 * Stops listening, closing all connections. Data already received can still be
+	 * {@link #drainTo(ScrollMonitor) drained}.
+	 */
+	void close() {
+		running = false;
+		selector.wakeup();
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Pushes every batch handed off by the server thread to its streams (animation
+	 * thread), creating streams named for the first time.
+	 *
+	 * @param monitor monitor the streams belong to
+	 */
+	void drainTo(ScrollMonitor monitor) {
+		Batch b;
+		while ((b = ready.poll()) != null) {
+			final String[] names = streamNames; // covers every id in the batch
+			if (targets.length < names.length) {
+				targets = Arrays.copyOf(targets, names.length);
+			}
+			for (int i = 0; i < b.count; i++) {
+				final int id = b.ids[i];
+				DataStream d = targets[id];
+				if (d == null || d.removed) { // (re)created on demand
+					d = monitor.getOrAddDataStream(names[id]);
+					targets[id] = d;
+				}
+				final long timestamp = b.timestamps[i];
+				if (timestamp == NO_TIMESTAMP) {
+					d.pushDouble(b.values[i]);
+				} else {
+					d.pushDouble(timestamp, b.values[i]);
+				}
+			}
+			b.count = 0;
+			free.offer(b);
+		}
+	}
+
+	/**
+	 * Server thread: waits for connections and data, parses it, and hands off the
+	 * current batch once it is full or has been held for {@link #FLUSH_INTERVAL}
+	 * ms (rather than on every wake-up, which would hand off a batch per datagram
+	 * and soon exhaust the {@value #MAX_BATCHES} batches).
+	 */
+	private void serve() {
+		final long interval = FLUSH_INTERVAL * 1_000_000L;
+		lastFlush = System.nanoTime();
+		try {
+			while (running) {
+				final long held = System.nanoTime() - lastFlush;
+				selector.select(Math.max(1, (interval - held) / 1_000_000L)); // 0 would block indefinitely
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.channel() == udp) {
+						receive();
+					} else {
+						read(key);
+					}
+				}
+				if (System.nanoTime() - lastFlush >= interval) {
+					flush();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("The ingestion server on port " + port + " has stopped: " + e);
+		} finally {
+			running = false;
+			flush();
+			closeQuietly();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = tcp.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+	private void receive() throws IOException {
+		while (true) {
+			datagram.clear();
+			if (udp.receive(datagram) == null) {
+				return;
+			}
+			parse(datagram, 0, datagram.position(), true);
+		}
+	}
+
+	private void read(SelectionKey key) {
+		final SocketChannel channel = (SocketChannel) key.channel();
+		final Connection c = (Connection) key.attachment();
+		final ByteBuffer buffer = c.buffer;
+		try {
+			int n;
+			while ((n = channel.read(buffer)) > 0) {
+				int start = 0;
+				if (c.discarding) { // skip to the end of the over-long line
+					start = indexOf(buffer, 0, buffer.position(), (byte) '\n') + 1;
+					if (start == 0) {
+						buffer.clear();
+						continue;
+					}
+					c.discarding = false;
+				}
+				final int parsed = parse(buffer, start, buffer.position(), false);
+				if (parsed == 0 && start == 0 && !buffer.hasRemaining()) { // line longer than the buffer
+					malformed++;
+					c.discarding = true;
+					buffer.clear();
+				} else {
+					buffer.flip().position(start + parsed);
+					buffer.compact(); // keep the partial line
+				}
+			}
+			if (n < 0) {
+				if (buffer.position() > 0 && !c.discarding) {
+					parse(buffer, 0, buffer.position(), true); // final unterminated line
+				}
+				close(key);
+			}
+		} catch (IOException e) {
+			close(key); // connection reset, etc.
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	/**
+	 * Parses the lines in a region of a buffer.
+	 *
+	 * @param endIsLine whether the end of the region terminates a line
+	 * @return number of bytes consumed (up to the end of the last complete line)
+	 */
+	private int parse(ByteBuffer b, int from, int to, boolean endIsLine) {
+		int start = from;
+		while (start < to) {
+			int end = indexOf(b, start, to, (byte) '\n');
+			if (end < 0) {
+				if (!endIsLine) {
+					break;
+				}
+				end = to;
+			}
+			int lineEnd = end;
+			if (lineEnd > start && b.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			if (lineEnd > start) { // skip blank lines
+				parseLine(b, start, lineEnd);
+			}
+			start = Math.min(to, end + 1);
+		}
+		return start - from;
+	}
+
+	/**
+	 * Parses <code>name:value[|timestamp]</code>.
+	 */
+	private void parseLine(ByteBuffer b, int from, int to) {
+		final int colon = indexOf(b, from, to, (byte) ':');
+		if (colon <= from) {
+			malformed++;
+			return;
+		}
+		int bar = indexOf(b, colon + 1, to, (byte) '|');
+		if (bar < 0) {
+			bar = to;
+		}
+		final double value = parseDouble(b, colon + 1, bar);
+		if (Double.isNaN(value)) {
+			malformed++;
+			return;
+		}
+		long timestamp = NO_TIMESTAMP;
+		if (bar < to) {
+			int fieldEnd = indexOf(b, bar + 1, to, (byte) '|');
+			if (fieldEnd < 0) {
+				fieldEnd = to;
+			}
+			if (fieldEnd > bar + 1 && isDigit(b.get(bar + 1))) { // otherwise a statsd type, etc.
+				timestamp = parseLong(b, bar + 1, fieldEnd);
+				if (timestamp == NO_TIMESTAMP) {
+					malformed++;
+					return;
+				}
+			}
+		}
+
+		final int hash = NameTable.hash(b, from, colon);
+		int id = nameTable.find(b, from, colon, hash);
+		if (id == 0) {
+			if (nameTable.size() + 1 >= MAX_STREAMS) {
+				malformed++;
+				return;
+			}
+			id = nameTable.add(b, from, colon, hash);
+			final String[] copy = Arrays.copyOf(streamNames, Math.max(streamNames.length, id + 1));
+			copy[id] = nameTable.name(id);
+			streamNames = copy; // published before the batch holding the id
+		}
+		add(id, timestamp, value);
+	}
+
+	/**
+	 * Adds a datum to the current batch, handing off the batch when it is full.
+	 */
+	private void add(int id, long timestamp, double value) {
+		samples++;
+		if (batch == null || batch.count == BATCH_SIZE) {
+			if (batch != null) {
+				ready.offer(batch); // never full: there are at most MAX_BATCHES batches
+			}
+			batch = nextBatch();
+			if (batch == null) { // animation thread is MAX_BATCHES behind
+				dropped++;
+				return;
+			}
+		}
+		final Batch b = batch;
+		b.ids[b.count] = id;
+		b.timestamps[b.count] = timestamp;
+		b.values[b.count] = value;
+		b.count++;
+	}
+
+	/**
+	 * Hands off the current batch (if not empty), and publishes the counters.
+	 */
+	private void flush() {
+		lastFlush = System.nanoTime();
+		if (batch != null && batch.count > 0) {
+			ready.offer(batch);
+			batch = nextBatch();
+		} else if (batch == null) {
+			batch = nextBatch();
+		}
+		publishedSamples = samples;
+		publishedDropped = dropped;
+		publishedMalformed = malformed;
+	}
+
+	/**
+	 * @return an empty batch; null if all {@value #MAX_BATCHES} are in use
+	 */
+	private Batch nextBatch() {
+		final Batch b = free.poll();
+		if (b != null) {
+			return b;
+		}
+		if (batches < MAX_BATCHES) {
+			batches++;
+			return new Batch();
+		}
+		return null;
+	}
+
+	private void closeQuietly() {
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+		}
+		try {
+			tcp.close();
+			udp.close();
+			selector.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	private static int indexOf(ByteBuffer b, int from, int to, byte c) {
+		for (int i = from; i < to; i++) {
+			if (b.get(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Parses a decimal number (optional sign, digits with an optional fraction,
+	 * optional exponent) without creating a String. Up to 18 significant digits
+	 * are used, which is more than a float can hold.
+	 *
+	 * @return NaN if malformed
+	 */
+	static double parseDouble(ByteBuffer b, int from, int to) {
+		while (from < to && b.get(from) == ' ') {
+			from++;
+		}
+		while (to > from && b.get(to - 1) == ' ') {
+			to--;
+		}
+		int i = from;
+		boolean negative = false;
+		if (i < to && (b.get(i) == '-' || b.get(i) == '+')) {
+			negative = b.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int significant = 0, exponent = 0, digits = 0;
+		boolean point = false;
+		for (; i < to; i++) {
+			final byte c = b.get(i);
+			if (isDigit(c)) {
+				digits++;
+				if (significant < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa != 0) {
+						significant++;
+					}
+					if (point) {
+						exponent--;
+					}
+				} else if (!point) {
+					exponent++; // dropped integer digit
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return Double.NaN;
+		}
+		if (i < to && (b.get(i) == 'e' || b.get(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < to && (b.get(i) == '-' || b.get(i) == '+')) {
+				negativeExponent = b.get(i) == '-';
+				i++;
+			}
+			if (i == to) {
+				return Double.NaN;
+			}
+			int e = 0;
+			for (; i < to && isDigit(b.get(i)); i++) {
+				e = Math.min(e * 10 + (b.get(i) - '0'), 1000);
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (i != to) {
+			return Double.NaN;
+		}
+		double value = mantissa;
+		if (exponent < 0) {
+			if (-exponent < POW10.length) {
+				value /= POW10[-exponent];
+			} else { // in two steps, as 10^-exponent overflows for subnormal results
+				value = value / Math.pow(10, Math.min(-exponent, 300)) / Math.pow(10, Math.max(0, -exponent - 300));
+			}
+		} else if (exponent > 0) {
+			value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a non-negative decimal integer.
+	 *
+	 * @return {@link #NO_TIMESTAMP} if malformed (or out of range)
+	 */
+	static long parseLong(ByteBuffer b, int from, int to) {
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			final byte c = b.get(i);
+			if (!isDigit(c) || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+				return NO_TIMESTAMP;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Open-addressing hash table from stream name bytes to stream id, so that
+	 * names can be looked up straight from a buffer.
+	 */
+	static final class NameTable {
+
+		private int[] slots = new int[256]; // stream ids (0 = empty); power of 2 length
+		private byte[] bytes = new byte[4096]; // every name's bytes, back to back
+		private int[] offsets = new int[64], lengths = new int[64], hashes = new int[64]; // by id
+		private int size; // names
+		private int used; // bytes
+
+		static int hash(ByteBuffer b, int from, int to) {
+			int h = 0x811c9dc5; // FNV-1a
+			for (int i = from; i < to; i++) {
+				h = (h ^ b.get(i)) * 0x01000193;
+			}
+			return h ^ (h >>> 16);
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return id of the name in the buffer region; 0 if absent
+		 */
+		int find(ByteBuffer b, int from, int to, int hash) {
+			final int mask = slots.length - 1;
+			for (int s = hash & mask;; s = (s + 1) & mask) {
+				final int id = slots[s];
+				if (id == 0) {
+					return 0;
+				}
+				if (hashes[id] == hash && equals(id, b, from, to)) {
+					return id;
+				}
+			}
+		}
+
+		/**
+		 * Adds a name (that is absent).
+		 *
+		 * @return its id (ids are assigned from 1)
+		 */
+		int add(ByteBuffer b, int from, int to, int hash) {
+			final int id = ++size;
+			final int length = to - from;
+			if (id >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, id * 2);
+				lengths = Arrays.copyOf(lengths, id * 2);
+				hashes = Arrays.copyOf(hashes, id * 2);
+			}
+			if (used + length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + length));
+			}
+			for (int i = 0; i < length; i++) {
+				bytes[used + i] = b.get(from + i);
+			}
+			offsets[id] = used;
+			lengths[id] = length;
+			hashes[id] = hash;
+			used += length;
+			if (size * 2 > slots.length) { // keep at most half full
+				rehash(slots.length * 2);
+			} else {
+				insert(id);
+			}
+			return id;
+		}
+
+		String name(int id) {
+			return new String(bytes, offsets[id], lengths[id], StandardCharsets.UTF_8);
+		}
+
+		private boolean equals(int id, ByteBuffer b, int from, int to) {
+			if (lengths[id] != to - from) {
+				return false;
+			}
+			final int offset = offsets[id];
+			for (int i = 0; i < to - from; i++) {
+				if (bytes[offset + i] != b.get(from + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash(int capacity) {
+			slots = new int[capacity];
+			for (int id = 1; id <= size; id++) {
+				insert(id);
+			}
+		}
+
+		private void insert(int id) {
+			final int mask = slots.length - 1;
+			int s = hashes[id] & mask;
+			while (slots[s] != 0) {
+				s = (s + 1) & mask;
+			}
+			slots[s] = id;
+		}
+	}
+
+}
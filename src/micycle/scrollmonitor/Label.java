@@ -0,0 +1,79 @@
+package micycle.scrollmonitor;
+
+/**
+ * Text of a numeric label (a number followed by an optional unit), held in a
+ * reusable <code>char[]</code> and reformatted only when the number, precision
+ * or unit changes. Draw it with Processing's
+ * <code>text(chars, 0, length, x, y)</code>, which does not allocate.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class Label {
+
+	char[] chars = new char[16];
+	int length;
+
+	private double value;
+	private long exact; // value of an exact (long) label
+	private boolean isExact;
+	private int precision = -1; // -1 before the first format
+	private String unit;
+
+	/**
+	 * Sets the label to a number (and unit), reformatting only if they differ from
+	 * the label's current contents.
+	 * 
+	 * @param value     number
+	 * @param precision decimal places; 0...{@link NumberFormatter#MAX_PRECISION}
+	 * @param unit      unit appended to the number (may be null)
+	 * @return this label
+	 */
+	Label set(double value, int precision, String unit) {
+		if (!isExact && precision == this.precision && unit == this.unit
+				&& Double.doubleToLongBits(value) == Double.doubleToLongBits(this.value)) {
+			return this;
+		}
+		this.value = value;
+		isExact = false;
+		this.precision = precision;
+		this.unit = unit;
+		length = NumberFormatter.format(value, precision, reserve(precision, unit), 0);
+		appendUnit(unit);
+		return this;
+	}
+
+	/**
+	 * Sets the label to an integer (and unit), formatted exactly rather than via
+	 * a double, so that every digit of a large long is shown.
+	 * 
+	 * @see #set(double, int, String)
+	 */
+	Label set(long value, int precision, String unit) {
+		if (isExact && precision == this.precision && unit == this.unit && value == exact) {
+			return this;
+		}
+		exact = value;
+		isExact = true;
+		this.precision = precision;
+		this.unit = unit;
+		length = NumberFormatter.format(value, precision, reserve(precision, unit), 0);
+		appendUnit(unit);
+		return this;
+	}
+
+	private char[] reserve(int precision, String unit) {
+		final int capacity = NumberFormatter.maxLength(precision) + (unit == null ? 0 : unit.length());
+		if (chars.length < capacity) {
+			chars = new char[capacity];
+		}
+		return chars;
+	}
+
+	private void appendUnit(String unit) {
+		if (unit != null && unit.length() > 0) {
+			unit.getChars(0, unit.length(), chars, length);
+			length += unit.length();
+		}
+	}
+}
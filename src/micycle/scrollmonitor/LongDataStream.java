@@ -0,0 +1,66 @@
+package micycle.scrollmonitor;
+
+import processing.core.PVector;
+
+/**
+ * A datastream of long data (counters, byte totals, nanosecond timings...),
+ * held exactly: its labels show every digit of a value, even beyond the 2^53
+ * that a double holds exactly. Long.MIN_VALUE marks an empty datum (a gap), so
+ * it can't itself be pushed.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class LongDataStream extends WideDataStream {
+
+	/**
+	 * Value of an empty datum (pushed as NaN or negative infinity).
+	 */
+	static final long EMPTY = Long.MIN_VALUE;
+
+	public LongDataStream(String name, int history, PVector drawDimensions) {
+		this(name, history, drawDimensions, Smoothing.MOVING_AVERAGE, 0);
+	}
+
+	public LongDataStream(String name, int history, PVector drawDimensions, Smoothing smoothingType,
+			int smoothing) {
+		super(name, history, drawDimensions, smoothingType, smoothing, -1);
+	}
+
+	@Override
+	int getType() {
+		return SampleRecorder.LONG;
+	}
+
+	@Override
+	double value(long bits) {
+		return bits == EMPTY ? Double.NEGATIVE_INFINITY : bits;
+	}
+
+	@Override
+	long bits(double datum) {
+		if (datum != datum || datum == Double.NEGATIVE_INFINITY) {
+			return EMPTY;
+		}
+		return Math.round(datum);
+	}
+
+	@Override
+	long bits(long datum) {
+		return datum;
+	}
+
+	/**
+	 * Labels raw data exactly (aggregate tiers are labelled with their mean).
+	 */
+	@Override
+	Label formatRawData(Label label, int index, int precision) {
+		if (viewTier == 0) {
+			final long datum = getRawBits(index);
+			if (datum != EMPTY) {
+				return label.set(datum, precision, dataUnit);
+			}
+		}
+		return super.formatRawData(label, index, precision);
+	}
+}
@@ -0,0 +1,67 @@
+package micycle.scrollmonitor;
+
+/**
+ * Equal-weighted moving average, maintained as a running sum over a ring of the
+ * last <code>window</code> data. Empty datapoints occupy a slot in the window
+ * but don't contribute to the average.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class MovingAverageFilter implements SmoothingFilter {
+
+	private final double[] window;
+	private int head; // next slot to overwrite (the oldest datum once full)
+	private int size; // number of slots filled
+	private int valid; // number of non-empty data in the window
+	private double sum; // running sum of non-empty data in the window
+
+	MovingAverageFilter(int window) {
+		this.window = new double[Math.max(1, window)];
+	}
+
+	@Override
+	public double filter(double datum) {
+		if (size == window.length) { // evict oldest
+			final double evicted = window[head];
+			if (evicted != Double.NEGATIVE_INFINITY) {
+				sum -= evicted;
+				valid--;
+			}
+		} else {
+			size++;
+		}
+		window[head] = datum;
+		if (datum != Double.NEGATIVE_INFINITY) {
+			sum += datum;
+			valid++;
+		}
+		head++;
+		if (head == window.length) {
+			head = 0;
+			resum(); // amortised O(1); stops floating-point drift of the running sum
+		}
+
+		if (datum == Double.NEGATIVE_INFINITY) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return sum / valid;
+	}
+
+	@Override
+	public void reset() {
+		head = 0;
+		size = 0;
+		valid = 0;
+		sum = 0;
+	}
+
+	private void resum() {
+		sum = 0;
+		for (int i = 0; i < size; i++) {
+			if (window[i] != Double.NEGATIVE_INFINITY) {
+				sum += window[i];
+			}
+		}
+	}
+}
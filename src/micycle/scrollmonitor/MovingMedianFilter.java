@@ -0,0 +1,169 @@
+package micycle.scrollmonitor;
+
+/**
+ * Median of the last <code>window</code> data. The window is split across two
+ * heaps of window slots (a max-heap of the lower half and a min-heap of the
+ * upper half); each slot records its position within its heap so the evicted
+ * datum can be removed directly. Pushing a datum therefore costs O(log k) and
+ * allocates nothing.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class MovingMedianFilter implements SmoothingFilter {
+
+	private static final byte NONE = 0, LOWER = 1, UPPER = 2;
+
+	private final double[] window; // data, by slot
+	private final byte[] heapOf; // which heap a slot is in (empty data are in neither)
+	private final int[] heapIndex; // position of a slot within its heap
+	private final SlotHeap lower, upper;
+	private int head; // next slot to overwrite
+	private int size; // number of slots filled
+
+	MovingMedianFilter(int window) {
+		final int length = Math.max(1, window);
+		this.window = new double[length];
+		heapOf = new byte[length];
+		heapIndex = new int[length];
+		lower = new SlotHeap(LOWER, length);
+		upper = new SlotHeap(UPPER, length);
+	}
+
+	@Override
+	public double filter(double datum) {
+		if (size == window.length) { // evict oldest
+			if (heapOf[head] == LOWER) {
+				lower.remove(heapIndex[head]);
+			} else if (heapOf[head] == UPPER) {
+				upper.remove(heapIndex[head]);
+			}
+		} else {
+			size++;
+		}
+
+		window[head] = datum;
+		heapOf[head] = NONE;
+		if (datum != Double.NEGATIVE_INFINITY) {
+			if (upper.size > 0 && datum > upper.peek()) {
+				upper.add(head);
+			} else {
+				lower.add(head);
+			}
+		}
+		rebalance();
+		head = (head + 1) % window.length;
+
+		if (datum == Double.NEGATIVE_INFINITY) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		if (lower.size > upper.size) {
+			return lower.peek();
+		}
+		return (lower.peek() + upper.peek()) / 2;
+	}
+
+	@Override
+	public void reset() {
+		head = 0;
+		size = 0;
+		lower.size = 0;
+		upper.size = 0;
+	}
+
+	/**
+	 * Keeps the lower heap the same size as, or one larger than, the upper heap.
+	 */
+	private void rebalance() {
+		while (lower.size > upper.size + 1) {
+			upper.add(lower.poll());
+		}
+		while (upper.size > lower.size) {
+			lower.add(upper.poll());
+		}
+	}
+
+	/**
+	 * A binary heap of window slots, ordered by the data in those slots.
+	 */
+	private final class SlotHeap {
+
+		private final byte id;
+		private final int[] slots;
+		int size;
+
+		SlotHeap(byte id, int capacity) {
+			this.id = id;
+			slots = new int[capacity];
+		}
+
+		double peek() {
+			return window[slots[0]];
+		}
+
+		void add(int slot) {
+			heapOf[slot] = id;
+			place(size, slot);
+			size++;
+			siftUp(size - 1);
+		}
+
+		int poll() {
+			final int top = slots[0];
+			remove(0);
+			return top;
+		}
+
+		void remove(int index) {
+			heapOf[slots[index]] = NONE;
+			size--;
+			if (index != size) {
+				place(index, slots[size]);
+				siftDown(index);
+				siftUp(index);
+			}
+		}
+
+		/**
+		 * @return whether slot a should be nearer the top of the heap than slot b
+		 */
+		private boolean above(int a, int b) {
+			return id == LOWER ? window[a] > window[b] : window[a] < window[b];
+		}
+
+		private void place(int index, int slot) {
+			slots[index] = slot;
+			heapIndex[slot] = index;
+		}
+
+		private void siftUp(int index) {
+			final int slot = slots[index];
+			while (index > 0) {
+				final int parent = (index - 1) >>> 1;
+				if (!above(slot, slots[parent])) {
+					break;
+				}
+				place(index, slots[parent]);
+				index = parent;
+			}
+			place(index, slot);
+		}
+
+		private void siftDown(int index) {
+			final int slot = slots[index];
+			final int half = size >>> 1;
+			while (index < half) {
+				int child = 2 * index + 1;
+				if (child + 1 < size && above(slots[child + 1], slots[child])) {
+					child++;
+				}
+				if (!above(slots[child], slot)) {
+					break;
+				}
+				place(index, slots[child]);
+				index = child;
+			}
+			place(index, slot);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package micycle.scrollmonitor;
+
+/**
+ * Formats numbers into a <code>char[]</code> without allocating (unlike
+ * <code>String.valueOf()</code>, string concatenation or Processing's
+ * <code>nf()</code>), so that labels can be redrawn every frame without
+ * creating garbage.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class NumberFormatter {
+
+	private static final char[] NAN = "NaN".toCharArray();
+	private static final char[] INFINITY = "Infinity".toCharArray();
+	private static final char[] MIN_LONG = String.valueOf(Long.MIN_VALUE).toCharArray();
+	private static final double EXACT = 1L << 53; // doubles below this scale to a long exactly
+	private static final long[] POWERS = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+			1000000000L };
+
+	/**
+	 * Most decimal places supported.
+	 */
+	static final int MAX_PRECISION = POWERS.length - 1;
+
+	private NumberFormatter() {
+	}
+
+	/**
+	 * Most chars {@link #format(double, int, char[], int) format()} writes.
+	 */
+	static int maxLength(int precision) {
+		return 21 + precision; // sign, 19 digits, point
+	}
+
+	/**
+	 * Formats a number, rounded (half up, as Math.round()) to a fixed number of
+	 * decimal places, into a char array. Numbers beyond the range of a long are
+	 * formatted in scientific notation (such as <code>1.500E20</code>).
+	 * 
+	 * @param value     number to format
+	 * @param precision decimal places (0 formats an integer), 0...9
+	 * @param dst       destination; must have room for
+	 *                  {@link #maxLength(int) maxLength(precision)} chars from
+	 *                  offset
+	 * @param offset    index of dst to write from
+	 * @return index of dst after the last char written
+	 */
+	static int format(double value, int precision, char[] dst, int offset) {
+		if (value != value) {
+			System.arraycopy(NAN, 0, dst, offset, NAN.length);
+			return offset + NAN.length;
+		}
+		if (Double.isInfinite(value)) {
+			if (value < 0) {
+				dst[offset++] = '-';
+			}
+			System.arraycopy(INFINITY, 0, dst, offset, INFINITY.length);
+			return offset + INFINITY.length;
+		}
+		final long scale = POWERS[precision];
+		final double scaled = value * scale;
+		if (Math.abs(scaled) < EXACT) {
+			long v = Math.round(scaled);
+			if (v < 0) {
+				dst[offset++] = '-';
+				v = -v;
+			}
+			offset = formatInteger(v / scale, dst, offset);
+			return formatFraction(v % scale, precision, dst, offset);
+		}
+		// too large to scale exactly (so far from rounding to 0)
+		if (value < 0) {
+			dst[offset++] = '-';
+			value = -value;
+		}
+		if (value >= Long.MAX_VALUE) {
+			return formatExponent(value, precision, dst, offset);
+		}
+		long integer = (long) value; // the integer part fits a long, if not with the decimal places
+		long fraction = Math.round((value - integer) * scale); // exact subtraction; 0 beyond 2^53
+		if (fraction == scale) {
+			integer++;
+			fraction = 0;
+		}
+		offset = formatInteger(integer, dst, offset);
+		return formatFraction(fraction, precision, dst, offset);
+	}
+
+	/**
+	 * Formats a positive number too large for a long in scientific notation, such
+	 * as <code>1.235E19</code>: a mantissa with a fixed number of decimal places.
+	 */
+	private static int formatExponent(double value, int precision, char[] dst, int offset) {
+		final long scale = POWERS[precision];
+		int exponent = (int) Math.floor(Math.log10(value));
+		long m = Math.round(value / Math.pow(10, exponent) * scale);
+		if (m >= 10 * scale) { // rounded (or log10 was just under) to 10.0
+			m = Math.round(value / Math.pow(10, ++exponent) * scale);
+		} else if (m < scale) { // log10 was just over
+			m = Math.round(value / Math.pow(10, --exponent) * scale);
+		}
+		offset = formatInteger(m / scale, dst, offset);
+		offset = formatFraction(m % scale, precision, dst, offset);
+		dst[offset++] = 'E';
+		return formatInteger(exponent, dst, offset);
+	}
+
+	/**
+	 * Writes the decimal places (zero-padded) of a number, if any.
+	 */
+	private static int formatFraction(long fraction, int precision, char[] dst, int offset) {
+		if (precision > 0) {
+			dst[offset++] = '.';
+			for (int i = offset + precision - 1; i >= offset; i--) {
+				dst[i] = (char) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			offset += precision;
+		}
+		return offset;
+	}
+
+	/**
+	 * Formats an integer exactly (every digit of a long, which a double can't
+	 * hold beyond 2^53), followed by a fixed number of zero decimal places.
+	 * 
+	 * @see #format(double, int, char[], int)
+	 */
+	static int format(long value, int precision, char[] dst, int offset) {
+		if (value == Long.MIN_VALUE) { // has no positive counterpart
+			System.arraycopy(MIN_LONG, 0, dst, offset, MIN_LONG.length);
+			offset += MIN_LONG.length;
+		} else {
+			if (value < 0) {
+				dst[offset++] = '-';
+				value = -value;
+			}
+			offset = formatInteger(value, dst, offset);
+		}
+		if (precision > 0) {
+			dst[offset++] = '.';
+			for (int i = 0; i < precision; i++) {
+				dst[offset++] = '0';
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Writes the digits of a non-negative integer.
+	 */
+	private static int formatInteger(long v, char[] dst, int offset) {
+		int digits = 1;
+		for (long t = v; t >= 10; t /= 10) {
+			digits++;
+		}
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			dst[i] = (char) ('0' + v % 10);
+			v /= 10;
+		}
+		return offset + digits;
+	}
+}
@@ -0,0 +1,25 @@
+package micycle.scrollmonitor;
+
+/**
+ * What a producer thread should do when it pushes to a datastream whose
+ * ingestion queue is full (when concurrent ingestion is enabled).
+ * 
+ * @author Michael Carleton
+ * @see ScrollMonitor#enableConcurrentIngestion(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Discard the oldest queued datum to make room for the new one.
+	 */
+	DROP_OLDEST,
+	/**
+	 * Discard the datum being pushed.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Wait until the animation thread has drained the queue. Never use this policy
+	 * when pushing from the animation thread itself.
+	 */
+	BLOCK
+}
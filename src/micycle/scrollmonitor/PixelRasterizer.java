@@ -0,0 +1,121 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Rasterises graphs directly into an ARGB pixel buffer. A graph is the area
+ * under a polyline whose vertices increase in x (as produced by the
+ * {@link Decimator}); for each pixel column the vertical extent of the polyline
+ * is computed, and the column is then filled (from the polyline to the bottom)
+ * and stroked (across the polyline's extent, widened by the stroke weight) with
+ * single alpha-blended runs of pixels.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class PixelRasterizer {
+
+	// extent (top & bottom y) of the polyline in each pixel column
+	private float[] top = new float[0], bottom = new float[0];
+
+	/**
+	 * Draws a graph into a pixel buffer.
+	 * 
+	 * @param pixels       ARGB pixels (row-major)
+	 * @param width        width of the buffer (pixels)
+	 * @param height       height of the buffer (pixels)
+	 * @param scale        pixels per draw coordinate (pixel density)
+	 * @param xs           x coordinates of the polyline's vertices
+	 * @param ys           y coordinates of the polyline's vertices
+	 * @param count        number of vertices
+	 * @param filled       whether to fill beneath the polyline
+	 * @param fillColour   ARGB fill colour
+	 * @param stroked      whether to stroke the polyline
+	 * @param strokeColour ARGB stroke colour
+	 * @param strokeWeight stroke weight (draw coordinates)
+	 */
+	void draw(int[] pixels, int width, int height, float scale, float[] xs, float[] ys, int count, boolean filled,
+			int fillColour, boolean stroked, int strokeColour, float strokeWeight) {
+		if (top.length < width) {
+			top = new float[width];
+			bottom = new float[width];
+		}
+		Arrays.fill(top, 0, width, Float.POSITIVE_INFINITY);
+		Arrays.fill(bottom, 0, width, Float.NEGATIVE_INFINITY);
+
+		for (int i = 0; i < count - 1; i++) { // extent of each segment within each column it crosses
+			final float x0 = xs[i] * scale, y0 = ys[i] * scale;
+			final float x1 = xs[i + 1] * scale, y1 = ys[i + 1] * scale;
+			final int c0 = Math.max(0, (int) Math.floor(x0));
+			final int c1 = Math.min(width - 1, (int) Math.floor(x1));
+			if (x1 == x0) {
+				if (c0 == c1) { // vertical segment (within the buffer)
+					extend(c0, Math.min(y0, y1), Math.max(y0, y1));
+				}
+				continue;
+			}
+			final float slope = (y1 - y0) / (x1 - x0);
+			for (int c = c0; c <= c1; c++) {
+				final float ya = y0 + (Math.max(x0, c) - x0) * slope;
+				final float yb = y0 + (Math.min(x1, c + 1) - x0) * slope;
+				extend(c, Math.min(ya, yb), Math.max(ya, yb));
+			}
+		}
+
+		if (filled && (fillColour >>> 24) > 0) {
+			for (int c = 0; c < width; c++) {
+				if (top[c] != Float.POSITIVE_INFINITY) {
+					blendRun(pixels, width, c, Math.max(0, Math.round(top[c])), height, fillColour);
+				}
+			}
+		}
+		if (stroked && (strokeColour >>> 24) > 0 && strokeWeight > 0) {
+			final float half = strokeWeight * scale / 2;
+			final int reach = (int) half; // columns either side the stroke covers
+			for (int c = 0; c < width; c++) {
+				float t = Float.POSITIVE_INFINITY, b = Float.NEGATIVE_INFINITY;
+				for (int k = Math.max(0, c - reach); k <= Math.min(width - 1, c + reach); k++) {
+					t = Math.min(t, top[k]);
+					b = Math.max(b, bottom[k]);
+				}
+				if (t != Float.POSITIVE_INFINITY) {
+					final int from = Math.round(t - half);
+					blendRun(pixels, width, c, Math.max(0, from), Math.min(height, Math.max(from + 1, Math.round(b + half))),
+							strokeColour);
+				}
+			}
+		}
+	}
+
+	private void extend(int column, float t, float b) {
+		top[column] = Math.min(top[column], t);
+		bottom[column] = Math.max(bottom[column], b);
+	}
+
+	/**
+	 * Alpha-blends (source-over) a colour into the rows [from, to) of a column.
+	 */
+	private static void blendRun(int[] pixels, int width, int column, int from, int to, int colour) {
+		final int sa = colour >>> 24;
+		final int ia = 255 - sa;
+		final int sr = ((colour >> 16) & 0xff) * sa, sg = ((colour >> 8) & 0xff) * sa, sb = (colour & 0xff) * sa;
+		for (int i = from * width + column, end = to * width; i < end; i += width) {
+			final int dst = pixels[i];
+			final int da = dst >>> 24;
+			if (sa == 255) {
+				pixels[i] = colour;
+			} else if (da == 255) { // opaque destination (usual, over the background)
+				pixels[i] = 0xff000000 | ((sr + ((dst >> 16) & 0xff) * ia + 127) / 255) << 16
+						| ((sg + ((dst >> 8) & 0xff) * ia + 127) / 255) << 8 | ((sb + (dst & 0xff) * ia + 127) / 255);
+			} else {
+				final int dw = da * ia / 255; // destination weight
+				final int oa = sa + dw;
+				if (oa == 0) {
+					continue;
+				}
+				pixels[i] = oa << 24 | ((sr + ((dst >> 16) & 0xff) * dw) / oa) << 16
+						| ((sg + ((dst >> 8) & 0xff) * dw) / oa) << 8 | ((sb + (dst & 0xff) * dw) / oa);
+			}
+		}
+	}
+}
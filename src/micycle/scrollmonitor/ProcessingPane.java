@@ -7,6 +7,7 @@ import static processing.core.PApplet.min;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
+import micycle.scrollmonitor.RenderStats.Phase;
 import processing.awt.PSurfaceAWT;
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -23,6 +24,10 @@ import processing.event.MouseEvent;
  * Concrete implementations (classes that extend ProcessingPane) should draw
  * into the pane's {@link #canvas}: e.g. <code>canvas.rect(a,b,c,d);</code>.
  * <p>
+ * A pane can also be headless: it then draws into an off-screen output buffer
+ * rather than a running sketch, and has no surface or mouse/key interaction.
+ * Decorations drawn outside of the canvas should be drawn into {@link #out()}.
+ * <p>
  * ProcessingPane has been developed in a *generic* manner for ScrollMonitor,
  * enabling easy use in any other unrelated projects.
  * 
@@ -36,6 +41,11 @@ abstract class ProcessingPane {
 	 */
 	final PApplet p;
 	final PGraphics canvas; // Pane graphics (sub-class should draw into this)
+	/**
+	 * When headless, the off-screen graphics the pane is drawn into (in place of
+	 * the parent PApplet); null otherwise.
+	 */
+	private final PGraphics output;
 	/**
 	 * Coordinate of upper-left corner (origin) of the pane.
 	 */
@@ -104,6 +114,12 @@ abstract class ProcessingPane {
 	 */
 	private boolean lockPosition = false, lockDimensions = false;
 
+	/**
+	 * Frame timings, recorded by {@link #run()} (and by {@link #draw()} for its own
+	 * phases); null when instrumentation is disabled.
+	 */
+	RenderStats renderStats = null;
+
 	/**
 	 * Creates a new pane, having a minimum dimension of (50, 50).
 	 * 
@@ -114,10 +130,12 @@ abstract class ProcessingPane {
 	 */
 	public ProcessingPane(PApplet p, PVector position, PVector dimensions) {
 		this.p = p;
+		output = null;
 
 		this.position = position;
 		this.dimensions = dimensions;
 
+		mousePos = new PVector();
 		mouseResizeBuffer = new PVector(20, 20);
 		minimumDimensions = new PVector(50, 50);
 
@@ -153,36 +171,101 @@ abstract class ProcessingPane {
 	/**
 	 * Updates the pane and draws its contents into the parent PApplet.
 	 * <p>
-	 * Internally, this method calls {@link #draw()} followed by {@link #post()},
-	 * which should contain the user implementation.
+	 * Internally, this method calls {@link #pre()}, {@link #draw()} and then
+	 * {@link #post()}, which should contain the user implementation.
 	 */
 	public final void run() {
-		update(); // resizing & dragging, etc.
+		final RenderStats stats = renderStats;
+		long t = stats != null ? System.nanoTime() : 0;
+		pre();
+		final PGraphics out = out();
+		if (output != null) {
+			output.beginDraw();
+			output.clear();
+		} else {
+			update(); // resizing & dragging, etc.
+		}
 		canvas.beginDraw();
-		draw();
+		if (stats != null) {
+			stats.lap(Phase.UPDATE, t);
+		}
+		draw(); // times its own phases
+		if (stats != null) {
+			t = System.nanoTime();
+		}
 		canvas.endDraw();
-		p.image(canvas, position.x, position.y);
+		out.image(canvas, position.x, position.y);
 		if (drawBorder) {
-			p.stroke(borderStrokeColor);
-			p.strokeWeight(borderStrokeWeight);
-			p.line(position.x, position.y, position.x, position.y + dimensions.y);
-			p.line(position.x + dimensions.x, position.y, position.x + dimensions.x, position.y + dimensions.y);
-			p.line(position.x, position.y + dimensions.y, position.x + dimensions.x, position.y + dimensions.y);
-			p.line(position.x, position.y, position.x + dimensions.x, position.y);
+			out.stroke(borderStrokeColor);
+			out.strokeWeight(borderStrokeWeight);
+			out.line(position.x, position.y, position.x, position.y + dimensions.y);
+			out.line(position.x + dimensions.x, position.y, position.x + dimensions.x, position.y + dimensions.y);
+			out.line(position.x, position.y + dimensions.y, position.x + dimensions.x, position.y + dimensions.y);
+			out.line(position.x, position.y, position.x + dimensions.x, position.y);
+		}
+		if (output != null) {
+			output.endDraw();
+		}
+		if (stats != null) {
+			stats.lap(Phase.COMPOSITE, t);
+			stats.commit();
 		}
 		post();
 	}
 
+	/**
+	 * Creates a headless pane, which draws into an off-screen output buffer and
+	 * has no surface or event handling (so cannot be moved or resized by the
+	 * mouse).
+	 * 
+	 * @param output     graphics the pane is drawn into (created by a PApplet,
+	 *                   which need not be running)
+	 * @param position   coordinate of upper-left corner (origin) of the pane within
+	 *                   the output
+	 * @param dimensions width and height of the pane
+	 */
+	ProcessingPane(PGraphics output, PVector position, PVector dimensions) {
+		this.p = output.parent;
+		this.output = output;
+
+		this.position = position;
+		this.dimensions = dimensions;
+
+		mousePos = new PVector(-1, -1);
+		mouseResizeBuffer = new PVector(20, 20);
+		minimumDimensions = new PVector(50, 50);
+
+		canvas = createLayer((int) dimensions.x, (int) dimensions.y);
+		renderer = RENDERERS.JAVA2D;
+		lockPosition = true;
+		lockDimensions = true;
+	}
+
+	/**
+	 * @return graphics the pane is drawn into: the parent PApplet's, or the output
+	 *         buffer if headless
+	 */
+	final PGraphics out() {
+		return output != null ? output : p.g;
+	}
+
+	/**
+	 * @return whether the pane draws into an off-screen output buffer
+	 */
+	final boolean isHeadless() {
+		return output != null;
+	}
+
 	/**
 	 * Internal method to update things pertaining to the pane not the canvas it
 	 * contains.
 	 */
 	private final void update() { // pre#
 
-		mousePos = new PVector(constrain(p.mouseX, 0, p.width), constrain(p.mouseY, 0, p.height));
-		mouseOverPane = withinRegion(mousePos, position, PVector.add(position, dimensions));
-		withinMoveRegion = withinRegion(mousePos, PVector.add(position, mouseResizeBuffer),
-				PVector.add(position, dimensions).sub(mouseResizeBuffer));
+		mousePos.set(constrain(p.mouseX, 0, p.width), constrain(p.mouseY, 0, p.height)); // reused (called every frame)
+		mouseOverPane = withinRegion(mousePos, position.x, position.y, position.x + dimensions.x, position.y + dimensions.y);
+		withinMoveRegion = withinRegion(mousePos, position.x + mouseResizeBuffer.x, position.y + mouseResizeBuffer.y,
+				position.x + dimensions.x - mouseResizeBuffer.x, position.y + dimensions.y - mouseResizeBuffer.y);
 
 		if (resizing) {
 			resizeInternal();
@@ -226,6 +309,32 @@ abstract class ProcessingPane {
 		pmouseOverPane = mouseOverPane;
 	}
 
+	/**
+	 * Creates an off-screen graphics buffer, using the same renderer as the
+	 * {@link #canvas}.
+	 */
+	final PGraphics createLayer(int width, int height) {
+		final PGraphics layer;
+		switch (p.sketchRenderer()) {
+			case "processing.opengl.PGraphics3D" :
+				layer = p.createGraphics(width, height, PConstants.P3D);
+				break;
+			case "processing.opengl.PGraphics2D" :
+				layer = p.createGraphics(width, height, PConstants.P2D);
+				break;
+			default :
+				layer = p.createGraphics(width, height);
+		}
+		layer.smooth(3);
+		return layer;
+	}
+
+	/**
+	 * Called at the start of {@link #run()}, before the pane is updated and drawn.
+	 */
+	void pre() {
+	}
+
 	abstract void draw();
 
 	/**
@@ -546,10 +655,18 @@ abstract class ProcessingPane {
 	 * @return True if point contained in region.
 	 */
 	private static final boolean withinRegion(PVector point, PVector UL, PVector BR) {
-		return (point.x >= UL.x && point.y >= UL.y) && (point.x <= BR.x && point.y <= BR.y) // SE
-				|| (point.x >= BR.x && point.y >= BR.y) && (point.x <= UL.x && point.y <= UL.y) // NW
-				|| (point.x <= UL.x && point.x >= BR.x) && (point.y >= UL.y && point.y <= BR.y) // SW
-				|| (point.x <= BR.x && point.x >= UL.x) && (point.y >= BR.y && point.y <= UL.y); // NE
+		return withinRegion(point, UL.x, UL.y, BR.x, BR.y);
+	}
+
+	/**
+	 * Determine if a point is within a rectangular region -- float params (avoids
+	 * allocating corner vectors).
+	 */
+	private static final boolean withinRegion(PVector point, float ULx, float ULy, float BRx, float BRy) {
+		return (point.x >= ULx && point.y >= ULy) && (point.x <= BRx && point.y <= BRy) // SE
+				|| (point.x >= BRx && point.y >= BRy) && (point.x <= ULx && point.y <= ULy) // NW
+				|| (point.x <= ULx && point.x >= BRx) && (point.y >= ULy && point.y <= BRy) // SW
+				|| (point.x <= BRx && point.x >= ULx) && (point.y >= BRy && point.y <= ULy); // NE
 	}
 
 }
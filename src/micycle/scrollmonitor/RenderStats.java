@@ -0,0 +1,264 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Rolling frame timings of a monitor, broken down by rendering phase. The
+ * timings of the most recent {@link #getWindow() window} of frames are kept,
+ * both as-is (for the last/mean/maximum) and in a log-linear histogram (for
+ * percentiles, to within 1/8th of the value), which is updated incrementally as
+ * frames enter and leave the window.
+ * <p>
+ * Timings are recorded with {@link System#nanoTime()} at the phase boundaries
+ * of each frame, only while instrumentation is
+ * {@link ScrollMonitor#setRenderStats(boolean) enabled}.
+ *
+ * @author Michael Carleton
+ * @see ScrollMonitor#getRenderStats()
+ */
+public final class RenderStats {
+
+	/**
+	 * Phases of a frame.
+	 */
+	public enum Phase {
+		/**
+		 * Ingestion queue draining and pane housekeeping (mouse, moving and resizing).
+		 */
+		UPDATE,
+		/**
+		 * Dynamic y-axis scan and rescaling, and time view alignment.
+		 */
+		Y_AXIS,
+		/**
+		 * Background, guidelines and axis labels.
+		 */
+		BACKGROUND,
+		/**
+		 * Building and drawing (or rasterising) graph geometry.
+		 */
+		GEOMETRY,
+		/**
+		 * Finding the graph under the mouse.
+		 */
+		HIT_TEST,
+		/**
+		 * Value, mouse-over and crosshair labels.
+		 */
+		LABELS,
+		/**
+		 * Compositing the monitor into its parent (or output) graphics.
+		 */
+		COMPOSITE,
+		/**
+		 * The whole frame (the sum of the other phases).
+		 */
+		TOTAL
+	}
+
+	private static final int SUB_BUCKET_BITS = 3; // 8 buckets per power of 2
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS; // up to 2^63 ns
+
+	private final int window;
+	private final long[][] samples; // [phase][frame], ring buffers
+	private final int[][] histograms; // [phase][bucket] of the frames in the window
+	private final long[] sums; // [phase] of the frames in the window
+	private final long[] current; // [phase] of the frame being timed
+	private int head; // next ring index
+	private long frames;
+
+	/**
+	 * @param window number of most recent frames the statistics cover
+	 */
+	RenderStats(int window) {
+		this.window = Math.max(1, window);
+		final int phases = Phase.values().length;
+		samples = new long[phases][this.window];
+		histograms = new int[phases][BUCKETS];
+		sums = new long[phases];
+		current = new long[phases];
+	}
+
+	/**
+	 * Adds the time elapsed since <code>start</code> to a phase of the current
+	 * frame.
+	 *
+	 * @param phase
+	 * @param start {@link System#nanoTime()} at the start of the phase
+	 * @return {@link System#nanoTime()} now (the start of the next phase)
+	 */
+	long lap(Phase phase, long start) {
+		final long now = System.nanoTime();
+		current[phase.ordinal()] += now - start;
+		return now;
+	}
+
+	/**
+	 * Ends the current frame, adding its timings to the window (and evicting those
+	 * of the oldest frame once the window is full).
+	 */
+	void commit() {
+		long total = 0;
+		for (int i = 0; i < Phase.TOTAL.ordinal(); i++) {
+			total += current[i];
+		}
+		current[Phase.TOTAL.ordinal()] = total;
+
+		final boolean full = frames >= window;
+		for (int i = 0; i < current.length; i++) {
+			final long[] ring = samples[i];
+			if (full) {
+				histograms[i][bucket(ring[head])]--;
+				sums[i] -= ring[head];
+			}
+			ring[head] = current[i];
+			histograms[i][bucket(current[i])]++;
+			sums[i] += current[i];
+			current[i] = 0;
+		}
+		head = (head + 1) % window;
+		frames++;
+	}
+
+	/**
+	 * @return number of most recent frames the statistics cover
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return number of frames timed since instrumentation was enabled
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @param phase
+	 * @return time (nanoseconds) spent in the phase in the most recent frame; 0 if
+	 *         no frame has been timed yet
+	 */
+	public long getLast(Phase phase) {
+		return frames == 0 ? 0 : samples[phase.ordinal()][(head + window - 1) % window];
+	}
+
+	/**
+	 * @param phase
+	 * @return mean time (nanoseconds) spent in the phase per frame, over the window
+	 */
+	public double getMean(Phase phase) {
+		final int n = count();
+		return n == 0 ? 0 : sums[phase.ordinal()] / (double) n;
+	}
+
+	/**
+	 * @param phase
+	 * @return maximum time (nanoseconds) spent in the phase in a frame, over the
+	 *         window
+	 */
+	public long getMax(Phase phase) {
+		final long[] ring = samples[phase.ordinal()];
+		long max = 0;
+		for (int i = 0, n = count(); i < n; i++) {
+			max = Math.max(max, ring[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns (an estimate of) a percentile of the time spent in a phase per frame,
+	 * over the window: the midpoint of the histogram bucket the percentile falls
+	 * in.
+	 *
+	 * @param phase
+	 * @param percentile 0...100 (e.g. 99 for the 99th percentile)
+	 * @return time (nanoseconds)
+	 */
+	public long getPercentile(Phase phase, double percentile) {
+		final int n = count();
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * n));
+		final int[] histogram = histograms[phase.ordinal()];
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += histogram[b];
+			if (seen >= rank) {
+				final long lower = lowerBound(b);
+				return lower + (lowerBound(b + 1) - 1 - lower) / 2;
+			}
+		}
+		return getMax(phase); // unreachable
+	}
+
+	/**
+	 * Copies the histogram of a phase's per-frame timings over the window.
+	 *
+	 * @param phase
+	 * @param counts destination for the count of frames in each bucket (at most
+	 *               its length are copied); bucket <code>b</code> covers
+	 *               [{@link #getBucketLowerBound(int) lowerBound(b)},
+	 *               lowerBound(b + 1)) nanoseconds
+	 * @return number of buckets
+	 */
+	public int getHistogram(Phase phase, int[] counts) {
+		System.arraycopy(histograms[phase.ordinal()], 0, counts, 0, Math.min(counts.length, BUCKETS));
+		return BUCKETS;
+	}
+
+	/**
+	 * @param bucket histogram bucket index
+	 * @return smallest time (nanoseconds) counted in the bucket
+	 * @see #getHistogram(Phase, int[])
+	 */
+	public static long getBucketLowerBound(int bucket) {
+		return lowerBound(bucket);
+	}
+
+	/**
+	 * Clears all timings.
+	 */
+	public void reset() {
+		for (int i = 0; i < samples.length; i++) {
+			Arrays.fill(samples[i], 0);
+			Arrays.fill(histograms[i], 0);
+			sums[i] = 0;
+			current[i] = 0;
+		}
+		head = 0;
+		frames = 0;
+	}
+
+	private int count() {
+		return (int) Math.min(frames, window);
+	}
+
+	/**
+	 * Values below {@link #SUB_BUCKETS} have a bucket each; above, each power of 2
+	 * is split into {@link #SUB_BUCKETS} linear buckets.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		if (bucket >= BUCKETS) {
+			return Long.MAX_VALUE;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+}
@@ -0,0 +1,459 @@
+package micycle.scrollmonitor;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plays a recording (made by {@link ScrollMonitor#startRecording(Path, long)})
+ * back into a monitor, at between {@value #MIN_SPEED}x and {@value #MAX_SPEED}x
+ * its recorded speed.
+ * <p>
+ * The recording's segments are memory-mapped (read-only), so data is paged in
+ * from disk as it is played rather than loaded into the heap. On opening, a
+ * sparse seek index is built from the timestamp of every
+ * {@value #INDEX_STRIDE}th record, so {@link #seek(long) seeking} is a binary
+ * search of the index plus a scan of at most {@value #INDEX_STRIDE} records,
+ * however long the recording.
+ * <p>
+ * Timestamps are expressed as nanoseconds since the epoch (recorded timestamps
+ * are converted using each segment's epoch offset). Records are played in the
+ * order they were recorded; each is pushed once the playback position reaches
+ * its timestamp, to the stream it was recorded from. Data is pushed with its
+ * recorded time converted to this process's {@link System#nanoTime()} clock,
+ * the clock of live pushes, so replayed and live data share a stream's time
+ * axis and a replay can itself be recorded.
+ * <p>
+ * If playback falls behind by more data than the attached streams can hold
+ * (after a long stall, or at a high speed), the data that would be overwritten
+ * before it could be drawn is skipped rather than pushed, so a frame pushes at
+ * most about a history's worth of data.
+ * <p>
+ * A replay should be controlled from the animation thread.
+ *
+ * @author Michael Carleton
+ * @see ScrollMonitor#startReplay(Replay)
+ */
+public final class Replay {
+
+	public static final double MIN_SPEED = 0.1;
+	public static final double MAX_SPEED = 1000;
+	static final int INDEX_STRIDE = 1024; // records per index entry
+
+	private final Path directory;
+	private final String[] names; // by stream id (null where unused)
+	private final int[] types; // by stream id
+	private final MappedByteBuffer[] segments;
+	private final int[] segmentRecords; // number of records in each segment
+	private final long[] segmentEpochOffsets;
+	private final long recordCount;
+
+	/**
+	 * Seek index: the highest timestamp up to (and including) every
+	 * INDEX_STRIDE-th record (so non-decreasing, even if the recording's
+	 * timestamps are not).
+	 */
+	private final long[] indexTimes;
+	private final long startTime, endTime;
+
+	/**
+	 * Streams data is pushed to, by stream id (set when attached to a monitor).
+	 */
+	private DataStream[] targets = new DataStream[0];
+	private long backlogLimit; // most data pushed by a frame: the targets' total history
+	private long clockOffset; // epoch offset of this process's nanoTime clock (set when attached)
+
+	// read cursor
+	private int segment;
+	private int record; // within segment
+	private long cursor; // index of the record within the recording
+
+	// playback clock: the position is anchorTime + (nanoTime - anchorNanos) * speed
+	private long anchorTime;
+	private long anchorNanos;
+	private double speed = 1;
+	private boolean playing = true;
+
+	private Replay(Path directory, String[] names, int[] types, MappedByteBuffer[] segments, int[] segmentRecords,
+			long[] segmentEpochOffsets) {
+		this.directory = directory;
+		this.names = names;
+		this.types = types;
+		this.segments = segments;
+		this.segmentRecords = segmentRecords;
+		this.segmentEpochOffsets = segmentEpochOffsets;
+
+		long count = 0;
+		for (int n : segmentRecords) {
+			count += n;
+		}
+		recordCount = count;
+
+		indexTimes = new long[(int) ((count + INDEX_STRIDE - 1) / INDEX_STRIDE)];
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE, running = Long.MIN_VALUE;
+		int entry = 0;
+		long first = 0; // index of the segment's first record within the recording
+		for (int s = 0; s < segments.length; s++) {
+			final int n = segmentRecords[s];
+			if (n == 0) {
+				continue;
+			}
+			min = Math.min(min, timestamp(s, 0));
+			max = Math.max(max, timestamp(s, n - 1));
+			long i = (first + INDEX_STRIDE - 1) / INDEX_STRIDE * INDEX_STRIDE; // first indexed record in segment
+			for (; i < first + n; i += INDEX_STRIDE) {
+				running = Math.max(running, timestamp(s, (int) (i - first)));
+				indexTimes[entry++] = running;
+			}
+			first += n;
+		}
+		startTime = count == 0 ? 0 : min;
+		endTime = count == 0 ? 0 : max;
+		rewind();
+	}
+
+	/**
+	 * Opens a recording for replay.
+	 *
+	 * @param directory directory a monitor recorded into
+	 * @return replay, positioned at the start of the recording
+	 * @throws IOException if the recording cannot be read
+	 */
+	public static Replay open(Path directory) throws IOException {
+		final ArrayList<String> names = new ArrayList<>();
+		int[] types = new int[0];
+		final Path namesFile = directory.resolve(SampleRecorder.NAMES_FILE);
+		if (Files.exists(namesFile)) {
+			for (String line : Files.readAllLines(namesFile, StandardCharsets.UTF_8)) {
+				final int id = SampleRecorder.parseId(line);
+				if (id > 0) {
+					while (names.size() <= id) {
+						names.add(null);
+					}
+					names.set(id, SampleRecorder.parseName(line));
+					if (types.length <= id) {
+						types = Arrays.copyOf(types, id + 1);
+					}
+					types[id] = SampleRecorder.parseType(line); // the last line of an id holds
+				}
+			}
+		}
+
+		final ArrayList<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "segment-*.bin")) {
+			for (Path p : segments) {
+				if (SampleRecorder.segmentIndex(p) >= 0) {
+					paths.add(p);
+				}
+			}
+		}
+		Collections.sort(paths,
+				(a, b) -> Integer.compare(SampleRecorder.segmentIndex(a), SampleRecorder.segmentIndex(b)));
+
+		final ArrayList<MappedByteBuffer> segments = new ArrayList<>(paths.size());
+		final int[] records = new int[paths.size()];
+		final long[] epochOffsets = new long[paths.size()];
+		for (Path p : paths) {
+			final MappedByteBuffer b;
+			try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+				if (channel.size() < SampleRecorder.HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+					continue;
+				}
+				b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			b.order(ByteOrder.BIG_ENDIAN);
+			if (b.getInt(0) != SampleRecorder.MAGIC || b.getInt(4) != SampleRecorder.VERSION) {
+				throw new IOException(p + " is not a recording segment.");
+			}
+			final int s = segments.size();
+			epochOffsets[s] = b.getLong(8);
+			records[s] = countRecords(b);
+			segments.add(b);
+		}
+		final int n = segments.size();
+		return new Replay(directory, names.toArray(new String[0]), Arrays.copyOf(types, names.size()),
+				segments.toArray(new MappedByteBuffer[n]),
+				Arrays.copyOf(records, n), Arrays.copyOf(epochOffsets, n));
+	}
+
+	/**
+	 * Finds the end of a segment's data (the first record with an id of 0) with a
+	 * binary search, since records are written in order.
+	 */
+	private static int countRecords(MappedByteBuffer b) {
+		int lo = 0, hi = (b.capacity() - SampleRecorder.HEADER_BYTES) / SampleRecorder.RECORD_BYTES;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (b.getInt(SampleRecorder.HEADER_BYTES + mid * SampleRecorder.RECORD_BYTES) != 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return directory the recording is in
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return names of the streams in the recording
+	 */
+	public List<String> getStreamNames() {
+		final ArrayList<String> list = new ArrayList<>();
+		for (String name : names) {
+			if (name != null) {
+				list.add(name);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return number of data in the recording
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return timestamp (ns since the epoch) the recording starts at (of the
+	 *         earliest first datum of its segments)
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return timestamp (ns since the epoch) the recording ends at (of the latest
+	 *         last datum of its segments)
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * @return current playback position (ns since the epoch)
+	 */
+	public long getPosition() {
+		if (!playing) {
+			return anchorTime;
+		}
+		return anchorTime + (long) ((System.nanoTime() - anchorNanos) * speed);
+	}
+
+	/**
+	 * Sets the playback speed, relative to the recorded speed.
+	 *
+	 * @param speed constrained to {@value #MIN_SPEED}...{@value #MAX_SPEED}
+	 */
+	public void setSpeed(double speed) {
+		reanchor();
+		this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Pauses (freezing the playback position) or resumes playback.
+	 *
+	 * @param playing
+	 */
+	public void setPlaying(boolean playing) {
+		reanchor();
+		this.playing = playing;
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * @return whether every datum in the recording has been played
+	 */
+	public boolean isFinished() {
+		return segment >= segments.length;
+	}
+
+	/**
+	 * Jumps to a point in the recording: playback continues from the first datum
+	 * recorded at or after the given time (earlier data is skipped, not pushed).
+	 *
+	 * @param timestamp ns since the epoch
+	 */
+	public void seek(long timestamp) {
+		// last index entry whose running maximum is still before the timestamp
+		int lo = 0, hi = indexTimes.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (indexTimes[mid] < timestamp) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		setCursor(Math.max(0, lo - 1) * (long) INDEX_STRIDE);
+		while (segment < segments.length && timestamp(segment, record) < timestamp) { // <= INDEX_STRIDE records
+			advance();
+		}
+		anchorTime = timestamp;
+		anchorNanos = System.nanoTime();
+	}
+
+	/**
+	 * Moves playback to the start of the recording.
+	 */
+	public void rewind() {
+		setCursor(0);
+		anchorTime = startTime;
+		anchorNanos = System.nanoTime();
+	}
+
+	/**
+	 * Sets the streams data is pushed to.
+	 *
+	 * @param targets by stream id
+	 */
+	void attach(DataStream[] targets) {
+		this.targets = targets;
+		long limit = 0;
+		for (DataStream d : targets) {
+			if (d != null) {
+				limit += d.length;
+			}
+		}
+		backlogLimit = limit;
+		clockOffset = SampleRecorder.epochOffset();
+	}
+
+	/**
+	 * @return names of the recorded streams, by stream id (null where unused)
+	 */
+	String[] names() {
+		return names;
+	}
+
+	/**
+	 * @return types of the recorded streams ({@link SampleRecorder#FLOAT},
+	 *         {@link SampleRecorder#DOUBLE} or {@link SampleRecorder#LONG}), by
+	 *         stream id
+	 */
+	int[] types() {
+		return types;
+	}
+
+	/**
+	 * Pushes every datum due by the current playback position to its stream.
+	 */
+	void feed() {
+		final long position = getPosition();
+		final long due = dueLowerBound(position);
+		if (due - cursor > backlogLimit) { // the oldest data would be overwritten unseen
+			setCursor(due - backlogLimit);
+		}
+		while (segment < segments.length) {
+			final MappedByteBuffer b = segments[segment];
+			final int offset = SampleRecorder.HEADER_BYTES + record * SampleRecorder.RECORD_BYTES;
+			final long timestamp = b.getLong(offset + 8) + segmentEpochOffsets[segment];
+			if (timestamp > position) {
+				return;
+			}
+			final int id = b.getInt(offset);
+			final DataStream d = id < targets.length ? targets[id] : null;
+			if (d != null && !d.removed) {
+				push(d, timestamp - clockOffset, b.getInt(offset + 4), b.getLong(offset + 16));
+			}
+			advance();
+		}
+	}
+
+	/**
+	 * Pushes a recorded datum to a stream in the type it was recorded in, so it
+	 * keeps its precision (it is converted only if the stream is of another
+	 * type).
+	 *
+	 * @param type type the datum was recorded in
+	 * @param bits raw bits of the datum
+	 */
+	private static void push(DataStream d, long timestamp, int type, long bits) {
+		switch (type) {
+			case SampleRecorder.DOUBLE :
+				d.pushDouble(timestamp, Double.longBitsToDouble(bits));
+				break;
+			case SampleRecorder.LONG :
+				if (bits == LongDataStream.EMPTY) {
+					d.pushDouble(timestamp, Double.NEGATIVE_INFINITY); // a gap in any type
+				} else {
+					d.pushLong(timestamp, bits);
+				}
+				break;
+			default :
+				d.push(timestamp, Float.intBitsToFloat((int) bits));
+				break;
+		}
+	}
+
+	/**
+	 * @return number of records, from the start of the recording, that are
+	 *         certainly due by a playback position (a multiple of
+	 *         {@value #INDEX_STRIDE}, found from the seek index)
+	 */
+	private long dueLowerBound(long position) {
+		int lo = 0, hi = indexTimes.length; // first index entry whose running maximum is after the position
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (indexTimes[mid] <= position) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return Math.max(0, lo - 1) * (long) INDEX_STRIDE;
+	}
+
+	private void reanchor() {
+		anchorTime = getPosition();
+		anchorNanos = System.nanoTime();
+	}
+
+	private void setCursor(long index) {
+		cursor = index;
+		segment = 0;
+		while (segment < segments.length && index >= segmentRecords[segment]) {
+			index -= segmentRecords[segment++];
+		}
+		record = (int) index;
+	}
+
+	private void advance() {
+		cursor++;
+		if (++record >= segmentRecords[segment]) {
+			record = 0;
+			do {
+				segment++;
+			} while (segment < segments.length && segmentRecords[segment] == 0);
+		}
+	}
+
+	private long timestamp(int segment, int record) {
+		return segments[segment].getLong(SampleRecorder.HEADER_BYTES + record * SampleRecorder.RECORD_BYTES + 8)
+				+ segmentEpochOffsets[segment];
+	}
+
+}
@@ -0,0 +1,205 @@
+package micycle.scrollmonitor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring of data that sits in front of a datastream when
+ * concurrent ingestion is enabled. Any number of producer threads may push to
+ * it; the animation thread drains it into the datastream.
+ * <p>
+ * Each slot of the ring carries a sequence number that tells producers and the
+ * consumer whether the slot is free to write or ready to read (after Vyukov's
+ * bounded queue), so slots are claimed with a single CAS and no locks are
+ * taken.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class SampleQueue {
+
+	private final int mask;
+	private final AtomicLongArray sequence;
+	private final long[] values; // bits of the data, in the datastream's type
+	private final long[] timestamps;
+	private final AtomicLong enqueuePosition = new AtomicLong();
+	private final AtomicLong dequeuePosition = new AtomicLong();
+	private final OverflowPolicy policy;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicInteger writers = new AtomicInteger(); // producers inside offer()
+	private volatile boolean closed;
+
+	/**
+	 * Timestamp of data pushed without one.
+	 */
+	static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	/**
+	 * @param capacity minimum capacity (rounded up to a power of 2)
+	 * @param policy   overflow policy
+	 */
+	SampleQueue(int capacity, OverflowPolicy policy) {
+		capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1); // next power of 2
+		mask = capacity - 1;
+		sequence = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequence.set(i, i);
+		}
+		values = new long[capacity];
+		timestamps = new long[capacity];
+		this.policy = policy;
+	}
+
+	/**
+	 * Enqueues a datum (any thread), applying the overflow policy if the queue is
+	 * full.
+	 * 
+	 * @param sample bits of the datum
+	 * @return false if the queue has been closed (the datum was not enqueued)
+	 * @see DataStream#toSample(double)
+	 */
+	boolean offer(long sample) {
+		return offer(NO_TIMESTAMP, sample);
+	}
+
+	/**
+	 * Enqueues a timestamped datum (any thread), applying the overflow policy if
+	 * the queue is full.
+	 * 
+	 * @param timestamp nanoseconds
+	 * @param sample    bits of the datum
+	 * @return false if the queue has been closed (the datum was not enqueued)
+	 */
+	boolean offer(long timestamp, long sample) {
+		writers.incrementAndGet(); // announce before checking closed, so close() waits for us
+		try {
+			if (closed) {
+				return false;
+			}
+			enqueue(timestamp, sample);
+			return true;
+		} finally {
+			writers.decrementAndGet();
+		}
+	}
+
+	private void enqueue(long timestamp, long sample) {
+		while (!tryOffer(timestamp, sample)) {
+			switch (policy) {
+				case DROP_OLDEST :
+					final long oldest = claim();
+					if (oldest >= 0) { // discard the oldest (another thread may have beaten us to it)
+						release(oldest);
+						dropped.incrementAndGet();
+					}
+					break;
+				case BLOCK :
+					LockSupport.parkNanos(1000);
+					break;
+				case DROP_NEWEST :
+				default :
+					dropped.incrementAndGet();
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Pushes all data currently in the queue into a datastream (animation thread
+	 * only). Drains at most one queue-length of data, so that fast producers can't
+	 * keep the caller here indefinitely.
+	 * 
+	 * @param dataStream
+	 * @return number of data drained
+	 */
+	int drainTo(DataStream dataStream) {
+		int drained = 0;
+		long position;
+		while (drained <= mask && (position = claim()) >= 0) {
+			final long sample = values[(int) position & mask];
+			final long timestamp = timestamps[(int) position & mask];
+			release(position);
+			dataStream.pushSample(timestamp, sample);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Closes the queue (animation thread only): subsequent offers are refused, and
+	 * once producers that were mid-offer have finished, every datum they enqueued
+	 * is pushed into the datastream. So no datum is stranded in a queue that is
+	 * being replaced or removed.
+	 * 
+	 * @param dataStream datastream to push the remaining data into
+	 */
+	void close(DataStream dataStream) {
+		closed = true;
+		while (true) {
+			final int inFlight = writers.get(); // read before draining: see offer()
+			while (drainTo(dataStream) > 0) {
+			}
+			if (inFlight == 0) {
+				return;
+			}
+			Thread.yield(); // a producer is mid-offer (or blocked on a full queue)
+		}
+	}
+
+	/**
+	 * @return number of data discarded due to overflow
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	private boolean tryOffer(long timestamp, long sample) {
+		long position = enqueuePosition.get();
+		while (true) {
+			final long difference = sequence.get((int) position & mask) - position;
+			if (difference == 0) { // slot is free
+				if (enqueuePosition.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (difference < 0) { // full
+				return false;
+			} else { // another producer claimed this slot
+				position = enqueuePosition.get();
+			}
+		}
+		values[(int) position & mask] = sample;
+		timestamps[(int) position & mask] = timestamp;
+		sequence.lazySet((int) position & mask, position + 1); // publish
+		return true;
+	}
+
+	/**
+	 * Claims the oldest readable slot.
+	 * 
+	 * @return queue position of the claimed slot; -1 if the queue is empty
+	 */
+	private long claim() {
+		long position = dequeuePosition.get();
+		while (true) {
+			final long difference = sequence.get((int) position & mask) - (position + 1);
+			if (difference == 0) { // slot is readable
+				if (dequeuePosition.compareAndSet(position, position + 1)) {
+					return position;
+				}
+			} else if (difference < 0) { // empty
+				return -1;
+			} else {
+				position = dequeuePosition.get();
+			}
+		}
+	}
+
+	/**
+	 * Frees a claimed slot for writing by producers.
+	 */
+	private void release(long position) {
+		sequence.lazySet((int) position & mask, position + mask + 1);
+	}
+}
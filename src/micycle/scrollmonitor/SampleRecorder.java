@@ -0,0 +1,313 @@
+package micycle.scrollmonitor;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Append-only log of every datum pushed to the streams of a monitor, written
+ * into memory-mapped segment files.
+ * <p>
+ * A recording is a directory of segments (<code>segment-000000.bin</code>,
+ * <code>segment-000001.bin</code>...) and a sidecar, <code>streams.tsv</code>,
+ * mapping stream ids to names and types (one <code>id\tname\ttype</code> line
+ * per stream, the type being <code>float</code>, <code>double</code> or
+ * <code>long</code>, with backslash, tab and line breaks in names escaped as
+ * <code>\\</code>, <code>\t</code>, <code>\n</code> and <code>\r</code>). A
+ * stream re-registered with another type has a further line; the last line of
+ * an id holds. A segment is a fixed
+ * size file (big-endian) starting with a 16 byte header:
+ *
+ * <pre>
+ * int  magic ({@link #MAGIC})
+ * int  format version ({@link #VERSION})
+ * long epoch offset (ns): add to a timestamp to get nanoseconds since the epoch
+ * </pre>
+ *
+ * followed by 24 byte records:
+ *
+ * <pre>
+ * int  stream id (ids start at 1; 0 marks the end of the recorded data)
+ * int  type of the datum ({@link #FLOAT}, {@link #DOUBLE} or {@link #LONG})
+ * long timestamp (ns, {@link System#nanoTime()} of the recording JVM)
+ * long datum, as the raw bits of its type (a float's in the low 32 bits)
+ * </pre>
+ *
+ * Each datum is recorded in the type of the stream it was pushed to, so double
+ * and long data keeps its full precision.
+ *
+ * Recording a datum is a few stores into a mapped buffer (the stream id last,
+ * so that a record is complete once its id is visible); segments are created
+ * and mapped only when the current one is full. Since the mapped pages belong
+ * to the OS, data survives a crash of the JVM; only data not yet written back
+ * by the OS when the machine itself fails (at most the current segment, or
+ * since the last {@link #flush()}) can be lost.
+ * <p>
+ * Recording into a directory that already holds a recording continues it:
+ * stream ids are reused by name, and new segments are numbered after the
+ * existing ones.
+ * <p>
+ * Not thread-safe: the recorder should be written to by the thread that pushes
+ * to the monitor (the drawing thread if concurrent ingestion is enabled).
+ *
+ * @author Michael Carleton
+ *
+ */
+final class SampleRecorder {
+
+	static final int MAGIC = 0x534D524C; // "SMRL"
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 16;
+	static final int RECORD_BYTES = 24;
+	static final long DEFAULT_SEGMENT_SIZE = 64L << 20; // 64 MiB (~2.8M records)
+	/**
+	 * Types of recorded data.
+	 */
+	static final int FLOAT = 0, DOUBLE = 1, LONG = 2;
+	private static final String[] TYPE_NAMES = { "float", "double", "long" }; // in the sidecar
+	static final String NAMES_FILE = "streams.tsv";
+
+	private final Path directory;
+	private final long segmentSize;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private int nextId = 1;
+	private int[] types = new int[16]; // by stream id
+
+	private MappedByteBuffer segment;
+	private int position; // of the next record in the current segment
+	private int segmentIndex;
+	private boolean failed;
+
+	/**
+	 * @param directory   directory the recording is written into (created if
+	 *                    absent)
+	 * @param segmentSize size of each segment file (bytes); rounded down to a
+	 *                    whole number of records, and at most 2 GiB
+	 * @throws IOException if the directory or the first segment cannot be created
+	 */
+	SampleRecorder(Path directory, long segmentSize) throws IOException {
+		this.directory = directory;
+		final long records = (Math.min(segmentSize, Integer.MAX_VALUE) - HEADER_BYTES) / RECORD_BYTES;
+		this.segmentSize = HEADER_BYTES + Math.max(1, records) * RECORD_BYTES;
+		Files.createDirectories(directory);
+
+		final Path names = directory.resolve(NAMES_FILE);
+		if (Files.exists(names)) { // continue an existing recording
+			final List<String> lines = Files.readAllLines(names, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				final int id = parseId(line);
+				if (id > 0) {
+					ids.put(parseName(line), id);
+					setType(id, parseType(line));
+					nextId = Math.max(nextId, id + 1);
+				}
+			}
+		}
+		segmentIndex = 0;
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "segment-*.bin")) {
+			for (Path p : segments) {
+				segmentIndex = Math.max(segmentIndex, segmentIndex(p) + 1);
+			}
+		}
+		roll();
+	}
+
+	/**
+	 * Returns the id a stream is recorded under, assigning it a new id (recorded
+	 * in the sidecar, along with its type) if the name has not been recorded
+	 * before.
+	 *
+	 * @param name stream name
+	 * @param type type of the stream's data ({@link #FLOAT}, {@link #DOUBLE} or
+	 *             {@link #LONG}); the data recorded under the id is tagged with it
+	 * @return id (> 0)
+	 */
+	int register(String name, int type) {
+		Integer id = ids.get(name);
+		if (id == null || types[id] != type) { // new, or re-registered with another type
+			if (id == null) {
+				id = nextId++;
+				ids.put(name, id);
+			}
+			try {
+				Files.write(directory.resolve(NAMES_FILE),
+						(id + "\t" + escape(name) + "\t" + TYPE_NAMES[type] + "\n").getBytes(StandardCharsets.UTF_8),
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			} catch (IOException e) {
+				System.err.println("The data stream " + name + " could not be registered with the recording: " + e);
+			}
+		}
+		setType(id, type);
+		return id;
+	}
+
+	private void setType(int id, int type) {
+		if (id >= types.length) {
+			types = Arrays.copyOf(types, Math.max(id + 1, types.length * 2));
+		}
+		types[id] = type;
+	}
+
+	/**
+	 * Appends a datum, tagged with the type its stream was registered with.
+	 *
+	 * @param id        stream id
+	 * @param timestamp nanoseconds
+	 * @param bits      raw bits of the datum in its stream's type
+	 */
+	void record(int id, long timestamp, long bits) {
+		if (position + RECORD_BYTES > segmentSize && !next()) {
+			return;
+		}
+		final MappedByteBuffer b = segment;
+		b.putInt(position + 4, types[id]);
+		b.putLong(position + 8, timestamp);
+		b.putLong(position + 16, bits);
+		b.putInt(position, id); // last: marks the record as complete
+		position += RECORD_BYTES;
+	}
+
+	/**
+	 * Forces the current segment's data to storage (which is otherwise left to the
+	 * OS).
+	 */
+	void flush() {
+		if (segment != null) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Flushes and stops the recording; later records are ignored.
+	 */
+	void close() {
+		flush();
+		segment = null;
+		failed = true;
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Moves on to a new segment.
+	 *
+	 * @return false if recording has stopped
+	 */
+	private boolean next() {
+		if (failed) {
+			return false;
+		}
+		try {
+			roll();
+			return true;
+		} catch (IOException e) {
+			failed = true;
+			segment = null;
+			System.err.println("Recording to " + directory + " has stopped: " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Creates, maps and writes the header of the next segment file.
+	 */
+	private void roll() throws IOException {
+		final Path path = directory.resolve(String.format("segment-%06d.bin", segmentIndex++));
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // remains valid once closed
+		}
+		segment.order(ByteOrder.BIG_ENDIAN);
+		segment.putInt(0, MAGIC);
+		segment.putInt(4, VERSION);
+		segment.putLong(8, epochOffset());
+		position = HEADER_BYTES;
+	}
+
+	/**
+	 * @return offset (ns) to add to a {@link System#nanoTime()} timestamp of this
+	 *         process to get nanoseconds since the epoch
+	 */
+	static long epochOffset() {
+		return System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+	}
+
+	/**
+	 * @return index of a segment file, from its name; -1 if not a segment
+	 */
+	static int segmentIndex(Path segment) {
+		final String name = segment.getFileName().toString();
+		try {
+			return Integer.parseInt(name.substring("segment-".length(), name.length() - ".bin".length()));
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return stream id of a sidecar line; -1 if the line holds none
+	 */
+	static int parseId(String line) {
+		final int tab = line.indexOf('\t');
+		try {
+			return tab > 0 ? Integer.parseInt(line.substring(0, tab)) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return stream name of a sidecar line (that holds an id)
+	 */
+	static String parseName(String line) {
+		final int tab = line.indexOf('\t');
+		final int end = line.indexOf('\t', tab + 1); // names are escaped, so hold no tab
+		return unescape(line.substring(tab + 1, end < 0 ? line.length() : end));
+	}
+
+	/**
+	 * @return stream type of a sidecar line (that holds an id); {@link #FLOAT} if
+	 *         the line names none
+	 */
+	static int parseType(String line) {
+		final int tab = line.indexOf('\t', line.indexOf('\t') + 1);
+		if (tab >= 0) {
+			final String type = line.substring(tab + 1);
+			for (int t = 0; t < TYPE_NAMES.length; t++) {
+				if (TYPE_NAMES[t].equals(type)) {
+					return t;
+				}
+			}
+		}
+		return FLOAT;
+	}
+
+	static String escape(String name) {
+		return name.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	static String unescape(String name) {
+		final StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '\\' && i + 1 < name.length()) {
+				c = name.charAt(++i);
+				c = c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
@@ -3,16 +3,28 @@ package micycle.scrollmonitor;
 import static processing.core.PApplet.constrain;
 import static processing.core.PApplet.round;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 
+import javax.imageio.ImageIO;
+
+import micycle.scrollmonitor.RenderStats.Phase;
+
 import processing.core.PApplet;
 import processing.core.PConstants;
+import processing.core.PFont;
+import processing.core.PGraphics;
 import processing.core.PShape;
 import processing.core.PVector;
 import processing.event.KeyEvent;
+import processing.event.MouseEvent;
 
 /**
  * A ScrollMonitor plots realtime data from any number of data sources (referred
@@ -26,7 +38,7 @@ import processing.event.KeyEvent;
  * TODO: datastream defines how many datapoints are visible from each stream
  * (global) or per-stream?{@link #addDataStream(String, int)}
  *
- * TODO scroll wheel zoom x-axis; shift+scroll+mouseover zoom y-axis
+ * TODO shift+scroll+mouseover zoom y-axis
  * 
  * TODO option to scroll if data not pushed (per time, or per frame) by adding
  * empty data
@@ -39,26 +51,104 @@ public class ScrollMonitor extends ProcessingPane {
 	// TODO use pushStyle(), popStyle() where applicable
 	// TODO
 
-	private final LinkedHashMap<String, DataStream> streams; // most recent last (add order)
+	/**
+	 * Most recent last (add order). Copy-on-write, so that producer threads can
+	 * look up streams without locking when concurrent ingestion is enabled.
+	 */
+	private volatile LinkedHashMap<String, DataStream> streams;
 	private LinkedList<DataStream> drawOrder; // most recent first (draw back to front)
+	private DataStream[] drawOrderBuffer = new DataStream[0]; // drawOrder as an array (reused between frames)
+	private boolean drawOrderChanged = false;
 
 	private boolean pause = false;
 	private int pauseTime = 0; // used to pause BG scrolling
 
 	private int graphStrokeWeight = 3;
 
-	private int drawSmoothingLevel = 1;
+	private final Decimator decimator = new Decimator();
+	private final HitTester hitTester = new HitTester();
+	private boolean crosshair = false;
+
+	/**
+	 * Incremental rendering: graphs are kept in an off-screen layer that is shifted
+	 * as data scrolls in, so only the newly exposed columns are rasterised.
+	 */
+	private boolean incremental = false;
+	private GraphBackend backend = GraphBackend.SHAPE;
+	private final PixelRasterizer rasterizer = new PixelRasterizer();
+	private PGraphics graphLayer;
+	private boolean graphLayerDirty = true;
+	private long graphLayerSignature; // of everything but appended data
+	private long[] graphLayerPushCounts = new long[0]; // per stream, in draw order
+	private float graphLayerError; // sub-pixel offset of the layer's content from where it should be
 	private int averageSmoothingLevel = 0;
+	private Smoothing smoothingType = Smoothing.MOVING_AVERAGE;
 
-	private float yAxisMax = 200; // Y-axis maximum value (ceiling)
+	private double yAxisMax = 200; // Y-axis maximum value (ceiling)
 	// TODO y-axis visual min
-	private int dataPoints = 300; // or x axis TODO remove from datastream
+	private int dataPoints = 300; // history length of each datastream (raw datapoints)
+	/**
+	 * How many raw datapoints (time units) the x-axis spans; can differ from
+	 * dataPoints when zoomed, in which case streams are drawn from their history
+	 * pyramids.
+	 */
+	private int visibleSpan;
+	/**
+	 * Columnar storage holding the raw and smoothed data of every stream.
+	 */
+	private ColumnStore store;
+	private int historyTiers = 0; // aggregate tiers (10x, 100x...) above the raw data
+	private long coldRetention = 0; // evicted datapoints retained (compressed) per stream
+	/**
+	 * Window of time (nanoseconds) the x-axis spans when streams are viewed by
+	 * timestamp; 0 when the x-axis is indexed by datapoint.
+	 */
+	private long timeWindow = 0;
+	private long timeViewEnd; // timestamp at the right edge of the x-axis
 
 	private float xAxisPosition; // top (0) or bottom (1) of graph
 
 	private int bgSegmentsHorizontal = 4;
 	private int bgSegmentsVertical = 4;
 
+	/**
+	 * Background layers, re-rendered only when they change: the background fill and
+	 * horizontal guidelines; the Y-axis labels (drawn left of the monitor); and a
+	 * strip of vertical guidelines, which is translated as the x-axis scrolls.
+	 */
+	private final CachedLayer backgroundLayer = new CachedLayer();
+	private final CachedLayer yLabelLayer = new CachedLayer();
+	private final CachedLayer verticalGridLayer = new CachedLayer();
+	private long[] yLabels = new long[0]; // values the Y-axis label layer shows
+	private Label[] yLabelText = new Label[0]; // yLabels, formatted
+	private float yLabelTextSize; // parent's text size when the label layer was rendered
+	private PFont yLabelFont; // parent's font when the label layer was rendered
+	private int yLabelWidth, yLabelPad; // measured when the labels or text style change
+	private float verticalGridPeriod; // line spacing of the vertical guideline strip
+
+	/**
+	 * Cached label text (reformatted only when a value changes), and optional
+	 * pre-rendered digit glyphs for the x-axis labels.
+	 */
+	private int labelPrecision = 0;
+	private final Label mouseOverLabel = new Label(), mouseOverValueLabel = new Label();
+	private Label[] xLabels = new Label[0];
+	private GlyphAtlas glyphAtlas = null;
+
+	private BufferedImage pngImage; // reused by writePng()
+
+	/**
+	 * Name of the built-in datastream plotting the monitor's own frame time.
+	 * 
+	 * @see #setRenderStatsOverlay(boolean)
+	 */
+	public static final String RENDER_STATS_STREAM = "render time";
+	/**
+	 * Number of most recent frames render statistics cover.
+	 */
+	public static final int RENDER_STATS_WINDOW = 120;
+	private DataStream renderStatsStream = null; // render time overlay (null if not shown)
+
 	private int backgroundColour = -934570246; // default colour
 	private int labelColor = 0; // value label color
 	private int axesLabelColor = 0; // value label color
@@ -67,46 +157,265 @@ public class ScrollMonitor extends ProcessingPane {
 	private int timeStep = 1;
 
 	/**
-	 * The datastream, identified by name, that should be used to dynamically set
-	 * the Y-axis maximum.
+	 * The datastreams that should be used to dynamically set the Y-axis maximum.
+	 */
+	private final ArrayList<DataStream> yAxisDataStreams;
+	/**
+	 * Whether every datastream should be used to dynamically set the Y-axis
+	 * maximum.
+	 */
+	private boolean yAxisAllDataStreams = false;
+
+	/**
+	 * Concurrent ingestion queue settings (policy is null when disabled).
+	 */
+	private OverflowPolicy ingestionPolicy = null;
+	private int ingestionCapacity;
+	/**
+	 * Log of every datum pushed (null when not recording).
 	 */
-	private String yAxisDataStream = null;
+	private SampleRecorder recorder = null;
+	private Replay replay = null; // fed each frame (null if none)
+	private IngestionServer ingestionServer = null;
 
 	public ScrollMonitor(PApplet p, PVector position, PVector dimensions, int history, int yAxis) {
 		super(p, position, dimensions);
 		streams = new LinkedHashMap<>();
 		drawOrder = new LinkedList<>();
+		yAxisDataStreams = new ArrayList<>();
+		dataPoints = history;
+		store = new HeapColumnStore(history, 8);
+		visibleSpan = history;
+		yAxisMax = yAxis;
+		setXAxisPosition(0);
+	}
+
+	/**
+	 * Creates a headless monitor, which draws into an off-screen output buffer
+	 * rather than a running sketch: it needs no surface (so can run on a headless
+	 * machine) and does not listen to mouse or key events. Each call to
+	 * {@link #run()} draws a frame into the output; see also
+	 * {@link #renderTo(int[])} and {@link #writePng(Path)}.
+	 * 
+	 * @param output     graphics to draw into; must be created by a PApplet (with
+	 *                   createGraphics()), though the PApplet need not be running
+	 * @param position   coordinate of the upper-left corner of the graph within the
+	 *                   output (labels are drawn around the graph)
+	 * @param dimensions width and height of the graph
+	 * @param history    number of x-axis datapoints visible
+	 * @param yAxis      y-axis maximum/ceiling value
+	 * @see #createHeadless(int, int, int, int)
+	 */
+	public ScrollMonitor(PGraphics output, PVector position, PVector dimensions, int history, int yAxis) {
+		super(output, position, dimensions);
+		streams = new LinkedHashMap<>();
+		drawOrder = new LinkedList<>();
+		yAxisDataStreams = new ArrayList<>();
 		dataPoints = history;
+		store = new HeapColumnStore(history, 8);
+		visibleSpan = history;
 		yAxisMax = yAxis;
 		setXAxisPosition(0);
 	}
 
+	/**
+	 * Creates a headless monitor whose graph fills a new (Java2D) output buffer of
+	 * the given size, such as for generating sparkline images server-side.
+	 * 
+	 * @param width   width of the output (pixels)
+	 * @param height  height of the output (pixels)
+	 * @param history number of x-axis datapoints visible
+	 * @param yAxis   y-axis maximum/ceiling value
+	 * @return new headless monitor
+	 * @see #ScrollMonitor(PGraphics, PVector, PVector, int, int)
+	 */
+	public static ScrollMonitor createHeadless(int width, int height, int history, int yAxis) {
+		final PGraphics output = new PApplet().createGraphics(width, height);
+		return new ScrollMonitor(output, new PVector(0, 0), new PVector(width, height), history, yAxis);
+	}
+
+	/**
+	 * @return graphics this monitor draws into: the output buffer if headless,
+	 *         otherwise the parent sketch's
+	 */
+	public PGraphics getOutput() {
+		return out();
+	}
+
+	/**
+	 * Draws a frame of a headless monitor (as {@link #run()}) and copies its
+	 * pixels out.
+	 * 
+	 * @param argb destination for the output's pixels (ARGB, row-major); must hold
+	 *             at least as many pixels as the output
+	 */
+	public void renderTo(int[] argb) {
+		if (!isHeadless()) {
+			System.err.println("Only a headless ScrollMonitor can be rendered to an array.");
+			return;
+		}
+		run();
+		final PGraphics out = out();
+		out.loadPixels();
+		System.arraycopy(out.pixels, 0, argb, 0, out.pixels.length);
+	}
+
+	/**
+	 * Draws a frame of a headless monitor (as {@link #run()}) and writes it to a
+	 * PNG file. The image the pixels are encoded from is reused between calls.
+	 * 
+	 * @param path file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writePng(Path path) throws IOException {
+		if (!isHeadless()) {
+			System.err.println("Only a headless ScrollMonitor can be written to a file.");
+			return;
+		}
+		run();
+		final PGraphics out = out();
+		out.loadPixels();
+		final int w = out.pixelWidth, h = out.pixelHeight; // accounts for pixel density
+		if (pngImage == null || pngImage.getWidth() != w || pngImage.getHeight() != h) {
+			pngImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		}
+		final int[] pixels = ((DataBufferInt) pngImage.getRaster().getDataBuffer()).getData();
+		System.arraycopy(out.pixels, 0, pixels, 0, pixels.length);
+		ImageIO.write(pngImage, "png", path.toFile());
+	}
+
 	/**
 	 * Creates a new datastream within the monitor and assigns it a name. Use this
-	 * name as an identifier to refer to the stream in other methods.
+	 * name as an identifier to refer to the stream in other methods, or use the
+	 * returned handle, which refers to the stream directly (avoiding a lookup by
+	 * name on every call).
+	 * <p>
+	 * The stream holds float data. For data that needs more precision, see
+	 * {@link #addDoubleDataStream(String)} and {@link #addLongDataStream(String)}.
 	 * 
-	 * @param name       name/id reference
-	 * @param historyCap how many datapoints the stream will display
+	 * @param name name/id reference
+	 * @return handle to the new stream; null if a stream with the name is already
+	 *         present
 	 */
-	public void addDataStream(String name) {
-		if (!streams.containsKey(name)) { // enforce unique name
-			streams.put(name, new DataStream(name, dataPoints, dimensions.copy(), averageSmoothingLevel));
-			drawOrder.offerFirst(streams.get(name)); // add to front of queue
-			streams.get(name).setMaxValue(yAxisMax); // set draw max value
-		} else {
+	public StreamHandle addDataStream(String name) {
+		if (streams.containsKey(name)) { // enforce unique name
+			System.err.println("The data stream " + name + " is already present.");
+			return null;
+		}
+		return register(new FloatDataStream(name, store, dataPoints, dimensions.copy(), smoothingType,
+				averageSmoothingLevel));
+	}
+
+	/**
+	 * Creates a new datastream of double data within the monitor. Its data, labels
+	 * and extrema keep a double's precision (floats hold only 24 bits, so lose
+	 * the small changes of large values). Any type of data may be pushed to it.
+	 * <p>
+	 * Unlike float streams, a double stream's data is always held on the heap.
+	 * 
+	 * @param name name/id reference
+	 * @return handle to the new stream; null if a stream with the name is already
+	 *         present
+	 * @see #addDataStream(String)
+	 */
+	public StreamHandle addDoubleDataStream(String name) {
+		if (streams.containsKey(name)) {
+			System.err.println("The data stream " + name + " is already present.");
+			return null;
+		}
+		return register(new DoubleDataStream(name, dataPoints, dimensions.copy(), smoothingType,
+				averageSmoothingLevel));
+	}
+
+	/**
+	 * Creates a new datastream of long data (such as counters or nanosecond
+	 * timings) within the monitor. Its data is held exactly, and its value labels
+	 * show every digit. Long.MIN_VALUE is reserved to mark empty data.
+	 * <p>
+	 * Unlike float streams, a long stream's data is always held on the heap.
+	 * 
+	 * @param name name/id reference
+	 * @return handle to the new stream; null if a stream with the name is already
+	 *         present
+	 * @see #addDataStream(String)
+	 */
+	public StreamHandle addLongDataStream(String name) {
+		if (streams.containsKey(name)) {
 			System.err.println("The data stream " + name + " is already present.");
+			return null;
+		}
+		return register(new LongDataStream(name, dataPoints, dimensions.copy(), smoothingType,
+				averageSmoothingLevel));
+	}
+
+	/**
+	 * Applies the monitor's settings to a new datastream and adds it.
+	 */
+	private StreamHandle register(DataStream d) {
+		final String name = d.name;
+		d.setMaxValue(yAxisMax); // set draw max value
+		d.setTiers(historyTiers);
+		d.setView(visibleSpan);
+		if (coldRetention > 0) {
+			d.setColdRetention(coldRetention);
+		}
+		if (timeWindow > 0) {
+			d.enableTimestamps();
+		}
+		if (ingestionPolicy != null) {
+			d.queue = new SampleQueue(ingestionCapacity, ingestionPolicy);
+		}
+		if (recorder != null) {
+			d.recorderId = recorder.register(name, d.getType());
+			d.recorder = recorder;
+		}
+		final LinkedHashMap<String, DataStream> copy = new LinkedHashMap<>(streams);
+		copy.put(name, d);
+		streams = copy;
+		drawOrder.offerFirst(d); // add to front of queue
+		drawOrderChanged = true;
+		return new StreamHandle(d);
+	}
+
+	/**
+	 * Returns a handle to a given datastream, identified by its name.
+	 * 
+	 * @param name
+	 * @return handle to the stream; null if the stream is not present
+	 * @see #addDataStream(String)
+	 */
+	public StreamHandle getStreamHandle(String name) {
+		final DataStream d = streams.get(name);
+		if (d != null) {
+			return new StreamHandle(d);
+		} else {
+			System.err.println("The data stream " + name + " is not present.");
+			return null;
 		}
 	}
 
 	/**
-	 * Removes a given datastream, identified by its name, from the monitor.
+	 * Removes a given datastream, identified by its name, from the monitor. If
+	 * concurrent ingestion is enabled, the stream's queue is closed: data that
+	 * producers push to it from then on is discarded.
 	 * 
 	 * @param name
 	 */
 	public void removeDataStream(String name) {
-		if (streams.containsKey(name)) {
-			drawOrder.remove(streams.get(name));
-			streams.remove(name);
+		final DataStream d = streams.get(name);
+		if (d != null) {
+			d.removed = true; // invalidates handles
+			final SampleQueue q = d.queue;
+			if (q != null) {
+				q.close(d); // producers mid-offer finish (or give up), rather than fill an orphaned queue
+			}
+			drawOrder.remove(d);
+			drawOrderChanged = true;
+			yAxisDataStreams.remove(d);
+			final LinkedHashMap<String, DataStream> copy = new LinkedHashMap<>(streams);
+			copy.remove(name);
+			streams = copy;
+			d.release(); // its columns can be reused by streams added later
 		} else {
 			System.err.println("The data stream " + name + " is not present and cannot be removed.");
 		}
@@ -114,15 +423,116 @@ public class ScrollMonitor extends ProcessingPane {
 
 	/**
 	 * Pushes a datum (single data point) to a given datastream, identified by its
-	 * name.
+	 * name. May be called from any thread when
+	 * {@link #enableConcurrentIngestion(int, OverflowPolicy) concurrent ingestion}
+	 * is enabled.
 	 * 
 	 * @param dataStreamName
 	 * @param datum          data
 	 * @see #push(String, float[])
 	 */
 	public void push(String dataStreamName, float datum) {
-		if (streams.containsKey(dataStreamName)) {
-			streams.get(dataStreamName).push(datum);
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offer(datum);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes a timestamped datum to a given datastream, identified by its name.
+	 * When the monitor has a {@link #setTimeWindow(long) time window}, datapoints
+	 * are positioned on the x-axis by their timestamp, so streams pushed at
+	 * different or irregular rates line up on the same axis. Timestamps should be
+	 * non-decreasing within a stream (such as values from
+	 * {@link System#nanoTime()}, which also stamps data pushed without a
+	 * timestamp); a timestamp earlier than the stream's newest is clamped to it.
+	 * <p>
+	 * (Named apart from {@link #push(String, float...)} so that a push of two
+	 * numbers, such as <code>push("a", 1, 2)</code>, still pushes two data.)
+	 * 
+	 * @param dataStreamName
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see #setTimeWindow(long)
+	 */
+	public void pushAt(String dataStreamName, long timestampNanos, float datum) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offer(timestampNanos, datum);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes a double datum to a given datastream, identified by its name. Data of
+	 * any type may be pushed to any stream; it is converted to the stream's type
+	 * (so a float stream rounds it to a float).
+	 * 
+	 * @param dataStreamName
+	 * @param datum          data
+	 * @see #addDoubleDataStream(String)
+	 */
+	public void push(String dataStreamName, double datum) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offerDouble(datum);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes a long datum to a given datastream, identified by its name. Note an
+	 * int argument (<code>push("a", 5)</code>) resolves to this method.
+	 * 
+	 * @param dataStreamName
+	 * @param datum          data
+	 * @see #push(String, double)
+	 * @see #addLongDataStream(String)
+	 */
+	public void push(String dataStreamName, long datum) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offerLong(datum);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes a timestamped double datum to a given datastream.
+	 * 
+	 * @param dataStreamName
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see #pushAt(String, long, float)
+	 * @see #push(String, double)
+	 */
+	public void pushAt(String dataStreamName, long timestampNanos, double datum) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offerDouble(timestampNanos, datum);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes a timestamped long datum to a given datastream.
+	 * 
+	 * @param dataStreamName
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see #pushAt(String, long, float)
+	 * @see #push(String, long)
+	 */
+	public void pushAt(String dataStreamName, long timestampNanos, long datum) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offerLong(timestampNanos, datum);
 		} else {
 			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
 		}
@@ -137,159 +547,919 @@ public class ScrollMonitor extends ProcessingPane {
 	 * @see #push(String, float)
 	 */
 	public void push(String dataStreamName, float... data) {
-		if (streams.containsKey(dataStreamName)) {
-			for (float datum : data) {
-				streams.get(dataStreamName).push(datum);
+		push(dataStreamName, data, 0, data.length);
+	}
+
+	/**
+	 * Pushes a range of an array of data points to a given datastream, identified
+	 * by its name. The batch is copied into the stream's history in bulk and its
+	 * smoothing is computed in a single pass, so this is much cheaper than pushing
+	 * each datum individually. If the batch is longer than the history, only its
+	 * tail is kept. If the stream is timestamped, the batch is stamped evenly over
+	 * the time since the stream's previous datum, up to now.
+	 * 
+	 * @param dataStreamName
+	 * @param data           source of the data points
+	 * @param offset         index of the first data point in data
+	 * @param length         number of data points to push
+	 * @throws IndexOutOfBoundsException if the range is not within data (nothing
+	 *                                   is pushed)
+	 * @see #push(String, FloatBuffer)
+	 */
+	public void push(String dataStreamName, float[] data, int offset, int length) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offer(data, offset, length);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Pushes the remaining data points of a buffer (from its position to its limit)
+	 * to a given datastream, identified by its name. The buffer's position is
+	 * advanced to its limit.
+	 * 
+	 * @param dataStreamName
+	 * @param data           source of the data points
+	 * @see #push(String, float[], int, int)
+	 */
+	public void push(String dataStreamName, FloatBuffer data) {
+		final DataStream d = streams.get(dataStreamName);
+		if (d != null) {
+			d.offer(data);
+		} else {
+			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+		}
+	}
+
+	/**
+	 * Enables concurrent ingestion, allowing data to be pushed to this monitor from
+	 * any thread (such as network handlers or executors). Each datastream gets a
+	 * bounded lock-free queue that producer threads push into; the queues are
+	 * drained into the datastreams by the animation thread at the start of
+	 * {@link #run()}.
+	 * <p>
+	 * Enable this before producer threads start pushing. Datastreams should still
+	 * be added and removed from the animation thread.
+	 * 
+	 * @param capacity how many data each datastream's queue can hold between
+	 *                 frames
+	 * @param policy   what to do when a producer pushes to a full queue
+	 * @see #disableConcurrentIngestion()
+	 * @see #getDroppedSampleCount(String)
+	 */
+	public void enableConcurrentIngestion(int capacity, OverflowPolicy policy) {
+		if (capacity < 1) {
+			System.err.println("Ingestion queue capacity should be at least 1.");
+			return;
+		}
+		ingestionCapacity = capacity;
+		ingestionPolicy = policy;
+		for (DataStream d : drawOrder) {
+			final SampleQueue q = d.queue;
+			d.queue = new SampleQueue(capacity, policy); // producers that find q closed move to the new queue
+			if (q != null) {
+				q.close(d);
+			}
+		}
+	}
+
+	/**
+	 * Disables concurrent ingestion: any queued data is pushed to its datastream
+	 * and subsequent pushes write to the datastreams directly. Data that producer
+	 * threads are pushing at the moment of disabling is not lost (this waits for
+	 * them), but producers should be stopped first, since pushing directly is
+	 * only safe from the animation thread.
+	 * 
+	 * @see #enableConcurrentIngestion(int, OverflowPolicy)
+	 */
+	public void disableConcurrentIngestion() {
+		ingestionPolicy = null;
+		for (DataStream d : drawOrder) {
+			final SampleQueue q = d.queue;
+			d.queue = null;
+			if (q != null) {
+				q.close(d); // also drains data offered while d.queue was being nulled
+			}
+		}
+	}
+
+	/**
+	 * Starts recording every datum pushed to the monitor's datastreams (including
+	 * streams added later) into an append-only log in the given directory, as
+	 * memory-mapped segment files of 64 MiB.
+	 * 
+	 * @param directory directory to record into (created if absent); if it holds
+	 *                  a recording already, the recording is continued
+	 * @throws IOException if the recording cannot be created
+	 * @see #startRecording(Path, long)
+	 */
+	public void startRecording(Path directory) throws IOException {
+		startRecording(directory, SampleRecorder.DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Starts recording every datum pushed to the monitor's datastreams (including
+	 * streams added later) into an append-only log in the given directory. Each
+	 * record holds the stream's id, the datum's timestamp (its stream's timestamp
+	 * if it has one, otherwise when it was pushed) and the datum, in the type of
+	 * its stream (so double and long data keeps its precision); the log is
+	 * written into memory-mapped segment files, a new segment being started when
+	 * the current one is full. Stream names are recorded in a sidecar file. Data
+	 * is recorded as it is pushed to a stream (so when drained from its queue, if
+	 * concurrent ingestion is enabled), on the thread pushing it.
+	 * <p>
+	 * Any recording in progress is stopped first.
+	 * 
+	 * @param directory   directory to record into (created if absent); if it
+	 *                    holds a recording already, the recording is continued
+	 * @param segmentSize size of each segment file (bytes)
+	 * @throws IOException if the recording cannot be created
+	 * @see #stopRecording()
+	 */
+	public void startRecording(Path directory, long segmentSize) throws IOException {
+		stopRecording();
+		recorder = new SampleRecorder(directory, segmentSize);
+		for (DataStream d : drawOrder) {
+			d.recorderId = recorder.register(d.name, d.getType());
+			d.recorder = recorder;
+		}
+	}
+
+	/**
+	 * Stops recording (if recording), forcing the recorded data to storage.
+	 * 
+	 * @see #startRecording(Path, long)
+	 */
+	public void stopRecording() {
+		if (recorder == null) {
+			return;
+		}
+		drainIngestionQueues(); // record what has been pushed so far
+		for (DataStream d : drawOrder) {
+			d.recorder = null;
+		}
+		recorder.close();
+		recorder = null;
+	}
+
+	/**
+	 * @return whether pushed data is being recorded
+	 * @see #startRecording(Path, long)
+	 */
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	/**
+	 * Plays a recording back into the monitor: each frame, before drawing, the
+	 * recorded data due by the replay's playback position is pushed to the
+	 * datastream of the same name (streams in the recording that the monitor
+	 * lacks are added, of the type they were recorded from). Control playback (speed, seeking, pausing) through the
+	 * replay. Any replay in progress is stopped first.
+	 * 
+	 * @param replay recording opened with {@link Replay#open(Path)}
+	 * @see #stopReplay()
+	 */
+	public void startReplay(Replay replay) {
+		stopReplay();
+		final String[] names = replay.names();
+		final int[] types = replay.types();
+		final DataStream[] targets = new DataStream[names.length];
+		for (int id = 0; id < names.length; id++) {
+			if (names[id] != null) {
+				targets[id] = getOrAddDataStream(names[id], types[id]);
+			}
+		}
+		replay.attach(targets);
+		this.replay = replay;
+	}
+
+	/**
+	 * Detaches the replay (if any) from the monitor; its data stays in the
+	 * monitor's streams.
+	 * 
+	 * @see #startReplay(Replay)
+	 */
+	public void stopReplay() {
+		if (replay != null) {
+			replay.attach(new DataStream[0]);
+			replay = null;
+		}
+	}
+
+	/**
+	 * @return the replay being played into the monitor (null if none)
+	 */
+	public Replay getReplay() {
+		return replay;
+	}
+
+	/**
+	 * Starts a server that listens on a loopback port (TCP and UDP) for data from
+	 * other processes, sent as lines of <code>name:value</code> or
+	 * <code>name:value|timestamp</code> (see {@link IngestionServer}). Data is
+	 * pushed to the named datastream (created the first time it is named) at the
+	 * start of each frame. Any server already running is stopped first.
+	 * 
+	 * @param port port to listen on; 0 for any free port (see
+	 *             {@link IngestionServer#getPort()})
+	 * @return the server
+	 * @throws IOException if the port cannot be bound
+	 * @see #stopIngestionServer()
+	 */
+	public IngestionServer startIngestionServer(int port) throws IOException {
+		stopIngestionServer();
+		ingestionServer = new IngestionServer(port);
+		return ingestionServer;
+	}
+
+	/**
+	 * Stops the ingestion server (if running), pushing any data it has received.
+	 * 
+	 * @see #startIngestionServer(int)
+	 */
+	public void stopIngestionServer() {
+		if (ingestionServer != null) {
+			ingestionServer.close();
+			ingestionServer.drainTo(this);
+			ingestionServer = null;
+		}
+	}
+
+	/**
+	 * @return the datastream with the given name, added (as a float stream) if not
+	 *         present
+	 */
+	DataStream getOrAddDataStream(String name) {
+		return getOrAddDataStream(name, SampleRecorder.FLOAT);
+	}
+
+	/**
+	 * @param type type of the stream to add if not present
+	 *             ({@link SampleRecorder#FLOAT}, {@link SampleRecorder#DOUBLE} or
+	 *             {@link SampleRecorder#LONG})
+	 * @return the datastream with the given name, added if not present
+	 */
+	DataStream getOrAddDataStream(String name, int type) {
+		DataStream d = streams.get(name);
+		if (d == null) {
+			switch (type) {
+				case SampleRecorder.DOUBLE :
+					addDoubleDataStream(name);
+					break;
+				case SampleRecorder.LONG :
+					addLongDataStream(name);
+					break;
+				default :
+					addDataStream(name);
+					break;
+			}
+			d = streams.get(name);
+		}
+		return d;
+	}
+
+	/**
+	 * Returns how many data pushed to a given datastream have been discarded
+	 * because its ingestion queue was full (when concurrent ingestion is enabled).
+	 * 
+	 * @param dataStream
+	 * @return number of data discarded
+	 */
+	public long getDroppedSampleCount(String dataStream) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			final SampleQueue q = d.queue;
+			return q == null ? 0 : q.getDroppedCount();
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns how many data pushed to this monitor have been discarded because an
+	 * ingestion queue was full (when concurrent ingestion is enabled).
+	 * 
+	 * @return number of data discarded, across all datastreams
+	 */
+	public long getDroppedSampleCount() {
+		long dropped = 0;
+		for (DataStream d : streams.values()) {
+			final SampleQueue q = d.queue;
+			dropped += q == null ? 0 : q.getDroppedCount();
+		}
+		return dropped;
+	}
+
+	/**
+	 * Sets the level of visual smoothing a stream has using a equal-weighted moving
+	 * average of the last 'smoothing' terms. This method is in contrast to
+	 * {@link #setDrawSmoothing(int)}, which skips drawing every point; this method
+	 * does not affect how points are drawn visually, but affects point data.
+	 * 
+	 * @param dataStreamName
+	 * @param smoothing      default = 0 == no smoothing; must be >=1
+	 */
+	public void setStreamDataSmoothing(String dataStream, int smoothing) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.setSmoothing(smoothing);
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+		}
+	}
+
+	/**
+	 * Sets the smoothing filter and its level for a stream.
+	 * 
+	 * @param dataStream
+	 * @param type       filter type (moving average, exponential or median)
+	 * @param smoothing  default = 0 == no smoothing
+	 * @see #setStreamDataSmoothing(String, int)
+	 */
+	public void setStreamDataSmoothing(String dataStream, Smoothing type, int smoothing) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.setSmoothing(type, smoothing);
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+		}
+	}
+
+	/**
+	 * Sets the length of a moving average window. Use this to smooth noisy data.
+	 * 
+	 * @param smoothing >=0. Default is 0 (no smoothing). Higher values
+	 * @see #setStreamDataSmoothing(String, int)
+	 * @see #setDataSmoothing(Smoothing, int)
+	 */
+	public void setDataSmoothing(int smoothing) {
+		setDataSmoothing(smoothingType, smoothing);
+	}
+
+	/**
+	 * Sets the smoothing filter, and the length of its window, for all streams.
+	 * 
+	 * @param type      filter type (moving average, exponential or median)
+	 * @param smoothing >=0. Default is 0 (no smoothing).
+	 * @see #setStreamDataSmoothing(String, Smoothing, int)
+	 */
+	public void setDataSmoothing(Smoothing type, int smoothing) {
+		smoothingType = type;
+		averageSmoothingLevel = constrain(smoothing, 0, dataPoints);
+		streams.values().forEach(dataStream -> dataStream.setSmoothing(smoothingType, averageSmoothingLevel));
+	}
+
+	/**
+	 * Sets the max/ceiling Y axis display value for the monitor. Datapoints with
+	 * values greater than this will display but will be visually cut off.
+	 * 
+	 * @param value
+	 * @see #setDynamicYAxis(String)
+	 */
+	public void setMaxYAxisValue(float value) {
+		setMaxYAxisValue((double) value);
+	}
+
+	/**
+	 * Sets the max/ceiling Y axis display value for the monitor, in double
+	 * precision (for double and long datastreams of large values).
+	 * 
+	 * @param value
+	 * @see #setMaxYAxisValue(float)
+	 */
+	public void setMaxYAxisValue(double value) {
+		yAxisMax = value;
+		for (DataStream d : drawOrderBuffer()) {
+			d.setMaxValue(yAxisMax);
+		}
+//		yAxisDataStream = null; // disable dynamic y-axis
+	}
+
+	/**
+	 * Sets the Y axis to dynamically scale its ceiling value based on the maximum
+	 * value that is currently present in a given datastream. Rather than a fixed
+	 * maximum Y axis value.
+	 * 
+	 * @param dataStream datastream name; or null to disable dynamic scaling
+	 * @see #setMaxYAxisValue(float)
+	 * @see #setDynamicYAxis(String, String...)
+	 */
+	public void setDynamicYAxis(String dataStream) {
+		if (dataStream == null) {
+			yAxisDataStreams.clear();
+			yAxisAllDataStreams = false;
+		} else {
+			setDynamicYAxis(dataStream, new String[0]);
+		}
+	}
+
+	/**
+	 * Sets the Y axis to dynamically scale its ceiling value based on the maximum
+	 * value that is currently present across several datastreams.
+	 * 
+	 * @param dataStream  datastream name
+	 * @param dataStreams further datastream names
+	 * @see #setDynamicYAxis()
+	 */
+	public void setDynamicYAxis(String dataStream, String... dataStreams) {
+		if (!streams.containsKey(dataStream)) {
+			System.err.println("The data stream " + dataStream + " is not present.");
+			return;
+		}
+		for (String name : dataStreams) {
+			if (!streams.containsKey(name)) {
+				System.err.println("The data stream " + name + " is not present.");
+				return;
+			}
+		}
+		yAxisAllDataStreams = false;
+		yAxisDataStreams.clear();
+		yAxisDataStreams.add(streams.get(dataStream));
+		for (String name : dataStreams) {
+			if (!yAxisDataStreams.contains(streams.get(name))) {
+				yAxisDataStreams.add(streams.get(name));
+			}
+		}
+	}
+
+	/**
+	 * Sets the Y axis to dynamically scale its ceiling value based on the maximum
+	 * value that is currently present across all datastreams (including those
+	 * added later).
+	 * 
+	 * @see #setDynamicYAxis(String)
+	 */
+	public void setDynamicYAxis() {
+		yAxisDataStreams.clear();
+		yAxisAllDataStreams = true;
+	}
+
+	/**
+	 * Returns the maximum value currently held by a given datastream. This is
+	 * maintained as data is pushed, so is cheap to call.
+	 * 
+	 * @param dataStream
+	 * @return maximum value; NaN if the stream is not present
+	 */
+	public float getStreamMaximum(String dataStream) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			return (float) d.getMaxLiveValue();
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+			return Float.NaN;
+		}
+	}
+
+	/**
+	 * Returns the minimum value currently held by a given datastream. This is
+	 * maintained as data is pushed, so is cheap to call.
+	 * 
+	 * @param dataStream
+	 * @return minimum value; NaN if the stream is not present
+	 */
+	public float getStreamMinimum(String dataStream) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			return (float) d.getMinLiveValue();
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+			return Float.NaN;
+		}
+	}
+
+	/**
+	 * Sets the fill colour of a graph for a given data stream.
+	 * 
+	 * @param dataStream
+	 * @param color      ARGB colour represented by an integer; use Processing's
+	 *                   color() method to generate values
+	 */
+	public void setStreamFillColour(String dataStream, int color) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.fillColour = color;
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+		}
+	}
+
+	/**
+	 * Sets the stroke (outline) colour for all graphs.
+	 * 
+	 * @param color ARGB colour represented by an integer; use Processing's color()
+	 *              method to generate values
+	 */
+	public void setStrokeColour(int color) {
+		streams.values().forEach(dataStream -> dataStream.strokeColour = color);
+	}
+
+	/**
+	 * Sets the stroke (outline) colour of a graph for a given data stream.
+	 * 
+	 * @param dataStream
+	 * @param color      ARGB colour represented by an integer; use Processing's
+	 *                   color() method to generate values
+	 */
+	public void setStreamStrokeColour(String dataStream, int color) {
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.strokeColour = color;
+		} else {
+			System.err.println("The data stream " + dataStream + " is not present.");
+		}
+	}
+
+	/**
+	 * Sets the stroke (outline) weight (thickness) for all datastream graphs.
+	 * 
+	 * @param weight outline thickness; >= 0
+	 */
+	public void setStrokeWeight(int weight) {
+		graphStrokeWeight = PApplet.max(0, weight);
+	}
+
+	public void setValueLabelColor(int color) {
+		labelColor = color;
+	}
+
+	public void setAxesLabelColor(int color) {
+		axesLabelColor = color;
+		yLabelLayer.invalidate();
+	}
+
+	/**
+	 * Sets how many decimal places stream values are labelled with (on the right of
+	 * the monitor, and on mouse-over). Labels are formatted without allocating,
+	 * and only when their value changes.
+	 * 
+	 * @param precision decimal places, 0...9; default = 0
+	 */
+	public void setLabelPrecision(int precision) {
+		labelPrecision = constrain(precision, 0, NumberFormatter.MAX_PRECISION);
+	}
+
+	/**
+	 * Sets whether the x-axis labels are drawn from pre-rendered digit glyphs
+	 * (blitted as images) rather than laid out as text each frame. The glyphs are
+	 * rendered with the sketch's current font and text size, and re-rendered if
+	 * either (or the axes label colour) changes. Default = false.
+	 * 
+	 * @param enabled
+	 */
+	public void setLabelGlyphAtlas(boolean enabled) {
+		glyphAtlas = enabled ? new GlyphAtlas() : null;
+	}
+
+	/**
+	 * Sets the monitor's background colour. Supports opacity.
+	 * 
+	 * @param colour ARGB colour represented by an integer; use Processing's color()
+	 *               method to generate values
+	 */
+	public void setBackgroundColour(int colour) {
+		backgroundColour = colour;
+		backgroundLayer.invalidate();
+	}
+
+	/**
+	 * Sets the draw smoothing level. This level determines how many datapoints the
+	 * ScrollMonitor should skip when drawing vertices in the graph for each data
+	 * stream. A value of 1 means every data point is drawn (default value); a value
+	 * of 2 means every other data point is drawn; a value of 3 means every third
+	 * data point is drawn, and so on...
+	 * 
+	 * <p>
+	 * Higher values result in a smoother line but may introduce visual stuttering
+	 * as the graph scrolls. This value does not affect the underlying data, only
+	 * how each graph is drawn.
+	 * 
+	 * <p>
+	 * Draw smoothing only applies without decimation, so setting a level greater
+	 * than 1 also sets the decimation mode to {@link Decimation#NONE}.
+	 * 
+	 * @param level A value of 1 (default, no smoothing) or 2 is recommended.
+	 * @see #setDecimation(Decimation)
+	 */
+	public void setDrawSmoothing(int smoothingLevel) {
+		if (smoothingLevel < 1) {
+			System.err.println("Smoothing level should be at least 1 (when set to 1, every datapoint is drawn).");
+		} else {
+			decimator.step = smoothingLevel;
+			if (smoothingLevel > 1) {
+				decimator.mode = Decimation.NONE;
+			}
+		}
+	}
+
+	/**
+	 * Sets how each datastream's data is reduced to the vertices of its graph. By
+	 * default ({@link Decimation#M4}) each pixel column is reduced to at most 4
+	 * vertices, so the cost of drawing a graph is bounded by the width of the
+	 * monitor rather than the length of its history.
+	 * 
+	 * @param decimation decimation mode
+	 * @see #setDrawSmoothing(int)
+	 */
+	public void setDecimation(Decimation decimation) {
+		decimator.mode = decimation;
+	}
+
+	/**
+	 * Sets whether a crosshair is drawn when the mouse is over the monitor. The
+	 * crosshair is a vertical line at the mouse, labelled with the value of every
+	 * visible datastream at that point.
+	 * 
+	 * @param crosshair
+	 */
+	public void setCrosshair(boolean crosshair) {
+		this.crosshair = crosshair;
+	}
+
+	/**
+	 * Sets how graphs are rasterised: as Processing shapes (anti-aliased; the
+	 * default), or written directly into the canvas's pixels as a fill run and a
+	 * stroke run per pixel column, which is much faster in JAVA2D mode, especially
+	 * with many overlaid streams. The raster backend draws every frame in full, so
+	 * takes precedence over {@link #setIncrementalRendering(boolean) incremental
+	 * rendering}.
+	 * 
+	 * @param backend
+	 */
+	public void setGraphBackend(GraphBackend backend) {
+		this.backend = backend;
+		graphLayerDirty = true;
+	}
+
+	/**
+	 * Sets whether graphs are rendered incrementally. When enabled, the graphs are
+	 * kept in an off-screen buffer between frames; when every stream has scrolled
+	 * by the same amount since the last frame (such as when each is pushed one
+	 * datum per frame), the buffer is shifted with a pixel copy and only the newly
+	 * exposed columns are drawn, rather than every graph being rasterised in full.
+	 * The buffer is redrawn in full when the monitor is resized, rescaled or
+	 * restyled, when a view changes or is paused, and whenever streams scroll by
+	 * different amounts. Scrolling is pixel-aligned, so graphs can be up to half a
+	 * pixel from their exact position between full redraws. Default = false.
+	 * 
+	 * @param incremental
+	 */
+	public void setIncrementalRendering(boolean incremental) {
+		this.incremental = incremental;
+		graphLayerDirty = true;
+		for (DataStream d : streams.values()) {
+			d.geometry.invalidate(); // retained shapes belong to the canvas or the layer
+		}
+	}
+
+	/**
+	 * Enables or disables frame timing instrumentation. When enabled, the time
+	 * spent in each phase of every frame (update, y-axis scan, background,
+	 * geometry, hit-test, labels and compositing) is recorded, and is available
+	 * through {@link #getRenderStats()}. Disabling instrumentation discards the
+	 * timings (and removes the {@link #setRenderStatsOverlay(boolean) overlay}
+	 * stream). Default = false.
+	 * 
+	 * @param enabled
+	 */
+	public void setRenderStats(boolean enabled) {
+		if (enabled && renderStats == null) {
+			renderStats = new RenderStats(RENDER_STATS_WINDOW);
+		} else if (!enabled && renderStats != null) {
+			setRenderStatsOverlay(false);
+			renderStats = null;
+		}
+	}
+
+	/**
+	 * @return rolling frame timings of this monitor, covering its most recent
+	 *         {@value #RENDER_STATS_WINDOW} frames; null if instrumentation is not
+	 *         {@link #setRenderStats(boolean) enabled}
+	 */
+	public RenderStats getRenderStats() {
+		return renderStats;
+	}
+
+	/**
+	 * Sets whether the monitor plots its own frame time (milliseconds) as a
+	 * built-in datastream, named {@value #RENDER_STATS_STREAM}. The stream is an
+	 * ordinary datastream (so can be restyled by name, or removed), pushed once per
+	 * frame. Enabling the overlay enables {@link #setRenderStats(boolean)
+	 * instrumentation}.
+	 * 
+	 * @param overlay
+	 */
+	public void setRenderStatsOverlay(boolean overlay) {
+		if (overlay && (renderStatsStream == null || renderStatsStream.removed)) {
+			setRenderStats(true);
+			if (streams.containsKey(RENDER_STATS_STREAM)) {
+				System.err.println("The data stream " + RENDER_STATS_STREAM + " is already present.");
+				return;
 			}
-		} else {
-			System.err.println("The data stream " + dataStreamName + " is not present and cannot be pushed to.");
+			addDataStream(RENDER_STATS_STREAM);
+			renderStatsStream = streams.get(RENDER_STATS_STREAM);
+			renderStatsStream.dataUnit = "ms";
+		} else if (!overlay && renderStatsStream != null) {
+			if (!renderStatsStream.removed) {
+				removeDataStream(RENDER_STATS_STREAM);
+			}
+			renderStatsStream = null;
 		}
 	}
 
 	/**
-	 * Sets the level of visual smoothing a stream has using a equal-weighted moving
-	 * average of the last 'smoothing' terms. This method is in contrast to
-	 * {@link #setDrawSmoothing(int)}, which skips drawing every point; this method
-	 * does not affect how points are drawn visually, but affects point data.
+	 * Sets whether the history of the monitor's datastreams (their raw and
+	 * smoothed data) is stored off the heap, in direct memory, rather than on the
+	 * heap (the default). Off-heap storage keeps long histories (such as hundreds
+	 * of streams of a million datapoints) from bloating the heap and lengthening
+	 * garbage collection; the memory of removed streams is released immediately.
+	 * Existing streams are moved to the new storage.
 	 * 
-	 * @param dataStreamName
-	 * @param smoothing      default = 0 == no smoothing; must be >=1
+	 * @param offHeap
+	 * @see #setOffHeapStorage(Path)
 	 */
-	public void setStreamDataSmoothing(String dataStream, int smoothing) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).setSmoothing(smoothing);
-		} else {
-			System.err.println("The data stream " + dataStream + " is not present.");
+	public void setOffHeapStorage(boolean offHeap) {
+		if (offHeap && !(store instanceof DirectColumnStore && !((DirectColumnStore) store).isMapped())) {
+			setStore(new DirectColumnStore(dataPoints));
+		} else if (!offHeap && !(store instanceof HeapColumnStore)) {
+			setStore(new HeapColumnStore(dataPoints, Math.max(8, streams.size() * 2)));
 		}
 	}
 
 	/**
-	 * Sets the length of a moving average window. Use this to smooth noisy data.
+	 * Stores the history of the monitor's datastreams off the heap in a
+	 * memory-mapped scratch file, which the OS can page out to disk (so histories
+	 * may exceed the memory available). The file is deleted when storage is next
+	 * changed (or when the JVM exits). Existing streams are moved to the new
+	 * storage.
 	 * 
-	 * @param smoothing >=0. Default is 0 (no smoothing). Higher values
-	 * @see #setStreamDataSmoothing(String, int)
+	 * @param file scratch file (created, or overwritten if it exists)
+	 * @throws IOException if the file cannot be created
+	 * @see #setOffHeapStorage(boolean)
 	 */
-	public void setDataSmoothing(int smoothing) {
-		averageSmoothingLevel = constrain(smoothing, 0, dataPoints);
-		streams.values().forEach(dataStream -> dataStream.setSmoothing(averageSmoothingLevel));
+	public void setOffHeapStorage(Path file) throws IOException {
+		setStore(new DirectColumnStore(dataPoints, file));
 	}
 
 	/**
-	 * Sets the max/ceiling Y axis display value for the monitor. Datapoints with
-	 * values greater than this will display but will be visually cut off.
-	 * 
-	 * @param value
-	 * @see #setDynamicMaximum(DataStream)
+	 * Moves every stream's data into a new store, closing the current one.
 	 */
-	public void setMaxYAxisValue(float value) {
-		yAxisMax = value;
-		streams.values().forEach(stream -> stream.setMaxValue(yAxisMax));
-//		yAxisDataStream = null; // disable dynamic y-axis
+	private void setStore(ColumnStore newStore) {
+		for (DataStream d : streams.values()) {
+			d.moveTo(newStore);
+		}
+		store.close();
+		store = newStore;
 	}
 
 	/**
-	 * Sets the Y axis to dynamically scale its ceiling value based on the maximum
-	 * value that is currently present in a given datastream. Rather than a fixed
-	 * maximum Y axis value.
+	 * Sets how many raw datapoints (x-axis units) are visible. Spans longer than
+	 * the history of the monitor are drawn from each datastream's history pyramid
+	 * (aggregated at 10x, 100x... coarser resolutions), so the cost of drawing is
+	 * the same at any zoom level. The span can also be changed with the mouse
+	 * wheel.
 	 * 
-	 * @param dataStream
-	 * @see #setMaxYAxisValue(float)
+	 * @param span number of raw datapoints; constrained to between 2 and the
+	 *             history length multiplied by the coarsest tier's resolution
+	 * @see #setHistoryTiers(int)
 	 */
-	public void setDynamicYAxis(String dataStream) {
-		if (streams.containsKey(dataStream) || dataStream == null) {
-			yAxisDataStream = dataStream;
-		} else {
-			System.err.println("The data stream " + dataStream + " is not present.");
+	public void setVisibleSpan(int span) {
+		final long maxSpan = dataPoints * (long) Math.pow(DataStream.TIER_FACTOR, historyTiers);
+		visibleSpan = (int) Math.max(2, Math.min(span, Math.min(maxSpan, Integer.MAX_VALUE)));
+		for (DataStream d : drawOrderBuffer()) {
+			d.setView(visibleSpan);
 		}
 	}
 
 	/**
-	 * Sets the fill colour of a graph for a given data stream.
+	 * @return number of raw datapoints (x-axis units) that are visible
+	 * @see #setVisibleSpan(int)
+	 */
+	public int getVisibleSpan() {
+		return visibleSpan;
+	}
+
+	/**
+	 * Sets the x-axis to span a window of time, rather than a number of
+	 * datapoints. Datapoints are then positioned by their timestamp (see
+	 * {@link #pushAt(String, long, float)}; data pushed without a timestamp is
+	 * stamped with {@link System#nanoTime()} on arrival) and the right edge of the
+	 * x-axis is the newest timestamp across all streams. Each frame, the visible
+	 * datapoints of each stream are located with a binary search over its
+	 * timestamps, so no resampling is needed. Time views are drawn from the raw
+	 * history only (not the history pyramid). The window can also be changed with
+	 * the mouse wheel.
 	 * 
-	 * @param dataStream
-	 * @param color      ARGB colour represented by an integer; use Processing's
-	 *                   color() method to generate values
+	 * @param windowNanos window of time, in nanoseconds; 0 to index the x-axis by
+	 *                    datapoint again
+	 * @see #setVisibleSpan(int)
 	 */
-	public void setStreamFillColour(String dataStream, int color) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).fillColour = color;
-		} else {
-			System.err.println("The data stream " + dataStream + " is not present.");
+	public void setTimeWindow(long windowNanos) {
+		timeWindow = Math.max(0, windowNanos);
+		for (DataStream d : drawOrderBuffer()) {
+			if (timeWindow > 0) {
+				d.enableTimestamps();
+			} else {
+				d.setView(visibleSpan);
+			}
 		}
 	}
 
 	/**
-	 * Sets the stroke (outline) colour for all graphs.
-	 * 
-	 * @param color ARGB colour represented by an integer; use Processing's color()
-	 *              method to generate values
+	 * @return window of time (nanoseconds) the x-axis spans; 0 if the x-axis is
+	 *         indexed by datapoint
+	 * @see #setTimeWindow(long)
 	 */
-	public void setStrokeColour(int color) {
-		streams.values().forEach(dataStream -> dataStream.strokeColour = color);
+	public long getTimeWindow() {
+		return timeWindow;
 	}
 
 	/**
-	 * Sets the stroke (outline) colour of a graph for a given data stream.
+	 * Sets how many aggregate tiers each datastream's history pyramid has. Each
+	 * tier aggregates the tier below it by a factor of 10 and holds as many
+	 * datapoints as the monitor's history, so <code>n</code> tiers let the monitor
+	 * be zoomed out to <code>history * 10^n</code> datapoints. Each tier costs 4
+	 * values per history datapoint per stream, so the pyramid is opt-in: with the
+	 * default of none, the monitor zooms out only as far as its history. Default
+	 * = 0.
 	 * 
-	 * @param dataStream
-	 * @param color      ARGB colour represented by an integer; use Processing's
-	 *                   color() method to generate values
+	 * @param tiers >= 0
+	 * @see #setVisibleSpan(int)
 	 */
-	public void setStreamStrokeColour(String dataStream, int color) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).strokeColour = color;
-		} else {
-			System.err.println("The data stream " + dataStream + " is not present.");
+	public void setHistoryTiers(int tiers) {
+		historyTiers = Math.max(0, tiers);
+		for (DataStream d : drawOrderBuffer()) {
+			d.setTiers(historyTiers);
 		}
+		setVisibleSpan(visibleSpan); // re-constrain
 	}
 
 	/**
-	 * Sets the stroke (outline) weight (thickness) for all datastream graphs.
+	 * Sets how many datapoints evicted from each datastream's history are retained
+	 * in a compressed cold tier, so that the view can be scrolled back through
+	 * them (see {@link #setViewOffset(long)}). Evicted data is compressed in blocks
+	 * (timestamps as delta-of-deltas, values as the XOR of consecutive values), so
+	 * slowly varying streams cost a few bits per datapoint rather than 12 bytes;
+	 * blocks are decompressed only when the view is scrolled into them. Data
+	 * evicted before retention is enabled is not retained. Default = 0 (disabled).
 	 * 
-	 * @param weight outline thickness; >= 0
+	 * @param datapoints per stream; 0 to disable (discarding retained data)
+	 * @see #getColdStorageBytes()
 	 */
-	public void setStrokeWeight(int weight) {
-		graphStrokeWeight = PApplet.max(0, weight);
-	}
-
-	public void setValueLabelColor(int color) {
-		labelColor = color;
+	public void setColdRetention(long datapoints) {
+		coldRetention = Math.max(0, datapoints);
+		for (DataStream d : drawOrderBuffer()) {
+			d.setColdRetention(coldRetention);
+		}
 	}
 
-	public void setAxesLabelColor(int color) {
-		axesLabelColor = color;
+	/**
+	 * @return total size of the compressed data retained by every datastream's
+	 *         cold tier, in bytes
+	 * @see #setColdRetention(long)
+	 */
+	public long getColdStorageBytes() {
+		long bytes = 0;
+		for (DataStream d : streams.values()) {
+			bytes += d.getColdBytes();
+		}
+		return bytes;
 	}
 
 	/**
-	 * Sets the monitor's background colour. Supports opacity.
+	 * Scrolls the view back into history: the right edge of the x-axis is then
+	 * <code>datapoints</code> behind the newest data, and stays on the same data as
+	 * more is pushed (until the view is scrolled back to 0). Data older than a
+	 * stream's history is read from its cold tier (see
+	 * {@link #setColdRetention(long)}), and is drawn unsmoothed. Only raw views
+	 * can be scrolled; views zoomed out beyond the history, or spanning a window
+	 * of time, show the newest data. The view can also be scrolled with the mouse
+	 * wheel while shift is held.
 	 * 
-	 * @param colour ARGB colour represented by an integer; use Processing's color()
-	 *               method to generate values
+	 * @param datapoints raw datapoints; constrained (per stream) to the data held
 	 */
-	public void setBackgroundColour(int colour) {
-		backgroundColour = colour;
+	public void setViewOffset(long datapoints) {
+		for (DataStream d : drawOrderBuffer()) {
+			d.setViewOffset(datapoints);
+		}
 	}
 
 	/**
-	 * Sets the draw smoothing level. This level determines how many datapoints the
-	 * ScrollMonitor should skip when drawing vertices in the graph for each data
-	 * stream. A value of 1 means every data point is drawn (default value); a value
-	 * of 2 means every other data point is drawn; a value of 3 means every third
-	 * data point is drawn, and so on...
-	 * 
-	 * <p>
-	 * Higher values result in a smoother line but may introduce visual stuttering
-	 * as the graph scrolls. This value does not affect the underlying data, only
-	 * how each graph is drawn.
-	 * 
-	 * @param level A value of 1 (default, no smoothing) or 2 is recommended.
+	 * @return how far (in raw datapoints) the view is scrolled back from the newest
+	 *         data (the furthest of any stream); 0 if the view follows the newest
+	 *         data
+	 * @see #setViewOffset(long)
 	 */
-	public void setDrawSmoothing(int smoothingLevel) {
-		if (smoothingLevel < 1) {
-			System.err.println("Smoothing level should be at least 1 (when set to 1, every datapoint is drawn).");
-		} else {
-			drawSmoothingLevel = smoothingLevel;
+	public long getViewOffset() {
+		long offset = 0;
+		for (DataStream d : streams.values()) {
+			offset = Math.max(offset, d.viewOffset);
 		}
+		return offset;
 	}
 
 	/**
@@ -300,8 +1470,9 @@ public class ScrollMonitor extends ProcessingPane {
 	 * @param unit       e.g. "FPS"
 	 */
 	public void setStreamUnit(String dataStream, String unit) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).dataUnit = unit;
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.dataUnit = unit;
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
@@ -338,6 +1509,8 @@ public class ScrollMonitor extends ProcessingPane {
 			System.err.println("Segments number cannot be negative.");
 		}
 		bgSegmentsHorizontal = segments;
+		backgroundLayer.invalidate();
+		yLabelLayer.invalidate();
 	}
 
 	/**
@@ -351,6 +1524,7 @@ public class ScrollMonitor extends ProcessingPane {
 			System.err.println("Segments number cannot be negative.");
 		}
 		bgSegmentsVertical = segments;
+		verticalGridLayer.invalidate();
 	}
 
 	/**
@@ -359,10 +1533,11 @@ public class ScrollMonitor extends ProcessingPane {
 	 * @param dataStream
 	 */
 	public void bringToFront(String dataStream) {
-		if (streams.containsKey(dataStream)) {
-			DataStream d = streams.get(dataStream);
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
 			drawOrder.remove(d);
 			drawOrder.offerLast(d);
+			drawOrderChanged = true;
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
@@ -402,91 +1577,91 @@ public class ScrollMonitor extends ProcessingPane {
 	 */
 	@Override
 	void draw() {
-		canvas.clear();
-		p.pushStyle();
-
-		if (yAxisDataStream != null) {
-			if (streams.containsKey(yAxisDataStream)) { // check hasn't been removed by removeDataStream()
-				float yMax = Float.MIN_NORMAL;
-				DataStream d = streams.get(yAxisDataStream);
-				for (int i = 0; i < d.length; i++) { // TODO reference datapoints?
-					float data = streams.get(yAxisDataStream).getRawData(i);
-					yMax = data > yMax ? data : yMax; // set to max
-				}
-				if (yMax != yAxisMax) {
-					setMaxYAxisValue(PApplet.lerp(yAxisMax, yMax * 1.05f, 0.05f)); // set to +5% greater
+		final RenderStats stats = renderStats;
+		long t = stats != null ? System.nanoTime() : 0;
+
+		if (yAxisAllDataStreams || !yAxisDataStreams.isEmpty()) {
+			double yMax = Float.MIN_NORMAL;
+			if (yAxisAllDataStreams) {
+				for (DataStream d : drawOrderBuffer()) {
+					yMax = Math.max(yMax, d.getMaxLiveValue()); // O(1) per stream
 				}
 			} else {
-				yAxisDataStream = null; // reset (datastream ID not present)
+				for (int i = 0; i < yAxisDataStreams.size(); i++) {
+					yMax = Math.max(yMax, yAxisDataStreams.get(i).getMaxLiveValue());
+				}
+			}
+			if (yMax != yAxisMax) {
+				setMaxYAxisValue(yAxisMax + (yMax * 1.05 - yAxisMax) * 0.05); // lerp to +5% greater
 			}
 		}
 
-		drawBG();
+		if (timeWindow > 0) {
+			updateTimeView();
+		}
+		if (stats != null) {
+			t = stats.lap(Phase.Y_AXIS, t);
+		}
 
-		HashMap<DataStream, PShape> shapes = new HashMap<>(streams.size()); // cache PShapes; draw in reverse after
+		canvas.clear();
+		out().pushStyle();
+		drawBG();
+		if (stats != null) {
+			t = stats.lap(Phase.BACKGROUND, t);
+		}
 
-		DataStream mouseOverStream = null; // The top-most datastream (graph) that the mouse is over
+		final DataStream[] order = drawOrderBuffer();
+		final float mouseX = mousePos.x - position.x;
+		final float mouseY = mousePos.y - position.y;
 
-		for (Iterator<DataStream> drawOrderReverse = drawOrder.descendingIterator(); drawOrderReverse.hasNext();) {
-			DataStream d = drawOrderReverse.next();
-			if (d.draw) {
-				canvas.fill(d.fillColour); // A workaround for OPENGL modes since shape.fill() doesn't work
-				PShape graphShape = canvas.createShape();
-				graphShape.setStrokeWeight(graphStrokeWeight);
-				graphShape.beginShape(); // BEGIN GRAPH PSHAPE
+		if (withinMoveRegion && !dragging) { // only one datastream can be mouseover (detect front to back)
+			hitTester.update(order, mouseX, mouseY, dimensions.x, dimensions.y, graphStrokeWeight / 2f);
+		} else {
+			hitTester.clear();
+		}
+		final DataStream mouseOverStream = hitTester.hit; // The top-most datastream (graph) that the mouse is over
+		if (stats != null) {
+			t = stats.lap(Phase.HIT_TEST, t);
+		}
 
-				if (!d.outline) {
-					graphShape.noStroke(); // need to call inside beginShape()
-				} else {
-					graphShape.stroke(d.strokeColour); // set stroke colour
+		if (backend == GraphBackend.RASTER) {
+			for (int s = order.length - 1; s >= 0; s--) {
+				if (order[s].draw) {
+					buildGeometry(order[s]);
 				}
-
-				// start shape out of bounds(upper left)
-				graphShape.vertex(-graphStrokeWeight * 2, (dimensions.y - d.getDrawData(0)));
-
-				float val, vertX, vertY;
-				for (int i = 0; i < d.length; i += drawSmoothingLevel) { // drawSmoothingLevel
-					val = d.getDrawData(i);
-					vertX = i * (dimensions.x / (d.length - 1)); // calc x coord -- scale to x dimension
-					vertY = (dimensions.y) - val;
-					graphShape.vertex(vertX, vertY);
+			}
+			rasterizeGraphs(order, mouseOverStream);
+		} else if (incremental) {
+			renderGraphLayer(order, mouseOverStream);
+			canvas.image(graphLayer, 0, 0);
+		} else {
+			for (int s = order.length - 1; s >= 0; s--) { // front to back
+				if (order[s].draw) {
+					buildGeometry(order[s]);
 				}
-
-				// draw out of bounds to hide stroke
-				graphShape.vertex(dimensions.x + graphStrokeWeight, (dimensions.y) - d.getDrawData(d.length - 1));
-				graphShape.vertex(dimensions.x + graphStrokeWeight, dimensions.y + graphStrokeWeight); // LR corner
-				graphShape.vertex(-graphStrokeWeight, dimensions.y + graphStrokeWeight); // lower left corner
-
-				// finished populating vertices, now check whether mouse is over graph pshape
-				if (withinMoveRegion && !dragging && mouseOverStream == null
-						&& pointInPoly(graphShape, PVector.sub(mousePos, position))) {
-					graphShape.fill(0xff000000 | ~d.fillColour, canvas.alpha(d.fillColour) - 5); // invert col if mouse
-																									// over
-					mouseOverStream = d; // only one datastream can be mouseover (detect front to back)
-				} else {
-					if (d.fill) {
-						graphShape.fill(d.fillColour);
-					} else {
-						graphShape.noFill();
-					}
+			}
+			// Now draw graph shapes into canvas in reverse order
+			for (DataStream d : order) { // draw streams most recently added last (on bottom)
+				if (d.draw) {
+					drawGraph(canvas, d, d == mouseOverStream);
 				}
-				graphShape.endShape(PApplet.CLOSE); // fill in shape
-				shapes.put(d, graphShape);
 			}
 		}
+		if (stats != null) {
+			t = stats.lap(Phase.GEOMETRY, t);
+		}
 
-		// Now draw graph shapes into canvas in reverse order
-		p.textAlign(PApplet.LEFT, PApplet.CENTER);
-		for (DataStream d : drawOrder) { // draw streams most recently added last (on bottom)
+		out().textAlign(PApplet.LEFT, PApplet.CENTER);
+		for (DataStream d : order) {
 			if (d.draw) {
-				canvas.shape(shapes.get(d));
 				if (d == mouseOverStream) {
-					p.fill(0, 155, 0);
+					out().fill(0, 155, 0);
 				} else {
-					p.fill(labelColor);
+					out().fill(labelColor);
 				}
-				p.text(round(d.getRawData(d.length)) + d.dataUnit, position.x + dimensions.x + 10,
-						position.y + (dimensions.y - d.getDrawData(d.length - 1))); // y axis label (right side)
+				final Label label = d.formatRawData(d.valueLabel, d.viewLength - 1, labelPrecision);
+				out().text(label.chars, 0, label.length, position.x + dimensions.x + 10,
+						position.y + (dimensions.y - d.getDrawData(d.viewLength - 1))); // y axis label (right side)
 			}
 		}
 
@@ -494,9 +1669,7 @@ public class ScrollMonitor extends ProcessingPane {
 			p.cursor(PApplet.CROSS);
 			float x = constrain(mousePos.x, position.x + graphStrokeWeight - 1,
 					position.x + dimensions.x - graphStrokeWeight + 1) - position.x; // constrain mouseOverX
-			int mouseOverIndex = (int) (x / (dimensions.x / (mouseOverStream.length - 1))); // index of point mouse is
-																							// over
-			float valAtMouse = mouseOverStream.getRawData(mouseOverIndex);
+			int mouseOverIndex = hitTester.index; // index of point mouse is over
 			float valAtMouseDrawLength = mouseOverStream.getDrawData(mouseOverIndex);
 
 			canvas.stroke(mouseOverStream.strokeColour);
@@ -505,29 +1678,291 @@ public class ScrollMonitor extends ProcessingPane {
 
 			canvas.textAlign(PApplet.CENTER, PApplet.CENTER);
 			canvas.fill(mouseOverStream.strokeColour);
-			canvas.text(valAtMouse, x, PApplet.max(dimensions.y - valAtMouseDrawLength - 25, 0)); // mousePos label
-
-			p.textAlign(PApplet.CENTER, PApplet.TOP);
-			p.fill(0, 255, 0);
-			p.text(round(valAtMouse) + mouseOverStream.dataUnit, x + position.x, position.y + dimensions.y + 10); // bottom
-																													// label
+			Label label = mouseOverStream.formatRawData(mouseOverValueLabel, mouseOverIndex, 3);
+			canvas.text(label.chars, 0, label.length, x, PApplet.max(dimensions.y - valAtMouseDrawLength - 25, 0)); // mousePos
+																														// label
+
+			out().textAlign(PApplet.CENTER, PApplet.TOP);
+			out().fill(0, 255, 0);
+			label = mouseOverStream.formatRawData(mouseOverLabel, mouseOverIndex, labelPrecision);
+			out().text(label.chars, 0, label.length, x + position.x, position.y + dimensions.y + 10); // bottom label
 			canvas.text(mouseOverStream.name, 10, 10); // display name of mouse-overed stream (top left)
 		}
-		p.popStyle();
+
+		if (crosshair && withinMoveRegion && !dragging) {
+			drawCrosshair(order, mouseX);
+		}
+		out().popStyle();
+		if (stats != null) {
+			stats.lap(Phase.LABELS, t);
+		}
+	}
+
+	/**
+	 * Draws a vertical line at the mouse, labelled with the value of every visible
+	 * datastream at that point.
+	 */
+	private void drawCrosshair(DataStream[] order, float mouseX) {
+		final float x = constrain(mouseX, 0, dimensions.x);
+		canvas.stroke(axesLabelColor, 150);
+		canvas.strokeWeight(1);
+		canvas.line(x, 0, x, dimensions.y);
+		canvas.textAlign(x > dimensions.x / 2 ? PApplet.RIGHT : PApplet.LEFT, PApplet.BOTTOM);
+		final float labelOffset = x > dimensions.x / 2 ? -5 : 5;
+		for (DataStream d : order) {
+			if (d.draw) {
+				final int i = HitTester.indexAt(d, x, dimensions.x);
+				canvas.fill(d.strokeColour);
+				final Label label = d.formatRawData(d.crosshairLabel, i, labelPrecision);
+				canvas.text(label.chars, 0, label.length, x + labelOffset, PApplet.max(dimensions.y - d.getDrawData(i) - 2, 12));
+			}
+		}
+	}
+
+	/**
+	 * Builds the (decimated) vertices of a stream's graph polygon.
+	 */
+	private void buildGeometry(DataStream d) {
+		final GraphGeometry g = d.geometry;
+		g.reset();
+		// start shape out of bounds(upper left)
+		g.add(-graphStrokeWeight * 2, (dimensions.y - d.getDrawData(0)));
+		decimator.decimate(d, dimensions.x, dimensions.y); // at most ~4 vertices per pixel column
+		// draw out of bounds to hide stroke
+		g.add(dimensions.x + graphStrokeWeight, (dimensions.y) - d.getDrawData(d.viewLength - 1));
+		g.add(dimensions.x + graphStrokeWeight, dimensions.y + graphStrokeWeight); // LR corner
+		g.add(-graphStrokeWeight, dimensions.y + graphStrokeWeight); // lower left corner
+	}
+
+	/**
+	 * Draws a stream's (built) graph polygon.
+	 */
+	private void drawGraph(PGraphics g, DataStream d, boolean mouseOver) {
+		final PShape graphShape = d.geometry.update(g, d.fill || mouseOver, graphFill(d, mouseOver), d.outline,
+				d.strokeColour, graphStrokeWeight);
+		g.fill(d.fillColour); // A workaround for OPENGL modes since shape.fill() doesn't work
+		g.shape(graphShape);
+	}
+
+	/**
+	 * Writes every stream's (built) graph directly into the canvas's pixels.
+	 */
+	private void rasterizeGraphs(DataStream[] order, DataStream mouseOverStream) {
+		canvas.loadPixels();
+		final int width = canvas.pixelWidth, height = canvas.pixelHeight;
+		final float scale = width / dimensions.x;
+		for (DataStream d : order) {
+			if (d.draw) {
+				final GraphGeometry g = d.geometry;
+				final boolean mouseOver = d == mouseOverStream;
+				rasterizer.draw(canvas.pixels, width, height, scale, g.x, g.y, g.count - 2, d.fill || mouseOver,
+						graphFill(d, mouseOver), d.outline, d.strokeColour, graphStrokeWeight); // excl. lower corners
+			}
+		}
+		canvas.updatePixels();
+	}
+
+	/**
+	 * @return fill colour of a stream's graph (inverted if the mouse is over it)
+	 */
+	private static int graphFill(DataStream d, boolean mouseOver) {
+		if (mouseOver) {
+			final int alpha = Math.max(0, (d.fillColour >>> 24) - 5);
+			return (alpha << 24) | (~d.fillColour & 0xffffff);
+		}
+		return d.fillColour;
+	}
+
+	/**
+	 * Brings the off-screen graph layer up to date. If only data has changed since
+	 * the last frame, and every drawn stream has had the same number of data
+	 * appended (so every graph has scrolled by the same amount), the layer is
+	 * shifted left by the scroll delta with a pixel copy and only the newly exposed
+	 * columns are rasterised; otherwise (resized, rescaled, style or view changed,
+	 * (un)paused...) the layer is redrawn in full.
+	 */
+	private void renderGraphLayer(DataStream[] order, DataStream mouseOverStream) {
+		if (graphLayer == null || graphLayer.width != (int) dimensions.x || graphLayer.height != (int) dimensions.y) {
+			graphLayer = createLayer((int) dimensions.x, (int) dimensions.y);
+			graphLayerDirty = true;
+		}
+
+		long signature = 17;
+		for (DataStream d : order) {
+			signature = signature * 31 + System.identityHashCode(d);
+			signature = signature * 31 + d.layoutVersion;
+			signature = signature * 31 + d.fillColour;
+			signature = signature * 31 + d.strokeColour;
+			signature = signature * 31 + (d.fill ? 1 : 0) + (d.outline ? 2 : 0) + (d == mouseOverStream ? 4 : 0);
+		}
+		signature = signature * 31 + graphStrokeWeight;
+		signature = signature * 31 + decimator.mode.ordinal();
+		if (signature != graphLayerSignature || graphLayerPushCounts.length != order.length) {
+			graphLayerDirty = true;
+			graphLayerSignature = signature;
+			graphLayerPushCounts = new long[order.length];
+		}
+
+		long appended = -1; // since the last frame, by every drawn stream
+		boolean scrollable = timeWindow == 0;
+		int viewLength = 0;
+		for (int i = 0; i < order.length; i++) {
+			final DataStream d = order[i];
+			if (d.draw) {
+				final long n = d.paused ? 0 : d.pushCount - graphLayerPushCounts[i];
+				scrollable &= d.viewTier == 0 && d.viewOffset == 0 && (appended == -1 || appended == n);
+				appended = n;
+				viewLength = d.viewLength;
+			}
+			graphLayerPushCounts[i] = d.pushCount;
+		}
+
+		graphLayer.beginDraw();
+		if (!graphLayerDirty && scrollable) {
+			if (appended > 0) {
+				final float exact = graphLayerError + appended * (dimensions.x / (viewLength - 1));
+				final int shift = Math.round(exact);
+				if (shift < graphLayer.width / 2) {
+					graphLayerError = exact - shift;
+					scrollGraphLayer(order, mouseOverStream, shift);
+				} else {
+					graphLayerDirty = true;
+				}
+			}
+		} else {
+			graphLayerDirty = true;
+		}
+		if (graphLayerDirty) {
+			graphLayer.clear();
+			for (int s = order.length - 1; s >= 0; s--) {
+				if (order[s].draw) {
+					buildGeometry(order[s]);
+				}
+			}
+			for (DataStream d : order) {
+				if (d.draw) {
+					drawGraph(graphLayer, d, d == mouseOverStream);
+				}
+			}
+			graphLayerError = 0;
+			graphLayerDirty = false;
+		}
+		graphLayer.endDraw();
+	}
+
+	/**
+	 * Shifts the graph layer left and redraws the right-hand strip it exposes (plus
+	 * a margin covering the graphs' old right edges).
+	 */
+	private void scrollGraphLayer(DataStream[] order, DataStream mouseOverStream, int shift) {
+		final int w = graphLayer.width, h = graphLayer.height;
+		if (shift > 0) {
+			graphLayer.copy(shift, 0, w - shift, h, 0, 0, w - shift, h);
+		}
+		final float x0 = Math.max(0, w - shift - graphStrokeWeight - 2);
+		graphLayer.blendMode(PConstants.REPLACE); // clear the strip
+		graphLayer.noStroke();
+		graphLayer.fill(0, 0);
+		graphLayer.rect(x0, 0, w - x0, h);
+		graphLayer.blendMode(PConstants.BLEND);
+
+		graphLayer.clip(x0, 0, w - x0, h);
+		for (DataStream d : order) {
+			if (!d.draw) {
+				continue;
+			}
+			final boolean mouseOver = d == mouseOverStream;
+			if (d.fill || mouseOver) {
+				graphLayer.fill(graphFill(d, mouseOver));
+			} else {
+				graphLayer.noFill();
+			}
+			if (d.outline) {
+				graphLayer.stroke(d.strokeColour);
+				graphLayer.strokeWeight(graphStrokeWeight);
+			} else {
+				graphLayer.noStroke();
+			}
+			// start far enough left of the strip that the polygon's left edge is clipped
+			final int first = d.getViewIndexBefore(x0 - graphStrokeWeight - 1 - graphLayerError, w);
+			final float left = d.getViewX(first, w) + graphLayerError;
+			graphLayer.beginShape();
+			for (int i = first; i < d.viewLength; i++) {
+				graphLayer.vertex(d.getViewX(i, w) + graphLayerError, h - d.getDrawData(i));
+			}
+			graphLayer.vertex(w + graphStrokeWeight, h - d.getDrawData(d.viewLength - 1));
+			graphLayer.vertex(w + graphStrokeWeight, h + graphStrokeWeight);
+			graphLayer.vertex(left, h + graphStrokeWeight);
+			graphLayer.endShape(PConstants.CLOSE);
+		}
+		graphLayer.noClip();
+	}
+
+	/**
+	 * Aligns each stream's view to the time window ending at the newest timestamp
+	 * across all streams (which is frozen while paused, since paused streams
+	 * report their newest timestamp as of pausing).
+	 */
+	private void updateTimeView() {
+		final DataStream[] order = drawOrderBuffer();
+		long end = Long.MIN_VALUE;
+		for (DataStream d : order) {
+			end = Math.max(end, d.getNewestTimestamp());
+		}
+		if (end == Long.MIN_VALUE) {
+			end = System.nanoTime(); // no data yet
+		}
+		timeViewEnd = end;
+		for (DataStream d : order) {
+			d.setTimeView(end - timeWindow, timeWindow);
+		}
+	}
+
+	/**
+	 * Drains concurrent ingestion queues (if enabled), and feeds the replay and
+	 * the ingestion server's data (if any), before the frame is drawn.
+	 */
+	@Override
+	void pre() {
+		if (ingestionPolicy != null) {
+			drainIngestionQueues();
+		}
+		if (replay != null) {
+			replay.feed();
+		}
+		if (ingestionServer != null) {
+			ingestionServer.drainTo(this);
+		}
+	}
+
+	private void drainIngestionQueues() {
+		for (DataStream d : drawOrderBuffer()) {
+			final SampleQueue q = d.queue;
+			if (q != null) {
+				q.drainTo(d);
+			}
+		}
 	}
 
 	@Override
 	void post() {
 		time += timeStep;
+		if (renderStatsStream != null) {
+			if (renderStatsStream.removed) {
+				renderStatsStream = null; // removed by the user
+			} else {
+				renderStatsStream.push(renderStats.getLast(Phase.TOTAL) / 1e6f);
+			}
+		}
 	}
 
 	@Override
 	void resize() {
 		for (DataStream d : streams.values()) {
-			d.drawDimensions = dimensions.copy();
-//			d.setMaxValue(d.maxValue); // TODO
-			d.recalcDrawData();
+			d.setDrawDimensions(dimensions.copy()); // rescales draw data (no recompute needed)
+			d.geometry.invalidate(); // canvas has been resized
 		}
+		graphLayerDirty = true;
 		if (xAxisPosition != 0) {
 			xAxisPosition = dimensions.y + 2 * (2 + borderStrokeWeight); // recalc x-axis height
 		}
@@ -540,6 +1975,24 @@ public class ScrollMonitor extends ProcessingPane {
 		}
 	}
 
+	/**
+	 * Zooms the x-axis when the wheel is scrolled over the monitor.
+	 */
+	@Override
+	void mouseWheel(MouseEvent e) {
+		if (mouseOverPane && !dragging && !resizing) {
+			if (timeWindow > 0) {
+				setTimeWindow(Math.max(1, (long) (timeWindow * Math.pow(1.25, e.getCount()))));
+				return;
+			}
+			if (e.isShiftDown()) { // scroll through history by a tenth of the view
+				setViewOffset(Math.max(0, getViewOffset() - e.getCount() * Math.max(1L, visibleSpan / 10)));
+				return;
+			}
+			setVisibleSpan(round(visibleSpan * (float) Math.pow(1.25, e.getCount())));
+		}
+	}
+
 	@Override
 	void mouseOver() {
 		p.cursor(PApplet.MOVE); // cursor when mouse is over a monitor but not over any graph
@@ -609,8 +2062,9 @@ public class ScrollMonitor extends ProcessingPane {
 	 * but will not display any new data until it is resumed.
 	 */
 	public void pauseDatastream(String dataStream) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).pause();
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.pause();
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
@@ -620,8 +2074,9 @@ public class ScrollMonitor extends ProcessingPane {
 	 * Pauses the view (data pushing is not blocked).
 	 */
 	public void unPauseDatastream(String dataStream) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).resume();
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.resume();
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
@@ -635,8 +2090,9 @@ public class ScrollMonitor extends ProcessingPane {
 	 * @see #showDatastream(String)
 	 */
 	public void hideDatastream(String dataStream) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).draw = false;
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.setDraw(false);
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
@@ -649,87 +2105,186 @@ public class ScrollMonitor extends ProcessingPane {
 	 * @see #hideDatastream(String)
 	 */
 	public void showDatastream(String dataStream) {
-		if (streams.containsKey(dataStream)) {
-			streams.get(dataStream).draw = true;
+		final DataStream d = streams.get(dataStream);
+		if (d != null) {
+			d.setDraw(true);
 		} else {
 			System.err.println("The data stream " + dataStream + " is not present.");
 		}
 	}
 
 	/**
-	 * Draws graph background (fill and line segments)
+	 * @return streams in draw order (back to front); rebuilt only when the draw
+	 *         order changes
 	 */
-	private void drawBG() {
-		canvas.fill(backgroundColour); // bg fill
-		canvas.noStroke();
-
-		/**
-		 * If BGcolour is fully opaque, call background() instead since it is faster.
-		 */
-		if (backgroundColour >> 24 == 255) {
-			canvas.background(backgroundColour);
-		} else {
-			canvas.rect(0, 0, dimensions.x, dimensions.y);
+	private DataStream[] drawOrderBuffer() {
+		if (drawOrderChanged) {
+			drawOrderBuffer = drawOrder.toArray(new DataStream[drawOrder.size()]);
+			drawOrderChanged = false;
 		}
+		return drawOrderBuffer;
+	}
 
-		canvas.stroke(0, 150); // guidelines
-		canvas.strokeWeight(1); // guidelines
-
-		p.fill(axesLabelColor); // text colour
+	/**
+	 * Draws graph background (fill and line segments) from cached layers.
+	 */
+	private void drawBG() {
+		final int w = (int) dimensions.x, h = (int) dimensions.y;
+
+		if (backgroundLayer.begin(this, w, h)) { // bg fill & horizontal guidelines
+			final PGraphics g = backgroundLayer.graphics;
+			g.noStroke();
+			g.fill(backgroundColour);
+			g.rect(0, 0, w, h);
+			g.stroke(0, 150); // guidelines
+			g.strokeWeight(1);
+			for (int i = 0; i < bgSegmentsHorizontal; i++) {
+				final float y = dimensions.y - i * (dimensions.y / bgSegmentsHorizontal);
+				g.line(0, y, dimensions.x, y);
+			}
+			backgroundLayer.end();
+		}
+		canvas.image(backgroundLayer.graphics, 0, 0);
 
 		if (bgSegmentsHorizontal > 0) {
-			p.textAlign(PApplet.RIGHT, PApplet.CENTER);
-			for (int i = 0; i < bgSegmentsHorizontal; i++) { // draw horizontal guidelines
-				float y = dimensions.y - i * (dimensions.y / (bgSegmentsHorizontal + 0));
-				canvas.line(0, y, dimensions.x, y);
-				p.text(round(yAxisMax / bgSegmentsHorizontal * i), position.x - 10, position.y + y);
-			} // calc values based on stream max value Y
-			p.text(round(yAxisMax / bgSegmentsHorizontal * bgSegmentsHorizontal), position.x - 10,
-					position.y + dimensions.y - bgSegmentsHorizontal * (dimensions.y / (bgSegmentsHorizontal + 0))); // label,
-																														// no
-																														// line
+			drawYLabels();
 		}
 
 		if (bgSegmentsVertical > 0) {
-			if (xAxisPosition == 0) {
-				p.textAlign(PApplet.CENTER, PApplet.BOTTOM);
-			} else {
-				p.textAlign(PApplet.CENTER, PApplet.TOP);
+			drawVerticalGrid();
+		}
+	}
+
+	/**
+	 * Draws the Y-axis labels (left of the monitor), re-rendering their layer only
+	 * when a label value, or the label style, has changed.
+	 */
+	private void drawYLabels() {
+		boolean changed = false;
+		if (yLabels.length != bgSegmentsHorizontal + 1) {
+			yLabels = new long[bgSegmentsHorizontal + 1];
+			yLabelText = new Label[bgSegmentsHorizontal + 1];
+			for (int i = 0; i <= bgSegmentsHorizontal; i++) {
+				yLabelText[i] = new Label().set(0L, 0, null);
 			}
-			float z = dataPoints / bgSegmentsVertical;
-			for (int i = 0; i < bgSegmentsVertical; i++) { // draw vertical guidelines
-				float xPos = Math
-						.floorMod(
-								(int) ((i * (dimensions.x / bgSegmentsVertical)
-										- ((pause ? pauseTime : time) * dimensions.x / dataPoints))),
-								(int) dimensions.x);
-				canvas.line(xPos, 0, xPos, dimensions.y);
-				p.text((int) (time - ((time % dataPoints)) + (z * i)), position.x + xPos,
-						position.y - 2 - borderStrokeWeight + xAxisPosition); // draw x-axis labels
+			changed = true;
+		}
+		for (int i = 0; i <= bgSegmentsHorizontal; i++) { // calc values based on stream max value Y
+			final long label = Math.round(yAxisMax / bgSegmentsHorizontal * i);
+			if (label != yLabels[i]) {
+				yLabels[i] = label;
+				yLabelText[i].set(label, 0, null);
+				changed = true;
+			}
+		}
+		if (out().textSize != yLabelTextSize || out().textFont != yLabelFont) {
+			yLabelTextSize = out().textSize;
+			yLabelFont = out().textFont;
+			changed = true;
+		}
+
+		if (changed) { // measured only on change: textWidth() is costly
+			yLabelLayer.invalidate();
+			final Label widest = yLabelText[bgSegmentsHorizontal];
+			yLabelPad = (int) Math.ceil(out().textAscent() + out().textDescent()); // labels are vertically centered
+			yLabelWidth = (int) Math.ceil(out().textWidth(widest.chars, 0, widest.length)) + yLabelPad;
+		}
+		final int pad = yLabelPad;
+		final int width = yLabelWidth;
+		if (yLabelLayer.begin(this, width, (int) dimensions.y + 2 * pad)) {
+			final PGraphics g = yLabelLayer.graphics;
+			if (out().textFont != null) {
+				g.textFont(out().textFont, out().textSize);
 			}
+			g.fill(axesLabelColor); // text colour
+			g.textAlign(PApplet.RIGHT, PApplet.CENTER);
+			for (int i = 0; i <= bgSegmentsHorizontal; i++) { // topmost label has no line
+				final Label label = yLabelText[i];
+				g.text(label.chars, 0, label.length, width, pad + dimensions.y - i * (dimensions.y / bgSegmentsHorizontal));
+			}
+			yLabelLayer.end();
 		}
+		out().image(yLabelLayer.graphics, position.x - 10 - width, position.y - pad);
 	}
 
 	/**
-	 * Determine if a point is in a polygon, given by a list of its vertices.
+	 * Draws an x-axis label (with the glyph atlas, if enabled).
 	 * 
-	 * @param s     PShape
-	 * @param point PVector point to check
-	 * @return boolean true if point in polygon
+	 * @param slot index of the label along the axis (each has its own cached text)
+	 */
+	private void drawXLabel(int slot, double value, int precision, float x) {
+		if (slot >= xLabels.length) {
+			xLabels = Arrays.copyOf(xLabels, slot + 1);
+		}
+		if (xLabels[slot] == null) {
+			xLabels[slot] = new Label();
+		}
+		final Label label = xLabels[slot].set(value, precision, null);
+		final float y = position.y - 2 - borderStrokeWeight + xAxisPosition;
+		if (glyphAtlas != null && glyphAtlas.canDraw(label.chars, label.length)) {
+			glyphAtlas.draw(out(), label.chars, label.length, x, y, PApplet.CENTER,
+					xAxisPosition == 0 ? PApplet.BOTTOM : PApplet.TOP);
+		} else {
+			out().text(label.chars, 0, label.length, x, y);
+		}
+	}
+
+	/**
+	 * Draws the vertical guidelines (a pre-rendered strip of them, translated to
+	 * where the x-axis has scrolled) and the x-axis labels.
 	 */
-	private static final boolean pointInPoly(PShape s, PVector point) {
+	private void drawVerticalGrid() {
+		if (xAxisPosition == 0) {
+			out().textAlign(PApplet.CENTER, PApplet.BOTTOM);
+		} else {
+			out().textAlign(PApplet.CENTER, PApplet.TOP);
+		}
+		out().fill(axesLabelColor); // text colour
+		if (glyphAtlas != null) {
+			glyphAtlas.update(this, out(), axesLabelColor);
+		}
 
-		boolean within = false;
-		int j = s.getVertexCount() - 1;
+		final float period; // guideline spacing (pixels)
+		final float first; // x of the leftmost guideline
+		if (timeWindow > 0) { // guidelines at fixed multiples of time, labelled relative to now (seconds)
+			final long step = Math.max(1, timeWindow / bgSegmentsVertical);
+			final long start = timeViewEnd - timeWindow;
+			final long firstTime = Math.floorDiv(start, step) * step + step;
+			period = (float) (step * (double) dimensions.x / timeWindow);
+			first = (float) ((firstTime - start) * (double) dimensions.x / timeWindow);
+			int k = 0;
+			for (long t = firstTime; t <= timeViewEnd; t += step) {
+				final float xPos = (float) ((t - start) * (double) dimensions.x / timeWindow);
+				drawXLabel(k++, (t - timeViewEnd) / 1e9, 1, position.x + xPos);
+			}
+		} else {
+			period = dimensions.x / bgSegmentsVertical;
+			final float scroll = (pause ? pauseTime : time) * dimensions.x / visibleSpan;
+			first = ((-scroll % period) + period) % period;
+			float z = visibleSpan / bgSegmentsVertical;
+			for (int i = 0; i < bgSegmentsVertical; i++) { // x-axis labels
+				float xPos = Math.floorMod((int) ((i * (dimensions.x / bgSegmentsVertical) - scroll)), (int) dimensions.x);
+				drawXLabel(i, (int) (time - ((time % visibleSpan)) + (z * i)), 0, position.x + xPos); // draw x-axis labels
+			}
+		}
 
-		for (int i = 0; i < s.getVertexCount(); i++) {
-			final PVector v = s.getVertex(i);
-			final PVector b = s.getVertex(j);
-			if (((v.y > point.y) != (b.y > point.y)) && (point.x < (b.x - v.x) * (point.y - v.y) / (b.y - v.y) + v.x)) {
-				within = !within;
+		if (Math.abs(period - verticalGridPeriod) > 1e-3f) {
+			verticalGridPeriod = period;
+			verticalGridLayer.invalidate();
+		}
+		if (period < 1) {
+			return; // too dense to draw
+		}
+		final int stripWidth = (int) Math.ceil(dimensions.x + 2 * period);
+		if (verticalGridLayer.begin(this, stripWidth, (int) dimensions.y)) {
+			final PGraphics g = verticalGridLayer.graphics;
+			g.stroke(0, 150); // guidelines
+			g.strokeWeight(1);
+			for (float x = 0; x < stripWidth; x += period) {
+				g.line(x, 0, x, dimensions.y);
 			}
-			j = i;
+			verticalGridLayer.end();
 		}
-		return within;
+		canvas.image(verticalGridLayer.graphics, first, 0);
 	}
 }
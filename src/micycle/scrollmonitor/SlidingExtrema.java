@@ -0,0 +1,112 @@
+package micycle.scrollmonitor;
+
+/**
+ * Tracks the maximum and minimum of the data held in a ring buffer, updated
+ * incrementally as slots of the ring are overwritten. Each extremum is kept in
+ * a monotonic deque of (slot, value) pairs, so a push costs amortised O(1) and
+ * querying either extremum is O(1). Values are held in double precision, to
+ * which float data widens exactly, so one implementation serves streams of
+ * every type.
+ * <p>
+ * Empty datapoints ({@link Double#NEGATIVE_INFINITY}) and NaNs are ignored.
+ * 
+ * @author Michael Carleton
+ *
+ */
+final class SlidingExtrema {
+
+	private final MonotonicDeque max, min;
+
+	/**
+	 * @param capacity length of the ring buffer being tracked
+	 */
+	SlidingExtrema(int capacity) {
+		max = new MonotonicDeque(capacity, true);
+		min = new MonotonicDeque(capacity, false);
+	}
+
+	/**
+	 * Records that a slot of the ring has been overwritten with a new datum. Slots
+	 * must be overwritten in ring order.
+	 * 
+	 * @param slot  ring index being written
+	 * @param datum new value of the slot
+	 */
+	void push(int slot, double datum) {
+		max.push(slot, datum);
+		min.push(slot, datum);
+	}
+
+	/**
+	 * Records that a slot of the ring has been overwritten with a datum that has
+	 * different upper and lower values (such as an aggregate bucket).
+	 * 
+	 * @param slot ring index being written
+	 * @param high value of the slot tracked by {@link #max()}
+	 * @param low  value of the slot tracked by {@link #min()}
+	 */
+	void push(int slot, double high, double low) {
+		max.push(slot, high);
+		min.push(slot, low);
+	}
+
+	/**
+	 * @return maximum datum in the ring; NEGATIVE_INFINITY if the ring holds no
+	 *         data
+	 */
+	double max() {
+		return max.size == 0 ? Double.NEGATIVE_INFINITY : max.values[max.head];
+	}
+
+	/**
+	 * @return minimum datum in the ring; POSITIVE_INFINITY if the ring holds no
+	 *         data
+	 */
+	double min() {
+		return min.size == 0 ? Double.POSITIVE_INFINITY : min.values[min.head];
+	}
+
+	void reset() {
+		max.size = 0;
+		min.size = 0;
+	}
+
+	/**
+	 * A circular deque whose values are kept in decreasing (max) or increasing
+	 * (min) order from head to tail; the head is therefore the extremum.
+	 */
+	private static final class MonotonicDeque {
+
+		private final boolean descending;
+		private final int[] slots;
+		private final double[] values;
+		private int head, size;
+
+		MonotonicDeque(int capacity, boolean descending) {
+			this.descending = descending;
+			slots = new int[capacity];
+			values = new double[capacity];
+		}
+
+		void push(int slot, double datum) {
+			if (size > 0 && slots[head] == slot) { // head is the (oldest) datum being overwritten
+				head = (head + 1) % slots.length;
+				size--;
+			}
+			if (datum == Double.NEGATIVE_INFINITY || datum != datum) { // empty or NaN
+				return;
+			}
+			while (size > 0) { // drop data that can no longer be the extremum
+				final double tail = values[(head + size - 1) % slots.length];
+				if (descending ? tail > datum : tail < datum) {
+					break;
+				}
+				size--;
+			}
+			final int tail = (head + size) % slots.length;
+			slots[tail] = slot;
+			values[tail] = datum;
+			size++;
+		}
+	}
+}
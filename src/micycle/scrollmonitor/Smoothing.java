@@ -0,0 +1,47 @@
+package micycle.scrollmonitor;
+
+/**
+ * Filters that can be used to smooth the data of a datastream. Each filter
+ * smooths over a window of the most recent datapoints; the window length is
+ * given by the smoothing level (a level of 0 means no smoothing).
+ * 
+ * @author Michael Carleton
+ * @see ScrollMonitor#setDataSmoothing(Smoothing, int)
+ */
+public enum Smoothing {
+
+	/**
+	 * Equal-weighted moving average (default).
+	 */
+	MOVING_AVERAGE {
+		@Override
+		SmoothingFilter createFilter(int smoothing) {
+			return new MovingAverageFilter(smoothing + 1);
+		}
+	},
+	/**
+	 * Exponentially weighted moving average, with a weighting equivalent to a
+	 * moving average of the same level. Favours recent data.
+	 */
+	EXPONENTIAL {
+		@Override
+		SmoothingFilter createFilter(int smoothing) {
+			return new ExponentialFilter(smoothing + 1);
+		}
+	},
+	/**
+	 * Moving median. Removes spikes without blurring steps.
+	 */
+	MEDIAN {
+		@Override
+		SmoothingFilter createFilter(int smoothing) {
+			return new MovingMedianFilter(smoothing + 1);
+		}
+	};
+
+	/**
+	 * @param smoothing how many previous datapoints (in addition to the current
+	 *                  datapoint) the filter smooths over; >= 0
+	 */
+	abstract SmoothingFilter createFilter(int smoothing);
+}
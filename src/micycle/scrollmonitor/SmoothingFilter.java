@@ -0,0 +1,42 @@
+package micycle.scrollmonitor;
+
+/**
+ * An incremental filter that smooths a datastream as data is pushed to it. A
+ * filter keeps whatever window state it needs itself, so each datum costs O(1)
+ * (or O(log k) for order statistics) rather than a walk back over previous
+ * data.
+ * <p>
+ * Filters run in double precision, so that the data of double and long
+ * streams is smoothed in its own precision.
+ * <p>
+ * Empty datapoints ({@link Double#NEGATIVE_INFINITY}) are excluded from the
+ * filter window and are passed through as empty.
+ * 
+ * @author Michael Carleton
+ *
+ */
+interface SmoothingFilter {
+
+	/**
+	 * Pushes a datum through the filter.
+	 * 
+	 * @param datum raw datum
+	 * @return the smoothed value for the datum
+	 */
+	double filter(double datum);
+
+	/**
+	 * Pushes a datum of a float stream through the filter.
+	 * 
+	 * @param datum raw datum
+	 * @return the smoothed value for the datum
+	 */
+	default float filter(float datum) {
+		return (float) filter((double) datum);
+	}
+
+	/**
+	 * Clears the filter window, ready for a full recompute.
+	 */
+	void reset();
+}
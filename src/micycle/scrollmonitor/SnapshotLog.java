@@ -0,0 +1,77 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+
+/**
+ * The values of ring slots as they were before being overwritten, in the order
+ * they were overwritten; backs a copy-on-write snapshot of a ring (such as a
+ * paused view). Slots of a ring are overwritten in ring order, so the
+ * <code>k</code>th slot overwritten since the snapshot is the slot at logical
+ * index <code>k</code> of the snapshot (0 being the oldest). The log grows only
+ * as slots are overwritten, up to the length of the ring.
+ * <p>
+ * Values are logged as the raw bits of the ring's type, in as many bits as the
+ * type has (32 or 64), so a log holds every type exactly (long data beyond 2^53
+ * included) and a float ring pays 4 bytes per slot logged. The caller decodes
+ * the bits through the ring's type.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class SnapshotLog {
+
+	private static final int[] EMPTY_NARROW = new int[0];
+	private static final long[] EMPTY_WIDE = new long[0];
+
+	private final int capacity;
+	private final boolean wide;
+	private int[] narrow = EMPTY_NARROW; // 32-bit values
+	private long[] values = EMPTY_WIDE; // 64-bit values
+	private int size;
+
+	/**
+	 * @param capacity length of the ring
+	 * @param width    bits per value of the ring's type (32 or 64)
+	 */
+	SnapshotLog(int capacity, int width) {
+		this.capacity = capacity;
+		wide = width > 32;
+	}
+
+	/**
+	 * Logs the value a slot held before being overwritten.
+	 *
+	 * @param bits raw bits of the value (only the low 32 are kept by a 32-bit log)
+	 */
+	void add(long bits) {
+		final int length = wide ? values.length : narrow.length;
+		if (size == length) {
+			final int grown = Math.min(capacity, Math.max(16, size * 2));
+			if (wide) {
+				values = Arrays.copyOf(values, grown);
+			} else {
+				narrow = Arrays.copyOf(narrow, grown);
+			}
+		}
+		if (wide) {
+			values[size++] = bits;
+		} else {
+			narrow[size++] = (int) bits;
+		}
+	}
+
+	/**
+	 * @param index logical index within the snapshot (< {@link #size()})
+	 * @return raw bits of the value (zero-extended by a 32-bit log)
+	 */
+	long get(int index) {
+		return wide ? values[index] : narrow[index] & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @return number of slots logged
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,272 @@
+package micycle.scrollmonitor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A reference to a datastream of a {@link ScrollMonitor}, returned by
+ * {@link ScrollMonitor#addDataStream(String)}. Calls on a handle go directly to
+ * the stream, so they avoid the by-name lookup of the equivalent methods on the
+ * monitor; keep a handle to streams that are pushed to frequently.
+ * <p>
+ * A handle becomes invalid once its stream is removed from the monitor; calls
+ * on an invalid handle report an error and do nothing. Like the monitor's
+ * push methods, the push methods of a handle may be called from any thread when
+ * concurrent ingestion is enabled; the other methods should be called from the
+ * sketch (animation) thread.
+ * 
+ * @author Michael Carleton
+ *
+ */
+public final class StreamHandle {
+
+	private final DataStream d;
+
+	StreamHandle(DataStream dataStream) {
+		d = dataStream;
+	}
+
+	/**
+	 * @return whether the stream is still present in its monitor
+	 */
+	public boolean isValid() {
+		return !d.removed;
+	}
+
+	/**
+	 * @return name of the stream
+	 */
+	public String getName() {
+		return d.name;
+	}
+
+	/**
+	 * Pushes a datum (single data point) to the stream.
+	 * 
+	 * @param datum data
+	 * @see ScrollMonitor#push(String, float)
+	 */
+	public void push(float datum) {
+		if (valid()) {
+			d.offer(datum);
+		}
+	}
+
+	/**
+	 * Pushes a timestamped datum to the stream.
+	 * 
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see ScrollMonitor#pushAt(String, long, float)
+	 */
+	public void pushAt(long timestampNanos, float datum) {
+		if (valid()) {
+			d.offer(timestampNanos, datum);
+		}
+	}
+
+	/**
+	 * Pushes a double datum to the stream (converted to the stream's type).
+	 * 
+	 * @param datum data
+	 * @see ScrollMonitor#push(String, double)
+	 */
+	public void push(double datum) {
+		if (valid()) {
+			d.offerDouble(datum);
+		}
+	}
+
+	/**
+	 * Pushes a long datum to the stream (converted to the stream's type).
+	 * 
+	 * @param datum data
+	 * @see ScrollMonitor#push(String, long)
+	 */
+	public void push(long datum) {
+		if (valid()) {
+			d.offerLong(datum);
+		}
+	}
+
+	/**
+	 * Pushes a timestamped double datum to the stream.
+	 * 
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see ScrollMonitor#pushAt(String, long, double)
+	 */
+	public void pushAt(long timestampNanos, double datum) {
+		if (valid()) {
+			d.offerDouble(timestampNanos, datum);
+		}
+	}
+
+	/**
+	 * Pushes a timestamped long datum to the stream.
+	 * 
+	 * @param timestampNanos timestamp, in nanoseconds
+	 * @param datum          data
+	 * @see ScrollMonitor#pushAt(String, long, long)
+	 */
+	public void pushAt(long timestampNanos, long datum) {
+		if (valid()) {
+			d.offerLong(timestampNanos, datum);
+		}
+	}
+
+	/**
+	 * Pushes multiple data points to the stream.
+	 * 
+	 * @param data an array (float[]) or varargs (float, float, float......)
+	 * @see ScrollMonitor#push(String, float...)
+	 */
+	public void push(float... data) {
+		push(data, 0, data.length);
+	}
+
+	/**
+	 * Pushes a range of an array of data points to the stream in bulk.
+	 * 
+	 * @param data   source of the data points
+	 * @param offset index of the first data point in data
+	 * @param length number of data points to push
+	 * @throws IndexOutOfBoundsException if the range is not within data (nothing
+	 *                                   is pushed)
+	 * @see ScrollMonitor#push(String, float[], int, int)
+	 */
+	public void push(float[] data, int offset, int length) {
+		if (valid()) {
+			d.offer(data, offset, length);
+		}
+	}
+
+	/**
+	 * Pushes the remaining data points of a buffer to the stream in bulk.
+	 * 
+	 * @param data source of the data points
+	 * @see ScrollMonitor#push(String, FloatBuffer)
+	 */
+	public void push(FloatBuffer data) {
+		if (valid()) {
+			d.offer(data);
+		}
+	}
+
+	/**
+	 * Pushes an empty datapoint (a gap in the graph) to the stream.
+	 */
+	public void pushEmpty() {
+		if (valid()) {
+			d.offer(Float.NEGATIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Sets the fill colour of the stream's graph.
+	 * 
+	 * @param color ARGB colour represented by an integer; use Processing's color()
+	 *              method to generate values
+	 */
+	public void setFillColour(int color) {
+		if (valid()) {
+			d.fillColour = color;
+		}
+	}
+
+	/**
+	 * Sets the stroke (outline) colour of the stream's graph.
+	 * 
+	 * @param color ARGB colour represented by an integer; use Processing's color()
+	 *              method to generate values
+	 */
+	public void setStrokeColour(int color) {
+		if (valid()) {
+			d.strokeColour = color;
+		}
+	}
+
+	/**
+	 * Sets the data unit of the stream, which is appended to the stream value.
+	 * 
+	 * @param unit e.g. "FPS"
+	 */
+	public void setUnit(String unit) {
+		if (valid()) {
+			d.dataUnit = unit;
+		}
+	}
+
+	/**
+	 * Sets the smoothing filter and its level for the stream.
+	 * 
+	 * @param type      filter type (moving average, exponential or median)
+	 * @param smoothing default = 0 == no smoothing
+	 * @see ScrollMonitor#setStreamDataSmoothing(String, Smoothing, int)
+	 */
+	public void setDataSmoothing(Smoothing type, int smoothing) {
+		if (valid()) {
+			d.setSmoothing(type, smoothing);
+		}
+	}
+
+	/**
+	 * Pauses the stream from scrolling (data pushing is not blocked).
+	 */
+	public void pause() {
+		if (valid()) {
+			d.pause();
+		}
+	}
+
+	/**
+	 * Resumes a paused stream.
+	 */
+	public void resume() {
+		if (valid()) {
+			d.resume();
+		}
+	}
+
+	/**
+	 * Hides the stream from being drawn (it will still recieve any data pushed to
+	 * it).
+	 */
+	public void hide() {
+		if (valid()) {
+			d.setDraw(false);
+		}
+	}
+
+	/**
+	 * Shows the stream if it has been hidden.
+	 */
+	public void show() {
+		if (valid()) {
+			d.setDraw(true);
+		}
+	}
+
+	/**
+	 * @return maximum value currently held by the stream; NaN if the handle is
+	 *         invalid
+	 */
+	public float getMaximum() {
+		return valid() ? (float) d.getMaxLiveValue() : Float.NaN;
+	}
+
+	/**
+	 * @return minimum value currently held by the stream; NaN if the handle is
+	 *         invalid
+	 */
+	public float getMinimum() {
+		return valid() ? (float) d.getMinLiveValue() : Float.NaN;
+	}
+
+	private boolean valid() {
+		if (d.removed) {
+			System.err.println("The data stream " + d.name + " has been removed.");
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,66 @@
+package micycle.scrollmonitor;
+
+import java.util.Arrays;
+
+import processing.core.PVector;
+
+/**
+ * A datastream of 64-bit data ({@link DoubleDataStream} or
+ * {@link LongDataStream}). The raw data is held as the bits of the stream's
+ * type, so each type keeps its full precision, and its smoothed data in
+ * double precision. Unlike float streams, the data of a wide stream is held in
+ * arrays of its own rather than in the monitor's {@link ColumnStore}.
+ *
+ * @author Michael Carleton
+ *
+ */
+abstract class WideDataStream extends DataStream {
+
+	/**
+	 * Data (raw), as the bits of the stream's type
+	 */
+	final long[] data;
+	/**
+	 * Smoothed data (unscaled), in step with {@link #data}. Scaled to draw
+	 * coordinates when read via {@link #getDrawData(int)}.
+	 */
+	final double[] drawData;
+
+	/**
+	 * @param initial bits of -1 in the stream's type
+	 */
+	WideDataStream(String name, int history, PVector drawDimensions, Smoothing smoothingType, int smoothing,
+			long initial) {
+		super(name, history, drawDimensions, smoothingType, smoothing);
+		data = new long[length];
+		Arrays.fill(data, initial); // init to -1 so not drawn by stroke
+		drawData = new double[length];
+		Arrays.fill(drawData, -1);
+	}
+
+	@Override
+	long getBits(int slot) {
+		return data[slot];
+	}
+
+	@Override
+	double getSmoothed(int slot) {
+		return drawData[slot];
+	}
+
+	@Override
+	void set(int slot, long bits, double smoothed) {
+		data[slot] = bits;
+		drawData[slot] = smoothed;
+	}
+
+	@Override
+	void setSmoothed(int slot, double smoothed) {
+		drawData[slot] = smoothed;
+	}
+
+	@Override
+	int getValueWidth() {
+		return 64;
+	}
+}
@@ -0,0 +1,199 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PVector;
+
+/**
+ * Checks that the steady-state paths (pushing, computing a frame, formatting
+ * labels) allocate nothing, by counting the bytes the test thread allocates
+ * with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * Each task is first run a few times, so that one-off allocations (lazy
+ * initialisation, buffers growing to their working size) are not counted, and
+ * is then measured over several runs, the least being taken: the JIT compiler
+ * occasionally allocates on the thread while recompiling, but code that
+ * allocates in its steady state does so on every run.
+ *
+ * @author Michael Carleton
+ *
+ */
+class AllocationTest {
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private static final long OVERHEAD = overhead(); // allocated by getThreadAllocatedBytes() itself
+	private static final int WARM_UP_RUNS = 5, MEASURED_RUNS = 5;
+
+	/**
+	 * The library's part of drawing frames: pushing, the y-axis maximum,
+	 * hit-testing, building the decimated graph geometry and formatting the value,
+	 * mouse-over and crosshair labels. What Processing does with the result is not
+	 * measured (nor controlled by the library): Java2D, the default renderer,
+	 * allocates a GeneralPath for each shape drawn and glyph data for each text
+	 * drawn, and the OpenGL renderers allocate while tessellating shapes and text.
+	 */
+	@Test
+	void frameComputation() {
+		final PVector dimensions = new PVector(400, 200);
+		final FloatDataStream f = new FloatDataStream("float", 300, dimensions);
+		final DoubleDataStream d = new DoubleDataStream("double", 300, dimensions);
+		final LongDataStream l = new LongDataStream("long", 300, dimensions);
+		final DataStream[] order = { f, d, l };
+		final Decimator decimator = new Decimator();
+		final HitTester hitTester = new HitTester();
+		final Label label = new Label();
+		final Decimation[] modes = Decimation.values();
+		final double[] checksum = { 0 };
+		final int[] frame = { 0 };
+		final Runnable frames = () -> {
+			for (int i = 0; i < 600; i++, frame[0]++) { // two histories: the ring wraps
+				f.push((float) Math.sin(frame[0] * 0.1) * 50 + 50);
+				d.pushDouble(Math.cos(frame[0] * 0.1) * 40 + 50);
+				l.pushLong(frame[0] % 90);
+				final float mouseX = frame[0] % dimensions.x;
+				hitTester.update(order, mouseX, frame[0] % dimensions.y, dimensions.x, dimensions.y, 1);
+				decimator.mode = modes[frame[0] % modes.length];
+				for (DataStream s : order) {
+					checksum[0] += s.getMaxLiveValue();
+					final GraphGeometry g = s.geometry;
+					g.reset();
+					g.add(-2, dimensions.y - s.getDrawData(0));
+					decimator.decimate(s, dimensions.x, dimensions.y);
+					g.add(dimensions.x + 1, dimensions.y - s.getDrawData(s.viewLength - 1));
+					checksum[0] += s.formatRawData(s.valueLabel, s.viewLength - 1, 2).length;
+					final int index = HitTester.indexAt(s, mouseX, dimensions.x);
+					checksum[0] += s.formatRawData(s.crosshairLabel, index, 2).length;
+				}
+				if (hitTester.hit != null) {
+					checksum[0] += hitTester.hit.formatRawData(label, hitTester.index, 3).length;
+				}
+			}
+		};
+		assertEquals(0, allocated(frames), "bytes allocated by 600 frames");
+	}
+
+	@Test
+	void smoothingFilters() {
+		final SmoothingFilter[] filters = { new ExponentialFilter(16), new MovingAverageFilter(16),
+				new MovingMedianFilter(16) };
+		final double[] sum = { 0 };
+		final Runnable filter = () -> {
+			for (SmoothingFilter f : filters) {
+				for (int i = 0; i < 10_000; i++) {
+					sum[0] += f.filter((double) (i % 37));
+					sum[0] += f.filter((float) (i % 23));
+				}
+				f.reset();
+			}
+		};
+		assertEquals(0, allocated(filter), "bytes allocated by filtering");
+	}
+
+	@Test
+	void slidingExtrema() {
+		final SlidingExtrema extrema = new SlidingExtrema(256);
+		final int[] slot = { 0 };
+		final Runnable push = () -> {
+			for (int i = 0; i < 10_000; i++) {
+				extrema.push(slot[0], (float) ((i * 7919) % 1000));
+				slot[0] = (slot[0] + 1) % 256;
+			}
+		};
+		assertEquals(0, allocated(push), "bytes allocated by pushing");
+		float max = Float.NEGATIVE_INFINITY, min = Float.POSITIVE_INFINITY;
+		for (int i = 10_000 - 256; i < 10_000; i++) { // the data in the ring
+			max = Math.max(max, (i * 7919) % 1000);
+			min = Math.min(min, (i * 7919) % 1000);
+		}
+		assertEquals(max, extrema.max(), 0);
+		assertEquals(min, extrema.min(), 0);
+	}
+
+	@Test
+	void sampleQueue() {
+		final FloatDataStream stream = new FloatDataStream("queue", 256, new PVector(400, 200));
+		final SampleQueue queue = new SampleQueue(1024, OverflowPolicy.DROP_OLDEST);
+		final Runnable offer = () -> {
+			for (int i = 0; i < 10_000; i++) {
+				queue.offer(stream.toSample((double) i));
+				if (i % 512 == 511) {
+					queue.drainTo(stream);
+				}
+			}
+			queue.drainTo(stream);
+		};
+		assertEquals(0, allocated(offer), "bytes allocated by offering and draining");
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	@Test
+	void coldTier() {
+		final ColdTier cold = new ColdTier(1 << 20, 0, 32);
+		for (int i = 0; i < ColdTier.BLOCK_SIZE; i++) { // one sealed block
+			cold.add(i * 1000L, Float.floatToIntBits(i));
+		}
+		final int[] next = { 0 }; // data added to the open block
+		final long[] checksum = { 0 };
+		final Runnable task = () -> { // WARM_UP_RUNS + MEASURED_RUNS runs leave the open block unsealed
+			for (int i = 0; i < ColdTier.BLOCK_SIZE / 16; i++, next[0]++) {
+				cold.add(next[0] * 1000L, Float.floatToIntBits(next[0]));
+				checksum[0] += cold.get(next[0]) + cold.getTimestamp(next[0]); // from the sealed block
+			}
+		};
+		assertEquals(0, allocated(task), "bytes allocated by appending to the open block and reading");
+		for (int i = 0; i < ColdTier.BLOCK_SIZE + next[0]; i++) {
+			assertEquals(Float.floatToIntBits(i % ColdTier.BLOCK_SIZE), cold.get(i));
+			assertEquals(i % ColdTier.BLOCK_SIZE * 1000L, cold.getTimestamp(i));
+		}
+	}
+
+	@Test
+	void numberFormatter() {
+		final char[] dst = new char[NumberFormatter.maxLength(NumberFormatter.MAX_PRECISION)];
+		final int[] length = { 0 };
+		final Runnable format = () -> {
+			for (int i = 0; i < 10_000; i++) {
+				length[0] += NumberFormatter.format(i * 1.37 - 5000, i % 4, dst, 0);
+				length[0] += NumberFormatter.format(i * 1e15, 2, dst, 0); // beyond the exact range of a double
+				length[0] += NumberFormatter.format(i * 1e17, 1, dst, 0); // beyond a long
+				length[0] += NumberFormatter.format(Long.MIN_VALUE + i, 0, dst, 0);
+			}
+		};
+		assertEquals(0, allocated(format), "bytes allocated by formatting");
+		assertEquals("-1.50", new String(dst, 0, NumberFormatter.format(-1.5, 2, dst, 0)));
+	}
+
+	/**
+	 * @return least bytes allocated by a run of a task, once warmed up
+	 */
+	private static long allocated(Runnable task) {
+		for (int i = 0; i < WARM_UP_RUNS; i++) {
+			task.run();
+		}
+		long least = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			least = Math.min(least, measure(task));
+		}
+		return least;
+	}
+
+	private static long measure(Runnable task) {
+		final long before = allocatedBytes();
+		task.run();
+		return allocatedBytes() - before - OVERHEAD;
+	}
+
+	private static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long overhead() {
+		allocatedBytes();
+		final long before = allocatedBytes();
+		return allocatedBytes() - before;
+	}
+}
@@ -0,0 +1,89 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.FloatBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PVector;
+
+/**
+ * Checks that a bulk push leaves a stream exactly as pushing its data one datum
+ * at a time would, including batches longer than the history (whose head is
+ * not copied into the ring, but must still pass through the smoothing filter).
+ *
+ * @author Michael Carleton
+ *
+ */
+class BulkPushTest {
+
+	private static final int HISTORY = 64;
+	private static final int SMOOTHING = 8;
+	private static final int[] COUNTS = { 1, 10, HISTORY, HISTORY + 3, HISTORY + SMOOTHING, 3 * HISTORY + 7 };
+
+	@Test
+	void arrayMatchesPerDatumPushes() {
+		for (Smoothing smoothing : Smoothing.values()) {
+			for (int count : COUNTS) {
+				final float[] batch = batch(count);
+				final FloatDataStream single = stream(smoothing);
+				final FloatDataStream bulk = stream(smoothing);
+				for (int i = 0; i < batch.length; i++) {
+					single.push(batch[i]);
+				}
+				bulk.push(batch, 0, batch.length);
+				assertSameData(single, bulk, smoothing + ", batch of " + count);
+			}
+		}
+	}
+
+	@Test
+	void bufferMatchesPerDatumPushes() {
+		for (Smoothing smoothing : Smoothing.values()) {
+			for (int count : COUNTS) {
+				final float[] batch = batch(count);
+				final FloatDataStream single = stream(smoothing);
+				final FloatDataStream bulk = stream(smoothing);
+				for (int i = 0; i < batch.length; i++) {
+					single.push(batch[i]);
+				}
+				bulk.push(FloatBuffer.wrap(batch));
+				assertSameData(single, bulk, smoothing + ", buffer of " + count);
+			}
+		}
+	}
+
+	/**
+	 * @return a stream whose ring already holds data (so the smoothing window of
+	 *         a batch's first data spans data already pushed)
+	 */
+	private static FloatDataStream stream(Smoothing smoothing) {
+		final FloatDataStream d = new FloatDataStream("s", HISTORY, new PVector(400, 200), smoothing, SMOOTHING);
+		for (int i = 0; i < HISTORY / 2; i++) {
+			d.push(1000 + i * 3);
+		}
+		return d;
+	}
+
+	private static float[] batch(int count) {
+		final float[] batch = new float[count];
+		for (int i = 0; i < count; i++) {
+			batch[i] = (i * 37) % 101;
+		}
+		return batch;
+	}
+
+	/**
+	 * Compares the streams' rings oldest to newest (a bulk push may leave the ring
+	 * rotated relative to single pushes).
+	 */
+	private static void assertSameData(FloatDataStream expected, FloatDataStream actual, String message) {
+		assertEquals(expected.pushCount, actual.pushCount, message);
+		for (int i = 0; i < HISTORY; i++) {
+			final int e = (expected.pointer + i) % HISTORY, a = (actual.pointer + i) % HISTORY;
+			assertEquals(expected.data.get(e), actual.data.get(a), 0, message + ": raw datum " + i);
+			assertEquals(expected.drawData.get(e), actual.drawData.get(a), 0, message + ": smoothed datum " + i);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PVector;
+
+/**
+ * Checks the vertices chosen by M4 and LTTB decimation against naive
+ * implementations over plain arrays of the stream's draw data.
+ *
+ * @author Michael Carleton
+ *
+ */
+class DecimatorTest {
+
+	private static final int HISTORY = 1000;
+	private static final float WIDTH = 100, HEIGHT = 100;
+
+	@Test
+	void m4KeepsFirstMinMaxAndLastOfEachColumn() {
+		final DataStream d = stream(HISTORY);
+		final GraphGeometry g = decimate(d, Decimation.M4);
+
+		int v = 0;
+		int i = 0;
+		while (i < d.viewLength) { // each pixel column
+			final int column = (int) Math.floor(d.getViewX(i, WIDTH));
+			int end = i;
+			int min = i, max = i;
+			while (end < d.viewLength && (int) Math.floor(d.getViewX(end, WIDTH)) == column) {
+				if (d.getDrawData(end) < d.getDrawData(min)) {
+					min = end;
+				}
+				if (d.getDrawData(end) > d.getDrawData(max)) {
+					max = end;
+				}
+				end++;
+			}
+			final TreeSet<Integer> expected = new TreeSet<>(); // in index order, without repeats
+			expected.add(i);
+			expected.add(min);
+			expected.add(max);
+			expected.add(end - 1);
+			for (int index : expected) {
+				assertVertex(d, g, v++, index, "column " + column);
+			}
+			i = end;
+		}
+		assertEquals(v, g.count, "vertex count");
+		assertTrue(g.count <= 4 * (WIDTH + 1), "at most 4 vertices per column");
+	}
+
+	@Test
+	void lttbMatchesReference() {
+		final DataStream d = stream(HISTORY);
+		final GraphGeometry g = decimate(d, Decimation.LTTB);
+
+		final int n = d.viewLength;
+		final float[] x = new float[n], y = new float[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = d.getViewX(i, WIDTH);
+			y[i] = d.getDrawData(i);
+		}
+		final int threshold = 2 * (int) Math.ceil(WIDTH);
+		final int[] picked = lttb(x, y, threshold);
+		assertEquals(threshold, g.count, "vertex count");
+		for (int v = 0; v < picked.length; v++) {
+			assertVertex(d, g, v, picked[v], "bucket " + v);
+		}
+	}
+
+	@Test
+	void lttbDrawsEveryDatumOfShortViews() {
+		final DataStream d = stream(150); // fewer data than 2 per column
+		final GraphGeometry g = decimate(d, Decimation.LTTB);
+		assertEquals(d.viewLength, g.count);
+		for (int i = 0; i < d.viewLength; i++) {
+			assertVertex(d, g, i, i, "datum " + i);
+		}
+	}
+
+	@Test
+	void tierViewsKeepTheEnvelope() {
+		for (Decimation mode : Decimation.values()) {
+			final DataStream d = new FloatDataStream("tiers", HISTORY, new PVector(WIDTH, HEIGHT));
+			d.setMaxValue(HEIGHT);
+			d.setTiers(1);
+			for (int i = 0; i < HISTORY * 10; i++) {
+				d.push(i == HISTORY * 5 ? 90 : i == HISTORY * 6 ? 1 : 50);
+			}
+			d.setView(HISTORY * 10);
+			assertEquals(1, d.viewTier);
+			final GraphGeometry g = decimate(d, mode);
+			float highest = 0, lowest = HEIGHT;
+			for (int v = 0; v < g.count; v++) {
+				highest = Math.max(highest, HEIGHT - g.y[v]);
+				lowest = Math.min(lowest, HEIGHT - g.y[v]);
+			}
+			assertEquals(90, highest, 0, mode + ": spike");
+			assertEquals(1, lowest, 0, mode + ": dip");
+		}
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets, as described by Steinarsson.
+	 *
+	 * @return indices of the points picked
+	 */
+	private static int[] lttb(float[] x, float[] y, int threshold) {
+		final int n = x.length;
+		final int[] picked = new int[threshold];
+		final double every = (double) (n - 2) / (threshold - 2);
+		int a = 0;
+		for (int bucket = 0; bucket < threshold - 2; bucket++) {
+			final int nextStart = (int) ((bucket + 1) * every) + 1;
+			final int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, n);
+			double avgX = 0, avgY = 0;
+			for (int i = nextStart; i < nextEnd; i++) {
+				avgX += x[i];
+				avgY += y[i];
+			}
+			avgX /= nextEnd - nextStart;
+			avgY /= nextEnd - nextStart;
+
+			double maxArea = -1;
+			int best = -1;
+			for (int i = (int) (bucket * every) + 1; i < (int) ((bucket + 1) * every) + 1; i++) {
+				final double area = Math.abs((x[a] - avgX) * (y[i] - y[a]) - (x[a] - x[i]) * (avgY - y[a]));
+				if (area > maxArea) {
+					maxArea = area;
+					best = i;
+				}
+			}
+			picked[bucket + 1] = a = best;
+		}
+		picked[threshold - 1] = n - 1;
+		return picked;
+	}
+
+	private static DataStream stream(int history) {
+		final DataStream d = new FloatDataStream("decimated", history, new PVector(WIDTH, HEIGHT));
+		d.setMaxValue(HEIGHT); // draw data is the data itself
+		final Random random = new Random(history);
+		for (int i = 0; i < history; i++) {
+			d.push(random.nextFloat() * (HEIGHT - 1));
+		}
+		return d;
+	}
+
+	private static GraphGeometry decimate(DataStream d, Decimation mode) {
+		final Decimator decimator = new Decimator();
+		decimator.mode = mode;
+		d.geometry.reset();
+		decimator.decimate(d, WIDTH, HEIGHT);
+		return d.geometry;
+	}
+
+	private static void assertVertex(DataStream d, GraphGeometry g, int vertex, int index, String message) {
+		assertEquals(d.getViewX(index, WIDTH), g.x[vertex], 0, message + ": x of vertex " + vertex);
+		assertEquals(HEIGHT - d.getDrawData(index), g.y[vertex], 0, message + ": y of vertex " + vertex);
+	}
+}
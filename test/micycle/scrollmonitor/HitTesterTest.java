@@ -0,0 +1,132 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import processing.core.PVector;
+
+/**
+ * Checks the column lookup of hit-testing (the datapoint nearest the mouse, and
+ * the graph's value under it) against a scan of every datapoint in view, for
+ * indexed and time views, and which stream a hit-test picks.
+ *
+ * @author Michael Carleton
+ *
+ */
+class HitTesterTest {
+
+	private static final int HISTORY = 200;
+	private static final float WIDTH = 300, HEIGHT = 100;
+
+	@Test
+	void indexedViewColumns() {
+		final DataStream d = stream(new Random(1), false);
+		for (int span : new int[] { HISTORY, 37, 2 }) {
+			d.setView(span);
+			assertColumns(d);
+		}
+	}
+
+	@Test
+	void timeViewColumns() {
+		final DataStream d = stream(new Random(2), true);
+		final long newest = d.getNewestTimestamp();
+		for (long window : new long[] { 1_000_000L, 30_000_000L, 500_000_000L }) {
+			d.setTimeView(newest - window, window);
+			assertColumns(d);
+		}
+	}
+
+	@Test
+	void picksTheFrontmostStreamUnderTheMouse() {
+		final DataStream back = flat("back", 80), front = flat("front", 30);
+		final DataStream[] order = { back, front }; // back to front
+		final HitTester hitTester = new HitTester();
+		final float x = back.getViewX(HISTORY / 2, WIDTH) + 0.1f;
+
+		hitTester.update(order, x, HEIGHT - 10, WIDTH, HEIGHT, 0); // under both graphs
+		assertEquals(front, hitTester.hit);
+		assertEquals(HISTORY / 2, hitTester.index);
+
+		hitTester.update(order, x, HEIGHT - 50, WIDTH, HEIGHT, 0); // above the front graph only
+		assertEquals(back, hitTester.hit);
+
+		hitTester.update(order, x, HEIGHT - 90, WIDTH, HEIGHT, 0); // above both
+		assertEquals(null, hitTester.hit);
+
+		hitTester.update(order, x, HEIGHT - 90, WIDTH, HEIGHT, 15); // within the tolerance of the back graph
+		assertEquals(back, hitTester.hit);
+
+		front.setDraw(false); // hidden streams are not hit (and changing a stream invalidates the cached result)
+		hitTester.update(order, x, HEIGHT - 10, WIDTH, HEIGHT, 0);
+		assertEquals(back, hitTester.hit);
+	}
+
+	/**
+	 * Compares the lookup at many x coordinates across the graph with a scan of
+	 * every datapoint in view.
+	 */
+	private static void assertColumns(DataStream d) {
+		for (float x = 0; x <= WIDTH; x += 0.37f) {
+			int nearest = 0;
+			for (int i = 1; i < d.viewLength; i++) {
+				if (Math.abs(d.getViewX(i, WIDTH) - x) < Math.abs(d.getViewX(nearest, WIDTH) - x)) {
+					nearest = i;
+				}
+			}
+			final String message = "view of " + d.viewLength + " at x " + x;
+			assertEquals(d.getViewX(nearest, WIDTH), d.getViewX(HitTester.indexAt(d, x, WIDTH), WIDTH), 1e-3f,
+					message + ": nearest datapoint");
+
+			int before = -1; // last datapoint at or before x, and the one after it
+			for (int i = 0; i < d.viewLength; i++) {
+				if (d.getViewX(i, WIDTH) <= x) {
+					before = i;
+				}
+			}
+			final float expected;
+			if (before < 0) {
+				expected = d.getDrawData(0);
+			} else if (before + 1 == d.viewLength) {
+				expected = d.getDrawData(before);
+			} else {
+				final float x0 = d.getViewX(before, WIDTH), x1 = d.getViewX(before + 1, WIDTH);
+				final float t = Math.min(1, (x - x0) / (x1 - x0));
+				expected = d.getDrawData(before) + (d.getDrawData(before + 1) - d.getDrawData(before)) * t;
+			}
+			assertEquals(expected, HitTester.valueAt(d, x, WIDTH), 1e-3f, message + ": value");
+		}
+	}
+
+	/**
+	 * @param timestamped whether to push data at irregular (strictly increasing)
+	 *                    timestamps
+	 */
+	private static DataStream stream(Random random, boolean timestamped) {
+		final DataStream d = new FloatDataStream("hit", HISTORY, new PVector(WIDTH, HEIGHT));
+		d.setMaxValue(HEIGHT);
+		long time = 1_000_000_000L;
+		for (int i = 0; i < HISTORY; i++) {
+			final float datum = random.nextFloat() * (HEIGHT - 1);
+			if (timestamped) {
+				time += 1 + random.nextInt(5_000_000);
+				d.push(time, datum);
+			} else {
+				d.push(datum);
+			}
+		}
+		return d;
+	}
+
+	private static DataStream flat(String name, float value) {
+		final DataStream d = new FloatDataStream(name, HISTORY, new PVector(WIDTH, HEIGHT));
+		d.setMaxValue(HEIGHT);
+		for (int i = 0; i < HISTORY; i++) {
+			d.push(value);
+		}
+		return d;
+	}
+}
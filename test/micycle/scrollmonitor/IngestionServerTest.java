@@ -0,0 +1,126 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the ingestion server's number parsing against the JDK's, and how it
+ * splits what it receives into lines: over UDP (many lines to a datagram) and
+ * TCP (lines split across writes, and over-long lines).
+ *
+ * @author Michael Carleton
+ *
+ */
+class IngestionServerTest {
+
+	@Test
+	void parsesDoubles() {
+		final String[] numbers = { "0", "-0", "7", "-1.5e3", "+2.25", " 42 ", "0.1", ".5", "5.", "1e-5", "1E+22",
+				"123.456e-2", "-3.4028235E38", "1e-320", "1e400", "123456789012345678901234",
+				"0.000000000000000000001234567", "98765.43210987654321" };
+		for (String s : numbers) {
+			final double expected = Double.parseDouble(s);
+			assertEquals(expected, parseDouble(s), Math.ulp(expected), s);
+		}
+		final String[] malformed = { "", " ", "-", "+", ".", "e5", "1e", "1e-", "1.2.3", "1x", "--1", "0x10", "1 2",
+				"NaN" };
+		for (String s : malformed) {
+			assertTrue(Double.isNaN(parseDouble(s)), "\"" + s + "\"");
+		}
+	}
+
+	@Test
+	void parsesLongs() {
+		final String[] numbers = { "0", "7", "1234567890123456789", String.valueOf(Long.MAX_VALUE) };
+		for (String s : numbers) {
+			assertEquals(Long.parseLong(s), parseLong(s), s);
+		}
+		final String[] malformed = { "9223372036854775808", "99999999999999999999", "-1", "+1", "12a", "1 " };
+		for (String s : malformed) {
+			assertEquals(Long.MIN_VALUE, parseLong(s), s);
+		}
+	}
+
+	@Test
+	void splitsLines() throws IOException, InterruptedException {
+		final ScrollMonitor monitor = ScrollMonitor.createHeadless(400, 200, 300, 100);
+		final IngestionServer server = monitor.startIngestionServer(0);
+		final InetAddress loopback = InetAddress.getLoopbackAddress();
+
+		// blank lines, \r\n, a statsd type and an unterminated last line
+		final byte[] datagram = "u1:1\nu2:2|g\r\n\n:3\nu3:x\nu1:4\nu2:-5e-1".getBytes(StandardCharsets.US_ASCII);
+		try (DatagramSocket udp = new DatagramSocket()) {
+			udp.send(new DatagramPacket(datagram, datagram.length, loopback, server.getPort()));
+		}
+
+		final char[] overLong = new char[100_000]; // longer than a connection's buffer
+		Arrays.fill(overLong, '9');
+		try (Socket tcp = new Socket(loopback, server.getPort())) {
+			final OutputStream out = tcp.getOutputStream();
+			write(out, "t1:1\nt2:2|1234\r\nt1");
+			Thread.sleep(50); // the server reads the partial line
+			write(out, ":3\nt1:" + new String(overLong) + "\nt1:4"); // unterminated: ended by closing
+		}
+
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while ((server.getSampleCount() < 8 || server.getMalformedLineCount() < 3)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		monitor.stopIngestionServer(); // pushes the data received
+		assertEquals(8, server.getSampleCount(), "data received");
+		assertEquals(3, server.getMalformedLineCount(), "lines skipped");
+		assertEquals(0, server.getDroppedSampleCount(), "data discarded");
+
+		assertData(monitor.getOrAddDataStream("u1"), 1, 4);
+		assertData(monitor.getOrAddDataStream("u2"), 2, -0.5f);
+		assertEquals(0, monitor.getOrAddDataStream("u3").pushCount, "malformed value");
+		assertData(monitor.getOrAddDataStream("t1"), 1, 3, 4);
+		final DataStream t2 = monitor.getOrAddDataStream("t2");
+		assertData(t2, 2);
+		assertEquals(1234, t2.getNewestTimestamp(), "timestamp");
+	}
+
+	private static void write(OutputStream out, String s) throws IOException {
+		out.write(s.getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+	/**
+	 * Asserts the data a stream has been pushed, oldest first.
+	 */
+	private static void assertData(DataStream d, float... expected) {
+		assertEquals(expected.length, d.pushCount, d.name + ": data pushed");
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], d.getRawData(d.viewLength - expected.length + i), 0, d.name + ": datum " + i);
+		}
+	}
+
+	/**
+	 * Parses the number out of the middle of a buffer, so that it is bounded by
+	 * the region rather than the buffer.
+	 */
+	private static double parseDouble(String s) {
+		return IngestionServer.parseDouble(padded(s), 1, s.length() + 1);
+	}
+
+	private static long parseLong(String s) {
+		return IngestionServer.parseLong(padded(s), 1, s.length() + 1);
+	}
+
+	private static ByteBuffer padded(String s) {
+		return ByteBuffer.wrap(("1" + s + "1").getBytes(StandardCharsets.US_ASCII));
+	}
+}
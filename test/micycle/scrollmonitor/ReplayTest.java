@@ -0,0 +1,132 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a replay finds the end of each segment's data, and that seeking
+ * (a binary search of the sparse seek index, then a short scan) lands on the
+ * right record, across index entries and segment boundaries.
+ *
+ * @author Michael Carleton
+ *
+ */
+class ReplayTest {
+
+	private static final int RECORDS = 3001; // not a whole number of segments nor of index strides
+	private static final int SEGMENT_RECORDS = 700;
+	private static final long SPACING = 10_000_000; // ns between data
+
+	@Test
+	void countsTheRecordsOfEverySegment() throws IOException {
+		final Path directory = record();
+		try {
+			final Replay replay = Replay.open(directory);
+			assertEquals(RECORDS, replay.getRecordCount());
+			final long[] times = recordTimes(directory);
+			assertEquals(times[0], replay.getStartTime());
+			assertEquals(times[RECORDS - 1], replay.getEndTime());
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	void seeksToTheFirstRecordAtOrAfterATime() throws IOException {
+		final Path directory = record();
+		try {
+			final long[] times = recordTimes(directory);
+			final Replay replay = Replay.open(directory);
+			final ScrollMonitor monitor = ScrollMonitor.createHeadless(400, 200, 300, 100);
+			monitor.startReplay(replay);
+			replay.setPlaying(false); // the position stays where it is sought to
+			final DataStream d = monitor.getOrAddDataStream("s");
+			assertTrue(d instanceof LongDataStream, "replayed as the type recorded");
+
+			final int stride = Replay.INDEX_STRIDE;
+			final int[] targets = { 2 * stride + 1, 0, stride - 1, stride, stride + 1, SEGMENT_RECORDS - 1,
+					SEGMENT_RECORDS, 2 * SEGMENT_RECORDS + 3, RECORDS - 1, 5 }; // forwards and backwards
+			for (int k : targets) {
+				replay.seek(times[k]);
+				final long pushed = d.pushCount;
+				monitor.run(); // pushes the data due by the position: record k alone
+				assertEquals(pushed + 1, d.pushCount, "data pushed after seeking to record " + k);
+				assertEquals(k, d.getRawData(d.viewLength - 1), 0, "datum pushed after seeking to record " + k);
+			}
+
+			replay.seek(times[1000] + 1); // between records: the next one is not yet due
+			final long pushed = d.pushCount;
+			monitor.run();
+			assertEquals(pushed, d.pushCount);
+			assertFalse(replay.isFinished());
+
+			replay.seek(times[RECORDS - 1] + 1);
+			assertTrue(replay.isFinished());
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Records a long stream's data 0, 1, 2... at steady timestamps, into several
+	 * segments.
+	 */
+	private static Path record() throws IOException {
+		final Path directory = Files.createTempDirectory("replay-test");
+		final ScrollMonitor monitor = ScrollMonitor.createHeadless(400, 200, 300, 100);
+		final StreamHandle s = monitor.addLongDataStream("s");
+		monitor.startRecording(directory,
+				SampleRecorder.HEADER_BYTES + SEGMENT_RECORDS * (long) SampleRecorder.RECORD_BYTES);
+		final long start = System.nanoTime();
+		for (int i = 0; i < RECORDS; i++) {
+			s.pushAt(start + i * SPACING, i);
+		}
+		monitor.stopRecording();
+		return directory;
+	}
+
+	/**
+	 * Reads the timestamp (ns since the epoch) of every record straight from the
+	 * segment files.
+	 */
+	private static long[] recordTimes(Path directory) throws IOException {
+		final List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "segment-*.bin")) {
+			paths.forEach(segments::add);
+		}
+		Collections.sort(segments, Comparator.comparingInt(SampleRecorder::segmentIndex));
+		final long[] times = new long[RECORDS];
+		int n = 0;
+		for (Path segment : segments) {
+			final ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(segment)); // big-endian
+			final long epochOffset = b.getLong(8);
+			for (int offset = SampleRecorder.HEADER_BYTES; offset + SampleRecorder.RECORD_BYTES <= b.capacity()
+					&& b.getInt(offset) != 0; offset += SampleRecorder.RECORD_BYTES) {
+				times[n++] = b.getLong(offset + 8) + epochOffset;
+			}
+		}
+		assertEquals(RECORDS, n, "records in the segment files");
+		assertTrue(segments.size() > RECORDS / SEGMENT_RECORDS, "several segments");
+		return times;
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package micycle.scrollmonitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the incremental smoothing filters against naive recomputations over
+ * the window, on data with empty datapoints (NEGATIVE_INFINITY) scattered
+ * through it and in runs longer than the window.
+ *
+ * @author Michael Carleton
+ *
+ */
+class SmoothingFilterTest {
+
+	private static final int[] WINDOWS = { 1, 2, 5, 16 };
+	private static final double EMPTY = Double.NEGATIVE_INFINITY;
+
+	@Test
+	void movingAverage() {
+		for (int window : WINDOWS) {
+			final SmoothingFilter filter = new MovingAverageFilter(window);
+			final ArrayDeque<Double> recent = new ArrayDeque<>();
+			final double[] data = data(window);
+			for (int i = 0; i < data.length; i++) {
+				push(recent, window, data[i]);
+				double sum = 0;
+				int valid = 0;
+				for (double d : recent) {
+					if (d != EMPTY) {
+						sum += d;
+						valid++;
+					}
+				}
+				final double expected = data[i] == EMPTY ? EMPTY : sum / valid;
+				assertClose(expected, filter.filter(data[i]), "window " + window + ", datum " + i);
+			}
+		}
+	}
+
+	@Test
+	void exponential() {
+		for (int window : WINDOWS) {
+			final SmoothingFilter filter = new ExponentialFilter(window);
+			final double alpha = 2d / (window + 1);
+			final double[] data = data(window);
+			double average = Double.NaN; // unseeded
+			for (int i = 0; i < data.length; i++) {
+				final double expected;
+				if (data[i] == EMPTY) {
+					expected = EMPTY;
+				} else {
+					average = average != average ? data[i] : alpha * data[i] + (1 - alpha) * average;
+					expected = average;
+				}
+				assertClose(expected, filter.filter(data[i]), "window " + window + ", datum " + i);
+			}
+		}
+	}
+
+	@Test
+	void movingMedian() {
+		for (int window : WINDOWS) {
+			final SmoothingFilter filter = new MovingMedianFilter(window);
+			final ArrayDeque<Double> recent = new ArrayDeque<>();
+			final double[] data = data(window);
+			for (int i = 0; i < data.length; i++) {
+				push(recent, window, data[i]);
+				final double[] sorted = recent.stream().mapToDouble(Double::doubleValue).filter(d -> d != EMPTY)
+						.sorted().toArray();
+				final int n = sorted.length;
+				final double expected = data[i] == EMPTY ? EMPTY
+						: n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+				assertEquals(expected, filter.filter(data[i]), 0, "window " + window + ", datum " + i);
+			}
+		}
+	}
+
+	@Test
+	void resetClearsTheWindow() {
+		for (Smoothing smoothing : Smoothing.values()) {
+			final SmoothingFilter filter = smoothing.createFilter(4);
+			final SmoothingFilter fresh = smoothing.createFilter(4);
+			for (double d : data(5)) {
+				filter.filter(d);
+			}
+			filter.reset();
+			for (double d : data(5)) {
+				assertEquals(fresh.filter(d), filter.filter(d), 0, smoothing.toString());
+			}
+		}
+	}
+
+	@Test
+	void floatsAreSmoothedAsTheirWidenedValues() {
+		for (Smoothing smoothing : Smoothing.values()) {
+			final SmoothingFilter a = smoothing.createFilter(7);
+			final SmoothingFilter b = smoothing.createFilter(7);
+			for (double d : data(8)) {
+				final float f = (float) d;
+				assertEquals((float) a.filter((double) f), b.filter(f), 0, smoothing.toString());
+			}
+		}
+	}
+
+	private static void push(ArrayDeque<Double> recent, int window, double datum) {
+		if (recent.size() == window) {
+			recent.removeFirst();
+		}
+		recent.addLast(datum);
+	}
+
+	/**
+	 * @return data holding scattered empty datapoints, and a run of them longer
+	 *         than the window
+	 */
+	private static double[] data(int window) {
+		final Random random = new Random(window);
+		final double[] data = new double[2000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt(10) == 0 ? EMPTY : random.nextGaussian() * 100 + 50;
+		}
+		Arrays.fill(data, 1000, 1000 + 2 * window + 1, EMPTY);
+		return data;
+	}
+
+	private static void assertClose(double expected, double actual, String message) {
+		if (expected == EMPTY) {
+			assertEquals(expected, actual, 0, message);
+		} else {
+			assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)), message);
+		}
+	}
+}